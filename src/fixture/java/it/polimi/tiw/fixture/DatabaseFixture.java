@@ -0,0 +1,350 @@
+package it.polimi.tiw.fixture;
+
+import it.polimi.tiw.util.PageCursor;
+import it.polimi.tiw.util.PasswordEncrypt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * DatabaseFixture creates the schema of the application in the in-memory H2 database configured for the benchmarks
+ * and the load test and fills it with a deterministic data set, once per JVM.
+ * The size of the data set is read from fixture.properties and can be overridden by JVM system properties
+ * of the same name. Every user signs in with the same password.
+ * Rows are inserted in order into empty tables, so their identifiers follow from their position: the albums of
+ * user u are u * ALBUMS_PER_USER + 1 and the following ones, the first of them being the personal album, and the
+ * same holds for images and comments. Dates grow by one minute with the identifier.
+ */
+public final class DatabaseFixture {
+
+    /** The settings of the fixture */
+    private static final Properties settings = loadSettings();
+
+    /** The number of users */
+    public static final int USERS = getIntSetting("fixture.users", 100, 1);
+
+    /** The number of albums of each user, including the personal one */
+    public static final int ALBUMS_PER_USER = getIntSetting("fixture.albumsPerUser", 5, 2);
+
+    /** The number of images uploaded by each user */
+    public static final int IMAGES_PER_USER = getIntSetting("fixture.imagesPerUser", 20, 1);
+
+    /** The number of comments on each image */
+    public static final int COMMENTS_PER_IMAGE = getIntSetting("fixture.commentsPerImage", 10, 1);
+
+    /** The password of every user */
+    public static final String PASSWORD = "password";
+
+    /** The total number of albums */
+    public static final int ALBUMS = USERS * ALBUMS_PER_USER;
+
+    /** The total number of images */
+    public static final int IMAGES = USERS * IMAGES_PER_USER;
+
+    /** The date of the first album and of the first image */
+    private static final long BASE_TIME = Timestamp.valueOf("2024-01-01 00:00:00").getTime();
+
+    /** The lock guarding the initialization */
+    private static final ReentrantLock initializationLock = new ReentrantLock();
+
+    /** Whether the database was already created and filled in this JVM */
+    private static boolean initialized = false;
+
+    /**
+     * Prevents instantiation of the fixture.
+     */
+    private DatabaseFixture() {}
+
+    /**
+     * Creates and fills the database, unless it was already done in this JVM.
+     * The images are stored as files named after their identifier in the uploads directory of the working directory.
+     * @throws SQLException if the database cannot be created
+     */
+    public static void initialize() throws SQLException {
+        initialize(Paths.get("uploads"));
+    }
+
+    /**
+     * Creates and fills the database, unless it was already done in this JVM.
+     * The files of the images are not created: the image of identifier n is expected at n.jpg in the uploads directory.
+     * @param uploadsDirectory the directory holding the files of the images
+     * @throws SQLException if the database cannot be created
+     */
+    public static void initialize(Path uploadsDirectory) throws SQLException {
+        initializationLock.lock();
+        try {
+            if (initialized)
+                return;
+            Properties properties = loadProperties("properties/database.properties");
+            try (Connection connection = DriverManager.getConnection(properties.getProperty("database.url"),
+                    properties.getProperty("database.username"), properties.getProperty("database.password"))) {
+                createSchema(connection);
+                connection.setAutoCommit(false);
+                insertData(connection, uploadsDirectory.toAbsolutePath().normalize());
+                connection.commit();
+            }
+            initialized = true;
+        } finally {
+            initializationLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the username of a user.
+     * @param user the index of the user, from 0 to USERS - 1
+     * @return the username
+     */
+    public static String username(int user) {
+        return "user" + user;
+    }
+
+    /**
+     * Returns the email address of a user.
+     * @param user the index of the user, from 0 to USERS - 1
+     * @return the email address
+     */
+    public static String email(int user) {
+        return username(user) + "@example.com";
+    }
+
+    /**
+     * Returns the identifier of an album.
+     * @param user  the index of the creator, from 0 to USERS - 1
+     * @param album the index of the album among those of the creator, 0 being the personal album
+     * @return the album identifier
+     */
+    public static int albumId(int user, int album) {
+        return user * ALBUMS_PER_USER + album + 1;
+    }
+
+    /**
+     * Returns the identifier of an image.
+     * @param user  the index of the uploader, from 0 to USERS - 1
+     * @param image the index of the image among those of the uploader
+     * @return the image identifier
+     */
+    public static int imageId(int user, int image) {
+        return user * IMAGES_PER_USER + image + 1;
+    }
+
+    /**
+     * Returns the identifier of the newest comment on an image.
+     * @param imageId the image identifier
+     * @return the identifier of the last comment inserted on the image
+     */
+    public static int lastCommentId(int imageId) {
+        return imageId * COMMENTS_PER_IMAGE;
+    }
+
+    /**
+     * Returns the paging cursor pointing at an album.
+     * @param albumId the album identifier
+     * @return the cursor made of the date and the identifier of the album
+     */
+    public static PageCursor albumCursor(int albumId) {
+        return new PageCursor(new Timestamp(BASE_TIME + (albumId - 1) * 60_000L), albumId);
+    }
+
+    /**
+     * Returns the paging cursor pointing at an image.
+     * @param imageId the image identifier
+     * @return the cursor made of the date and the identifier of the image
+     */
+    public static PageCursor imageCursor(int imageId) {
+        return new PageCursor(new Timestamp(BASE_TIME + (imageId - 1) * 60_000L), imageId);
+    }
+
+    /**
+     * Runs the statements of the H2 schema script.
+     * @param connection the connection to the empty database
+     * @throws SQLException if a statement fails
+     */
+    private static void createSchema(Connection connection) throws SQLException {
+        String script = loadResource("database/h2_schema.sql");
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : script.replaceAll("(?m)^--.*$", "").split(";")) {
+                if (!sql.isBlank())
+                    statement.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Inserts the users, their statistics, albums, images and comments.
+     * @param connection       the connection to the database, in a transaction
+     * @param uploadsDirectory the absolute directory holding the files of the images
+     * @throws SQLException if an insertion fails
+     */
+    private static void insertData(Connection connection, Path uploadsDirectory) throws SQLException {
+        // Hashed once with the cost of the application, so that signing in does not hash the password again
+        String hashedPassword = PasswordEncrypt.hashPassword(PASSWORD, getBcryptCost());
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO User (username, email, password) VALUES (?, ?, ?)")) {
+            for (int user = 0; user < USERS; user++) {
+                statement.setString(1, username(user));
+                statement.setString(2, email(user));
+                statement.setString(3, hashedPassword);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO UserStats (username, albums_count, images_count, comments_count) VALUES (?, ?, ?, ?)")) {
+            for (int user = 0; user < USERS; user++) {
+                statement.setString(1, username(user));
+                statement.setInt(2, ALBUMS_PER_USER);
+                statement.setInt(3, IMAGES_PER_USER);
+                statement.setInt(4, IMAGES_PER_USER * COMMENTS_PER_IMAGE);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO Album (album_creator, album_title, album_date) VALUES (?, ?, ?)")) {
+            for (int user = 0; user < USERS; user++) {
+                for (int album = 0; album < ALBUMS_PER_USER; album++) {
+                    statement.setString(1, username(user));
+                    statement.setString(2, album == 0 ? "@" + username(user) : "Album " + album);
+                    statement.setTimestamp(3, albumCursor(albumId(user, album)).getDate());
+                    statement.addBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO Image (image_uploader, image_title, image_date, image_text, image_path) VALUES (?, ?, ?, ?, ?)")) {
+            for (int user = 0; user < USERS; user++) {
+                for (int image = 0; image < IMAGES_PER_USER; image++) {
+                    int imageId = imageId(user, image);
+                    statement.setString(1, username(user));
+                    statement.setString(2, "Image " + image);
+                    statement.setTimestamp(3, imageCursor(imageId).getDate());
+                    statement.setString(4, "Description of image " + image + " of " + username(user));
+                    statement.setString(5, uploadsDirectory.resolve(imageId + ".jpg").toString());
+                    statement.addBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO AlbumContainsImage (album_id, image_id, image_date) VALUES (?, ?, ?)")) {
+            for (int user = 0; user < USERS; user++) {
+                for (int image = 0; image < IMAGES_PER_USER; image++) {
+                    // Every image is in the personal album and in one of the other albums of its uploader
+                    int imageId = imageId(user, image);
+                    statement.setInt(1, albumId(user, 0));
+                    statement.setInt(2, imageId);
+                    statement.setTimestamp(3, imageCursor(imageId).getDate());
+                    statement.addBatch();
+                    statement.setInt(1, albumId(user, 1 + image % (ALBUMS_PER_USER - 1)));
+                    statement.setInt(2, imageId);
+                    statement.setTimestamp(3, imageCursor(imageId).getDate());
+                    statement.addBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO Comment (image_id, comment_author, comment_text) VALUES (?, ?, ?)")) {
+            for (int imageId = 1; imageId <= IMAGES; imageId++) {
+                for (int comment = 0; comment < COMMENTS_PER_IMAGE; comment++) {
+                    statement.setInt(1, imageId);
+                    statement.setString(2, username((imageId + comment) % USERS));
+                    statement.setString(3, "Comment " + comment + " on image " + imageId);
+                    statement.addBatch();
+                }
+                if (imageId % 100 == 0)
+                    statement.executeBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Returns the bcrypt cost configured for the application, giving precedence to the JVM system property.
+     * @return the cost, within the bounds accepted by bcrypt
+     * @throws SQLException if the security properties cannot be read
+     */
+    private static int getBcryptCost() throws SQLException {
+        Properties properties = loadProperties("properties/security.properties");
+        String cost = System.getProperty("security.bcrypt.cost", properties.getProperty("security.bcrypt.cost", "10"));
+        try {
+            return Math.min(Math.max(Integer.parseInt(cost.trim()), PasswordEncrypt.MIN_COST), PasswordEncrypt.MAX_COST);
+        } catch (NumberFormatException e) {
+            System.err.println("Error in security settings, using the default cost: " + e.getMessage());
+            return 10;
+        }
+    }
+
+    /**
+     * Loads the fixture properties, if present.
+     * @return the loaded properties, empty if the file cannot be read
+     */
+    private static Properties loadSettings() {
+        try {
+            return loadProperties("properties/fixture.properties");
+        } catch (SQLException e) {
+            System.err.println(e.getMessage() + ", using defaults.");
+            return new Properties();
+        }
+    }
+
+    /**
+     * Returns an integer setting of the fixture, giving precedence to the JVM system property of the same name.
+     * @param key          the name of the setting
+     * @param defaultValue the value to return if the setting is missing or invalid
+     * @param minimum      the smallest accepted value
+     * @return the value of the setting, at least the minimum
+     */
+    private static int getIntSetting(String key, int defaultValue, int minimum) {
+        String value = System.getProperty(key, settings.getProperty(key));
+        if (value == null)
+            return defaultValue;
+        try {
+            return Math.max(Integer.parseInt(value.trim()), minimum);
+        } catch (NumberFormatException e) {
+            System.err.println("Error in fixture setting " + key + ", using default: " + e.getMessage());
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Loads a properties file from the classpath.
+     * @param name the name of the resource
+     * @return the loaded properties
+     * @throws SQLException if the resource cannot be read
+     */
+    private static Properties loadProperties(String name) throws SQLException {
+        try (InputStream inputStream = DatabaseFixture.class.getClassLoader().getResourceAsStream(name)) {
+            if (inputStream == null)
+                throw new SQLException("Resource not found: " + name);
+            Properties properties = new Properties();
+            properties.load(inputStream);
+            return properties;
+        } catch (IOException e) {
+            throw new SQLException("Error reading " + name, e);
+        }
+    }
+
+    /**
+     * Loads a text file from the classpath.
+     * @param name the name of the resource
+     * @return the content of the resource
+     * @throws SQLException if the resource cannot be read
+     */
+    private static String loadResource(String name) throws SQLException {
+        try (InputStream inputStream = DatabaseFixture.class.getClassLoader().getResourceAsStream(name)) {
+            if (inputStream == null)
+                throw new SQLException("Resource not found: " + name);
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("Error reading " + name, e);
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,66 @@
+-- Schema of the application for H2 in MySQL mode, equivalent to database_structure.sql
+-- without the MySQL table options. Key names are kept, since sign-up relies on the name of email_UNIQUE.
+
+CREATE TABLE User (
+  username varchar(32) NOT NULL,
+  email varchar(64) NOT NULL,
+  password varchar(128) NOT NULL,
+  PRIMARY KEY (username),
+  CONSTRAINT email_UNIQUE UNIQUE (email)
+);
+
+CREATE TABLE UserStats (
+  username varchar(32) NOT NULL,
+  albums_count int NOT NULL DEFAULT 0,
+  images_count int NOT NULL DEFAULT 0,
+  comments_count int NOT NULL DEFAULT 0,
+  PRIMARY KEY (username),
+  CONSTRAINT stats_username FOREIGN KEY (username) REFERENCES User (username) ON DELETE CASCADE ON UPDATE CASCADE
+);
+
+CREATE TABLE Album (
+  album_id int NOT NULL AUTO_INCREMENT,
+  album_creator varchar(32) NOT NULL,
+  album_title varchar(64) NOT NULL,
+  album_date timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (album_id),
+  CONSTRAINT album_creator FOREIGN KEY (album_creator) REFERENCES User (username) ON DELETE CASCADE ON UPDATE CASCADE
+);
+CREATE INDEX album_creator_idx ON Album (album_creator);
+CREATE INDEX album_date_id_idx ON Album (album_date, album_id);
+
+CREATE TABLE Image (
+  image_id int NOT NULL AUTO_INCREMENT,
+  image_uploader varchar(32) NOT NULL,
+  image_title varchar(64) NOT NULL,
+  image_date timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  image_text varchar(512) NOT NULL,
+  image_path varchar(256) NOT NULL,
+  PRIMARY KEY (image_id),
+  CONSTRAINT image_path_UNIQUE UNIQUE (image_path),
+  CONSTRAINT image_uploader FOREIGN KEY (image_uploader) REFERENCES User (username) ON DELETE CASCADE ON UPDATE CASCADE
+);
+CREATE INDEX image_uploader_idx ON Image (image_uploader);
+
+CREATE TABLE AlbumContainsImage (
+  album_id int NOT NULL,
+  image_id int NOT NULL,
+  image_date timestamp NOT NULL,
+  PRIMARY KEY (album_id, image_id),
+  CONSTRAINT id_album FOREIGN KEY (album_id) REFERENCES Album (album_id) ON DELETE CASCADE ON UPDATE CASCADE,
+  CONSTRAINT id_image FOREIGN KEY (image_id) REFERENCES Image (image_id) ON DELETE CASCADE ON UPDATE CASCADE
+);
+CREATE INDEX id_image_idx ON AlbumContainsImage (image_id);
+CREATE INDEX album_image_date_id_idx ON AlbumContainsImage (album_id, image_date, image_id);
+
+CREATE TABLE Comment (
+  comment_id int NOT NULL AUTO_INCREMENT,
+  image_id int NOT NULL,
+  comment_author varchar(32) NOT NULL,
+  comment_text varchar(512) NOT NULL,
+  PRIMARY KEY (comment_id),
+  CONSTRAINT comment_author FOREIGN KEY (comment_author) REFERENCES User (username) ON DELETE CASCADE ON UPDATE CASCADE,
+  CONSTRAINT image_id FOREIGN KEY (image_id) REFERENCES Image (image_id) ON DELETE CASCADE ON UPDATE CASCADE
+);
+CREATE INDEX image_id_idx ON Comment (image_id);
+CREATE INDEX comment_author_idx ON Comment (comment_author);
\ No newline at end of file
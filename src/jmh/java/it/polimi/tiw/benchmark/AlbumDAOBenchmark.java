@@ -0,0 +1,207 @@
+package it.polimi.tiw.benchmark;
+
+import it.polimi.tiw.dao.AlbumDAO;
+import it.polimi.tiw.fixture.DatabaseFixture;
+import it.polimi.tiw.model.Album;
+import it.polimi.tiw.model.Image;
+import it.polimi.tiw.util.DatabaseConnectionPool;
+import it.polimi.tiw.util.PageCursor;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the read methods of the AlbumDAO, each call leasing and releasing its own pooled connection.
+ * Paged reads are measured on the first page and on a page in the middle of the listing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlbumDAOBenchmark {
+
+    /** The number of albums or images of a page, as shown by the application */
+    private static final int PAGE_SIZE = 20;
+
+    /** The DAO under test */
+    private AlbumDAO albumDAO;
+
+    /**
+     * Fills the database and creates the DAO.
+     * @throws SQLException if the database or the connection pool cannot be created
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        DatabaseFixture.initialize();
+        albumDAO = new AlbumDAO();
+    }
+
+    /**
+     * Closes the pooled connections.
+     * @throws SQLException if the connection pool cannot be obtained
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        DatabaseConnectionPool.getInstance().shutdown();
+    }
+
+    /**
+     * Reads the albums of a user.
+     * @param keys the keys of the benchmark thread
+     * @return the albums
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public ArrayList<Album> getMyAlbums(FixtureKeys keys) throws SQLException {
+        return albumDAO.getMyAlbums(DatabaseFixture.username(keys.nextUser()));
+    }
+
+    /**
+     * Reads the first page of the albums of the other users.
+     * @param keys the keys of the benchmark thread
+     * @return the albums of the page, with the one telling whether a next page exists
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public ArrayList<Album> getOtherAlbumsFirstPage(FixtureKeys keys) throws SQLException {
+        return albumDAO.getOtherAlbumsAfter(DatabaseFixture.username(keys.nextUser()), null, PAGE_SIZE + 1);
+    }
+
+    /**
+     * Reads a page of the albums of the other users following a cursor in the middle of the listing.
+     * @param keys the keys of the benchmark thread
+     * @return the albums of the page, with the one telling whether a next page exists
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public ArrayList<Album> getOtherAlbumsAfter(FixtureKeys keys) throws SQLException {
+        return albumDAO.getOtherAlbumsAfter(DatabaseFixture.username(keys.nextUser()), DatabaseFixture.albumCursor(DatabaseFixture.ALBUMS / 2), PAGE_SIZE + 1);
+    }
+
+    /**
+     * Reads a page of the albums of the other users preceding a cursor in the middle of the listing.
+     * @param keys the keys of the benchmark thread
+     * @return the albums of the page, with the one telling whether a previous page exists
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public ArrayList<Album> getOtherAlbumsBefore(FixtureKeys keys) throws SQLException {
+        return albumDAO.getOtherAlbumsBefore(DatabaseFixture.username(keys.nextUser()), DatabaseFixture.albumCursor(DatabaseFixture.ALBUMS / 2), PAGE_SIZE + 1);
+    }
+
+    /**
+     * Reads the identifier of the personal album of a user.
+     * @param keys the keys of the benchmark thread
+     * @return the album identifier
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public int getUserPersonalAlbumId(FixtureKeys keys) throws SQLException {
+        return albumDAO.getUserPersonalAlbumId(DatabaseFixture.username(keys.nextUser()));
+    }
+
+    /**
+     * Checks the owner of an album.
+     * @param keys the keys of the benchmark thread
+     * @return whether the album belongs to the user
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public boolean isAlbumOwnedByUser(FixtureKeys keys) throws SQLException {
+        int user = keys.nextUser();
+        return albumDAO.isAlbumOwnedByUser(DatabaseFixture.albumId(user, 1), DatabaseFixture.username(user));
+    }
+
+    /**
+     * Reads the identifiers of the albums of a user.
+     * @param keys the keys of the benchmark thread
+     * @return the album identifiers
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public ArrayList<Integer> getMyAlbumIds(FixtureKeys keys) throws SQLException {
+        return albumDAO.getMyAlbumIds(DatabaseFixture.username(keys.nextUser()));
+    }
+
+    /**
+     * Reads an album.
+     * @param keys the keys of the benchmark thread
+     * @return the album
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public Album getAlbumById(FixtureKeys keys) throws SQLException {
+        return albumDAO.getAlbumById(keys.nextAlbumId());
+    }
+
+    /**
+     * Checks the existence of an album.
+     * @param keys the keys of the benchmark thread
+     * @return whether the album exists
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public boolean doesAlbumExist(FixtureKeys keys) throws SQLException {
+        return albumDAO.doesAlbumExist(keys.nextAlbumId());
+    }
+
+    /**
+     * Reads all the images of an album.
+     * @param keys the keys of the benchmark thread
+     * @return the images
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public ArrayList<Image> getImagesByAlbumId(FixtureKeys keys) throws SQLException {
+        return albumDAO.getImagesByAlbumId(keys.nextAlbumId());
+    }
+
+    /**
+     * Reads the first page of the images of a personal album, which holds all the images of its creator.
+     * @param keys the keys of the benchmark thread
+     * @return the images of the page, with the one telling whether a next page exists
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public ArrayList<Image> getImagesFirstPage(FixtureKeys keys) throws SQLException {
+        return albumDAO.getImagesByAlbumIdAfter(DatabaseFixture.albumId(keys.nextUser(), 0), null, PAGE_SIZE + 1);
+    }
+
+    /**
+     * Reads a page of the images of a personal album following a cursor in the middle of the album.
+     * @param keys the keys of the benchmark thread
+     * @return the images of the page, with the one telling whether a next page exists
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public ArrayList<Image> getImagesByAlbumIdAfter(FixtureKeys keys) throws SQLException {
+        int user = keys.nextUser();
+        return albumDAO.getImagesByAlbumIdAfter(DatabaseFixture.albumId(user, 0), middleImageCursor(user), PAGE_SIZE + 1);
+    }
+
+    /**
+     * Reads a page of the images of a personal album preceding a cursor in the middle of the album.
+     * @param keys the keys of the benchmark thread
+     * @return the images of the page, with the one telling whether a previous page exists
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public ArrayList<Image> getImagesByAlbumIdBefore(FixtureKeys keys) throws SQLException {
+        int user = keys.nextUser();
+        return albumDAO.getImagesByAlbumIdBefore(DatabaseFixture.albumId(user, 0), middleImageCursor(user), PAGE_SIZE + 1);
+    }
+
+    /**
+     * Returns the cursor of the image in the middle of the personal album of a user.
+     * @param user the index of the user
+     * @return the cursor of the image
+     */
+    private static PageCursor middleImageCursor(int user) {
+        return DatabaseFixture.imageCursor(DatabaseFixture.imageId(user, DatabaseFixture.IMAGES_PER_USER / 2));
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,85 @@
+package it.polimi.tiw.benchmark;
+
+import it.polimi.tiw.dao.CommentDAO;
+import it.polimi.tiw.fixture.DatabaseFixture;
+import it.polimi.tiw.model.Comment;
+import it.polimi.tiw.util.DatabaseConnectionPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the read methods of the CommentDAO. The comment counts of the fixture fit in the comments count cache,
+ * so after the warm-up the count benchmark measures the cached path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommentDAOBenchmark {
+
+    /** The number of comments of a page, smaller than the comments of an image so that a cursor page is partial */
+    private static final int PAGE_SIZE = 5;
+
+    /** The DAO under test */
+    private CommentDAO commentDAO;
+
+    /**
+     * Fills the database and creates the DAO.
+     * @throws SQLException if the database or the connection pool cannot be created
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        DatabaseFixture.initialize();
+        commentDAO = new CommentDAO();
+    }
+
+    /**
+     * Closes the pooled connections.
+     * @throws SQLException if the connection pool cannot be obtained
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        DatabaseConnectionPool.getInstance().shutdown();
+    }
+
+    /**
+     * Reads the newest comments on an image.
+     * @param keys the keys of the benchmark thread
+     * @return the comments of the page, with the one telling whether more comments exist
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public ArrayList<Comment> getNewestComments(FixtureKeys keys) throws SQLException {
+        return commentDAO.getCommentsByImageIdBefore(keys.nextImageId(), null, PAGE_SIZE + 1);
+    }
+
+    /**
+     * Reads the comments on an image older than a cursor in the middle of its comments.
+     * @param keys the keys of the benchmark thread
+     * @return the comments of the page, with the one telling whether more comments exist
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public ArrayList<Comment> getCommentsByImageIdBefore(FixtureKeys keys) throws SQLException {
+        int imageId = keys.nextImageId();
+        int middleCommentId = DatabaseFixture.lastCommentId(imageId) - DatabaseFixture.COMMENTS_PER_IMAGE / 2;
+        return commentDAO.getCommentsByImageIdBefore(imageId, middleCommentId, PAGE_SIZE + 1);
+    }
+
+    /**
+     * Counts the comments on an image.
+     * @param keys the keys of the benchmark thread
+     * @return the number of comments
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public int getCommentsCountByImageId(FixtureKeys keys) throws SQLException {
+        return commentDAO.getCommentsCountByImageId(keys.nextImageId());
+    }
+
+}
\ No newline at end of file
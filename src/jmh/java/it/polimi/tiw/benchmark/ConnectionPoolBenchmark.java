@@ -0,0 +1,89 @@
+package it.polimi.tiw.benchmark;
+
+import it.polimi.tiw.fixture.DatabaseFixture;
+import it.polimi.tiw.util.DatabaseConnectionPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a lease and release round trip of the DatabaseConnectionPool, outside of any ConnectionContext,
+ * by a single thread, by fewer threads than pooled connections and by more threads than the pool can serve at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectionPoolBenchmark {
+
+    /** The pool under test */
+    private DatabaseConnectionPool databaseConnectionPool;
+
+    /**
+     * Fills the database and creates the pool.
+     * @throws SQLException if the database or the pool cannot be created
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        DatabaseFixture.initialize();
+        databaseConnectionPool = DatabaseConnectionPool.getInstance();
+    }
+
+    /**
+     * Closes the pooled connections.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        databaseConnectionPool.shutdown();
+    }
+
+    /**
+     * Leases a connection and releases it right away, without contention.
+     * @return the leased connection
+     * @throws SQLException if no connection can be leased
+     */
+    @Benchmark
+    @Threads(1)
+    public Connection leaseAndRelease() throws SQLException {
+        return leaseAndReleaseConnection();
+    }
+
+    /**
+     * Leases a connection and releases it right away, from fewer threads than pooled connections.
+     * @return the leased connection
+     * @throws SQLException if no connection can be leased
+     */
+    @Benchmark
+    @Threads(32)
+    public Connection leaseAndReleaseContended() throws SQLException {
+        return leaseAndReleaseConnection();
+    }
+
+    /**
+     * Leases a connection and releases it right away, from more threads than the pool can serve at once,
+     * so that threads wait for a connection to be released.
+     * @return the leased connection
+     * @throws SQLException if no connection can be leased in time
+     */
+    @Benchmark
+    @Threads(128)
+    public Connection leaseAndReleaseOversubscribed() throws SQLException {
+        return leaseAndReleaseConnection();
+    }
+
+    /**
+     * Leases a connection from the pool and releases it.
+     * @return the leased connection
+     * @throws SQLException if no connection can be leased
+     */
+    private Connection leaseAndReleaseConnection() throws SQLException {
+        Connection connection = databaseConnectionPool.getConnection();
+        databaseConnectionPool.releaseConnection(connection);
+        return connection;
+    }
+
+}
\ No newline at end of file
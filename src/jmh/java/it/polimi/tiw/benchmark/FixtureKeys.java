@@ -0,0 +1,44 @@
+package it.polimi.tiw.benchmark;
+
+import it.polimi.tiw.fixture.DatabaseFixture;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * FixtureKeys hands each benchmark thread the users, albums and images of the DatabaseFixture in turn,
+ * so that the reads are not all served by the same rows.
+ */
+@State(Scope.Thread)
+public class FixtureKeys {
+
+    /** The number of keys handed out so far by this thread */
+    private int next = 0;
+
+    /**
+     * Returns the index of the next user.
+     * @return a user index, from 0 to USERS - 1
+     */
+    public int nextUser() {
+        next = (next + 1) % DatabaseFixture.USERS;
+        return next;
+    }
+
+    /**
+     * Returns the identifier of the next album, cycling through all the albums of all users.
+     * @return an album identifier
+     */
+    public int nextAlbumId() {
+        next = (next + 1) % DatabaseFixture.ALBUMS;
+        return next + 1;
+    }
+
+    /**
+     * Returns the identifier of the next image, cycling through all the images of all users.
+     * @return an image identifier
+     */
+    public int nextImageId() {
+        next = (next + 1) % DatabaseFixture.IMAGES;
+        return next + 1;
+    }
+
+}
\ No newline at end of file
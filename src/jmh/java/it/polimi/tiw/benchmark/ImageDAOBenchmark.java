@@ -0,0 +1,79 @@
+package it.polimi.tiw.benchmark;
+
+import it.polimi.tiw.dao.ImageDAO;
+import it.polimi.tiw.fixture.DatabaseFixture;
+import it.polimi.tiw.model.Image;
+import it.polimi.tiw.util.DatabaseConnectionPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the read methods of the ImageDAO. The images of the fixture fit in the image cache,
+ * so after the warm-up these benchmarks measure the cached path, which is the common one in the application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageDAOBenchmark {
+
+    /** The DAO under test */
+    private ImageDAO imageDAO;
+
+    /**
+     * Fills the database and creates the DAO.
+     * @throws SQLException if the database or the connection pool cannot be created
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        DatabaseFixture.initialize();
+        imageDAO = new ImageDAO();
+    }
+
+    /**
+     * Closes the pooled connections.
+     * @throws SQLException if the connection pool cannot be obtained
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        DatabaseConnectionPool.getInstance().shutdown();
+    }
+
+    /**
+     * Checks the existence of an image.
+     * @param keys the keys of the benchmark thread
+     * @return whether the image exists
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public boolean doesImageExist(FixtureKeys keys) throws SQLException {
+        return imageDAO.doesImageExist(keys.nextImageId());
+    }
+
+    /**
+     * Reads an image.
+     * @param keys the keys of the benchmark thread
+     * @return the image
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public Image getImageById(FixtureKeys keys) throws SQLException {
+        return imageDAO.getImageById(keys.nextImageId());
+    }
+
+    /**
+     * Reads the path of an image.
+     * @param keys the keys of the benchmark thread
+     * @return the path of the image
+     * @throws SQLException if a database access error occurs
+     */
+    @Benchmark
+    public String getImagePathById(FixtureKeys keys) throws SQLException {
+        return imageDAO.getImagePathById(keys.nextImageId());
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,125 @@
+package it.polimi.tiw.loadtest;
+
+import it.polimi.tiw.fixture.DatabaseFixture;
+
+import java.util.Random;
+
+/**
+ * Endpoint defines the kinds of request sent by the load test, each building the path of a request
+ * for rows of the DatabaseFixture picked at random.
+ */
+public enum Endpoint {
+
+    /**
+     * The home page of the signed-in user.
+     */
+    HOME("home") {
+        @Override
+        public String path(Random random) {
+            return "/home";
+        }
+    },
+
+    /**
+     * The page of an album of any user.
+     */
+    ALBUM("album") {
+        @Override
+        public String path(Random random) {
+            int albumId = DatabaseFixture.albumId(random.nextInt(DatabaseFixture.USERS), random.nextInt(DatabaseFixture.ALBUMS_PER_USER));
+            return "/album?albumId=" + albumId;
+        }
+    },
+
+    /**
+     * The page of an image, opened from the personal album of its uploader.
+     */
+    IMAGE("image") {
+        @Override
+        public String path(Random random) {
+            int user = random.nextInt(DatabaseFixture.USERS);
+            int imageId = DatabaseFixture.imageId(user, random.nextInt(DatabaseFixture.IMAGES_PER_USER));
+            return "/image?albumId=" + DatabaseFixture.albumId(user, 0) + "&imageId=" + imageId;
+        }
+    },
+
+    /**
+     * The thumbnail of an image, as loaded by the album grids.
+     */
+    UPLOADS_THUMB("uploads.thumb") {
+        @Override
+        public String path(Random random) {
+            return uploadsPath(random, "thumb");
+        }
+    },
+
+    /**
+     * The medium rendition of an image, as loaded by the image page.
+     */
+    UPLOADS_MEDIUM("uploads.medium") {
+        @Override
+        public String path(Random random) {
+            return uploadsPath(random, "medium");
+        }
+    },
+
+    /**
+     * The original file of an image.
+     */
+    UPLOADS_ORIGINAL("uploads.original") {
+        @Override
+        public String path(Random random) {
+            return uploadsPath(random, "original");
+        }
+    };
+
+    /** The name of the endpoint in the traffic mix and in the report */
+    private final String name;
+
+    /**
+     * Creates an endpoint.
+     * @param name the name of the endpoint in the traffic mix and in the report
+     */
+    Endpoint(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the endpoint in the traffic mix and in the report.
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Builds the path of a request, relative to the context of the application.
+     * @param random the random generator of the client
+     * @return the path with its query string
+     */
+    public abstract String path(Random random);
+
+    /**
+     * Returns the endpoint with the given name.
+     * @param name the name of the endpoint in the traffic mix
+     * @return the matching endpoint, or null if none has the name
+     */
+    public static Endpoint fromName(String name) {
+        for (Endpoint endpoint : values()) {
+            if (endpoint.name.equals(name))
+                return endpoint;
+        }
+        return null;
+    }
+
+    /**
+     * Builds the path of a rendition of an image picked at random.
+     * @param random the random generator of the client
+     * @param size   the name of the rendition
+     * @return the path with its query string
+     */
+    private static String uploadsPath(Random random, String size) {
+        return "/uploads?imageId=" + (random.nextInt(DatabaseFixture.IMAGES) + 1) + "&size=" + size;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,131 @@
+package it.polimi.tiw.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram counts latencies in microseconds in logarithmic buckets, each power of two being split into
+ * 64 linear sub-buckets, so that percentiles are reported within about 1.5% while recording stays lock-free.
+ */
+public class LatencyHistogram {
+
+    /** The number of bits of a latency resolved within its power of two */
+    private static final int SUB_BUCKET_BITS = 6;
+
+    /** The number of sub-buckets of each power of two */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** The number of buckets needed to count any non-negative long */
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /** The number of latencies counted in each bucket */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /** The number of latencies recorded */
+    private final LongAdder count = new LongAdder();
+
+    /** The sum of the latencies recorded, in microseconds */
+    private final LongAdder sum = new LongAdder();
+
+    /** The highest latency recorded, in microseconds */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    /**
+     * Records a latency.
+     * @param micros the latency in microseconds
+     */
+    public void record(long micros) {
+        long value = Math.max(micros, 0L);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Adds the latencies recorded by another histogram to this one.
+     * @param other the histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            long bucketCount = other.counts.get(bucket);
+            if (bucketCount > 0)
+                counts.addAndGet(bucket, bucketCount);
+        }
+        count.add(other.count.sum());
+        sum.add(other.sum.sum());
+        max.accumulate(other.max.get());
+    }
+
+    /**
+     * Returns the number of latencies recorded.
+     * @return the count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean latency.
+     * @return the mean in microseconds, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long total = count.sum();
+        return total == 0 ? 0.0 : (double) sum.sum() / total;
+    }
+
+    /**
+     * Returns the highest latency recorded.
+     * @return the maximum in microseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the latency below which the given percentage of the recorded latencies fall.
+     * @param percentile the percentage, between 0 and 100
+     * @return the upper bound of the bucket holding the percentile in microseconds, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = count.sum();
+        if (total == 0)
+            return 0L;
+        long rank = Math.max((long) Math.ceil(percentile / 100.0 * total), 1L);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank)
+                return Math.min(upperBoundOf(bucket), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns the bucket counting a latency.
+     * @param micros the non-negative latency in microseconds
+     * @return the index of the bucket
+     */
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) micros;
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the highest latency counted by a bucket.
+     * @param bucket the index of the bucket
+     * @return the upper bound of the bucket in microseconds
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+}
\ No newline at end of file
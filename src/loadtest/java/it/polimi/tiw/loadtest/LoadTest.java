@@ -0,0 +1,641 @@
+package it.polimi.tiw.loadtest;
+
+import it.polimi.tiw.fixture.DatabaseFixture;
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleState;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.scan.StandardJarScanner;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * LoadTest measures the throughput and the latency of the application as deployed from its war.
+ * The war is unpacked into a temporary directory, with its database and uploads properties replaced so that it runs
+ * against the in-memory H2 database filled by the DatabaseFixture and against generated image files, and deployed
+ * in an embedded Tomcat. Clients on virtual threads then sign in and send the requests of the traffic mix, and the
+ * throughput and latency percentiles of each kind of request are printed once the measurement is over.
+ * Several execution modes can be compared on the same fixture: the application is then deployed and measured once
+ * per mode, each time with the renditions generated by the previous runs deleted, and the reports are printed
+ * together at the end.
+ * The settings are read from loadtest.properties and can be overridden by JVM system properties of the same name;
+ * the settings of the application, such as execution.mode, can be overridden the same way.
+ */
+public class LoadTest {
+
+    /**
+     * Phase defines the stages of the traffic generated by the clients.
+     */
+    public enum Phase {
+
+        /**
+         * The clients are signing in.
+         */
+        SIGN_IN,
+
+        /**
+         * The clients send requests which are not recorded.
+         */
+        WARMUP,
+
+        /**
+         * The clients send requests which are recorded.
+         */
+        MEASUREMENT,
+
+        /**
+         * The clients stop sending requests.
+         */
+        FINISHED
+
+    }
+
+    /** The width in pixels of the generated originals, larger than the medium rendition */
+    private static final int ORIGINAL_WIDTH = 1600;
+
+    /** The height in pixels of the generated originals */
+    private static final int ORIGINAL_HEIGHT = 1200;
+
+    /** The number of distinct originals generated, shared by all images */
+    private static final int DISTINCT_ORIGINALS = 8;
+
+    /** The number of simulated users */
+    private final int clients;
+
+    /** The maximum time for all clients to sign in */
+    private final Duration signInTimeout;
+
+    /** The duration of the warm-up */
+    private final Duration warmup;
+
+    /** The duration of the measurement */
+    private final Duration duration;
+
+    /** The pause of each client between two requests, in milliseconds */
+    private final long thinkTime;
+
+    /** The maximum time to wait for a response */
+    private final Duration requestTimeout;
+
+    /** The relative weights of the requests */
+    private final TrafficMix trafficMix;
+
+    /** The port of the embedded Tomcat, 0 to pick a free one */
+    private final int port;
+
+    /** The request processing threads of the embedded Tomcat */
+    private final int containerThreads;
+
+    /** The execution modes to measure one after the other, or an empty list to measure the configured one */
+    private final List<String> executionModes = new ArrayList<>();
+
+    /** The statistics of each endpoint of the traffic mix */
+    private final Map<Endpoint, RequestStatistics> statistics = new EnumMap<>(Endpoint.class);
+
+    /** The number of clients which signed in */
+    private final AtomicInteger signedInClients = new AtomicInteger();
+
+    /** The time, as given by System.nanoTime, after which clients give up signing in */
+    private long signInDeadline;
+
+    /** The latch released once every client signed in or gave up */
+    private CountDownLatch signIns;
+
+    /** The current phase of the traffic */
+    private volatile Phase phase = Phase.SIGN_IN;
+
+    /** The HTTP client shared by all clients */
+    private HttpClient httpClient;
+
+    /** The address of the deployed application */
+    private URI baseUri;
+
+    /** The execution mode of the application under test */
+    private String executionMode;
+
+    /** The measured duration, in nanoseconds */
+    private long measuredNanos;
+
+    /**
+     * Creates a load test with the settings of loadtest.properties.
+     * Missing settings fall back to their defaults.
+     * @throws IllegalArgumentException if a setting is invalid
+     */
+    public LoadTest() {
+        Properties properties = new Properties();
+        try (InputStream inputStream = LoadTest.class.getClassLoader().getResourceAsStream("properties/loadtest.properties")) {
+            if (inputStream != null)
+                properties.load(inputStream);
+            else
+                System.err.println("Load test properties file not found, using defaults.");
+        } catch (IOException e) {
+            System.err.println("Error reading load test properties, using defaults: " + e.getMessage());
+        }
+        try {
+            this.clients = Math.max(Integer.parseInt(getSetting(properties, "loadtest.clients", "100")), 1);
+            this.signInTimeout = Duration.ofSeconds(Math.max(Long.parseLong(getSetting(properties, "loadtest.signInTimeout", "300")), 1L));
+            this.warmup = Duration.ofSeconds(Math.max(Long.parseLong(getSetting(properties, "loadtest.warmup", "10")), 0L));
+            this.duration = Duration.ofSeconds(Math.max(Long.parseLong(getSetting(properties, "loadtest.duration", "30")), 1L));
+            this.thinkTime = Math.max(Long.parseLong(getSetting(properties, "loadtest.thinkTime", "0")), 0L);
+            this.requestTimeout = Duration.ofMillis(Math.max(Long.parseLong(getSetting(properties, "loadtest.requestTimeout", "30000")), 1L));
+            this.port = Integer.parseInt(getSetting(properties, "loadtest.port", "0"));
+            this.containerThreads = Math.max(Integer.parseInt(getSetting(properties, "loadtest.containerThreads", "200")), 1);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Error in load test settings: " + e.getMessage(), e);
+        }
+        this.trafficMix = new TrafficMix(getSetting(properties, "loadtest.mix", "home=1,album=1,image=1,uploads.thumb=1"));
+        for (String mode : getSetting(properties, "loadtest.modes", "").split(",")) {
+            if (!mode.isBlank())
+                executionModes.add(mode.trim().toUpperCase(Locale.ROOT));
+        }
+        for (Endpoint endpoint : Endpoint.values())
+            statistics.put(endpoint, new RequestStatistics());
+    }
+
+    /**
+     * Runs the load test against a war.
+     * @param args the path of the war
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: LoadTest <war file>");
+            System.exit(2);
+        }
+        try {
+            new LoadTest().run(Paths.get(args[0]));
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Deploys the war, generates the traffic and prints the report, once per execution mode to compare.
+     * @param war the path of the war
+     * @throws IOException          if the war cannot be deployed or the image files cannot be created
+     * @throws SQLException         if the database cannot be filled
+     * @throws LifecycleException   if the embedded Tomcat cannot be started or stopped
+     * @throws InterruptedException if the load test is interrupted
+     */
+    public void run(Path war) throws IOException, SQLException, LifecycleException, InterruptedException {
+        Path workDirectory = Files.createTempDirectory("tiw-loadtest-");
+        try {
+            Path webappDirectory = workDirectory.resolve("webapp");
+            Path uploadsDirectory = workDirectory.resolve("uploads");
+            unpackWar(war, webappDirectory);
+            configureWebapp(webappDirectory, uploadsDirectory);
+            long seedStart = System.nanoTime();
+            createImageFiles(workDirectory.resolve("originals"), uploadsDirectory);
+            DatabaseFixture.initialize(uploadsDirectory);
+            System.out.printf("Seeded %d users, %d albums, %d images and %d comments in %.1f s%n",
+                    DatabaseFixture.USERS, DatabaseFixture.ALBUMS, DatabaseFixture.IMAGES,
+                    (long) DatabaseFixture.IMAGES * DatabaseFixture.COMMENTS_PER_IMAGE, (System.nanoTime() - seedStart) / 1e9);
+            if (executionModes.isEmpty())
+                executionModes.add(executionMode);
+            List<String> reports = new ArrayList<>(executionModes.size());
+            for (String mode : executionModes) {
+                startRun(mode, uploadsDirectory);
+                Tomcat tomcat = startTomcat(workDirectory.resolve("tomcat"), webappDirectory);
+                try (HttpClient client = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .followRedirects(HttpClient.Redirect.NEVER)
+                        .connectTimeout(requestTimeout)
+                        .build()) {
+                    httpClient = client;
+                    generateTraffic();
+                } finally {
+                    tomcat.stop();
+                    tomcat.destroy();
+                }
+                reports.add(createReport());
+            }
+            // Print the reports together, so that the execution modes can be compared
+            for (String report : reports)
+                System.out.print(report);
+        } finally {
+            deleteDirectory(workDirectory);
+        }
+    }
+
+    /**
+     * Returns the current phase of the traffic.
+     * @return the phase
+     */
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Returns the HTTP client shared by all clients.
+     * @return the HTTP client
+     */
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Returns the traffic mix.
+     * @return the traffic mix
+     */
+    public TrafficMix getTrafficMix() {
+        return trafficMix;
+    }
+
+    /**
+     * Returns the statistics of an endpoint.
+     * @param endpoint the endpoint
+     * @return the statistics of the endpoint
+     */
+    public RequestStatistics getStatistics(Endpoint endpoint) {
+        return statistics.get(endpoint);
+    }
+
+    /**
+     * Returns the pause of each client between two requests.
+     * @return the think time in milliseconds
+     */
+    public long getThinkTime() {
+        return thinkTime;
+    }
+
+    /**
+     * Returns the time after which clients give up signing in.
+     * @return the deadline, comparable with System.nanoTime
+     */
+    public long getSignInDeadline() {
+        return signInDeadline;
+    }
+
+    /**
+     * Returns the maximum time to wait for a response.
+     * @return the request timeout
+     */
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Returns the address of a page of the deployed application.
+     * @param path the path of the page with its query string
+     * @return the absolute address
+     */
+    public URI uri(String path) {
+        return baseUri.resolve(path);
+    }
+
+    /**
+     * Records that a client signed in or gave up.
+     * @param signedIn whether the client signed in
+     */
+    public void clientSignedIn(boolean signedIn) {
+        if (signedIn)
+            signedInClients.incrementAndGet();
+        signIns.countDown();
+    }
+
+    /**
+     * Waits until every client signed in or gave up.
+     * @throws InterruptedException if the client is interrupted while waiting
+     */
+    public void awaitSignIns() throws InterruptedException {
+        signIns.await();
+    }
+
+    /**
+     * Prepares the measurement of an execution mode: the application deployed next runs in that mode, the statistics
+     * of the previous run are discarded and so are the renditions it generated, so every mode starts from the same
+     * files and database.
+     * @param mode             the execution mode to measure
+     * @param uploadsDirectory the directory of the image files
+     * @throws SQLException if the JDBC driver cannot be registered
+     */
+    private void startRun(String mode, Path uploadsDirectory) throws SQLException {
+        executionMode = mode;
+        System.setProperty("execution.mode", mode);
+        for (Endpoint endpoint : Endpoint.values())
+            statistics.put(endpoint, new RequestStatistics());
+        signedInClients.set(0);
+        measuredNanos = 0;
+        // The application deregisters the JDBC driver when it is stopped, even the H2 one shared with the load test
+        DriverManager.registerDriver(org.h2.Driver.load());
+        phase = Phase.SIGN_IN;
+        Path derivativesDirectory = uploadsDirectory.resolve("derivatives");
+        if (Files.exists(derivativesDirectory))
+            deleteDirectory(derivativesDirectory);
+    }
+
+    /**
+     * Starts the clients, lets them sign in and warm up, measures them and stops them.
+     * @throws InterruptedException if the load test is interrupted
+     */
+    private void generateTraffic() throws InterruptedException {
+        signIns = new CountDownLatch(clients);
+        ExecutorService clientThreads = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("load-test-client-", 1).factory());
+        try {
+            long signInStart = System.nanoTime();
+            signInDeadline = signInStart + signInTimeout.toNanos();
+            for (int client = 0; client < clients; client++)
+                clientThreads.execute(new VirtualUser(this, client % DatabaseFixture.USERS, client));
+            signIns.await();
+            System.out.printf("Signed in %d of %d clients in %.1f s%n", signedInClients.get(), clients, (System.nanoTime() - signInStart) / 1e9);
+            if (signedInClients.get() == 0)
+                throw new IllegalStateException("No client could sign in.");
+            phase = Phase.WARMUP;
+            Thread.sleep(warmup.toMillis());
+            phase = Phase.MEASUREMENT;
+            long measurementStart = System.nanoTime();
+            Thread.sleep(duration.toMillis());
+            phase = Phase.FINISHED;
+            measuredNanos = System.nanoTime() - measurementStart;
+        } finally {
+            phase = Phase.FINISHED;
+            clientThreads.shutdown();
+            if (!clientThreads.awaitTermination(requestTimeout.toMillis() + thinkTime + 1000L, TimeUnit.MILLISECONDS))
+                clientThreads.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates the report of the throughput and the latency percentiles of each endpoint of the traffic mix and of
+     * all of them.
+     * @return the report, to be printed once every execution mode was measured
+     */
+    private String createReport() {
+        double seconds = measuredNanos / 1e9;
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%nExecution mode %s, %d clients, think time %d ms, %.1f s measured after %d s of warm-up%n",
+                executionMode, signedInClients.get(), thinkTime, seconds, warmup.getSeconds()));
+        report.append(String.format("Traffic mix %s%n%n", trafficMix));
+        String format = "%-18s %10s %9s %8s %10s %9s %9s %9s %9s %9s %9s%n";
+        report.append(String.format(format, "Endpoint", "Requests", "Rejected", "Failed", "Req/s", "Mean ms", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "Max ms"));
+        RequestStatistics total = new RequestStatistics();
+        for (Endpoint endpoint : trafficMix.getEndpoints()) {
+            appendRow(report, format, endpoint.getName(), statistics.get(endpoint), seconds);
+            total.add(statistics.get(endpoint));
+        }
+        appendRow(report, format, "total", total, seconds);
+        return report.toString();
+    }
+
+    /**
+     * Appends a row to the report.
+     * @param report     the report
+     * @param format     the format of the row
+     * @param name       the name of the row
+     * @param statistics the statistics to print
+     * @param seconds    the measured duration in seconds
+     */
+    private static void appendRow(StringBuilder report, String format, String name, RequestStatistics statistics, double seconds) {
+        LatencyHistogram latencies = statistics.getLatencies();
+        report.append(String.format(format, name, latencies.getCount(), statistics.getRejectedCount(), statistics.getFailedCount(),
+                String.format("%.1f", latencies.getCount() / seconds),
+                toMillis(Math.round(latencies.getMean())), toMillis(latencies.getPercentile(50)), toMillis(latencies.getPercentile(90)),
+                toMillis(latencies.getPercentile(99)), toMillis(latencies.getPercentile(99.9)), toMillis(latencies.getMax())));
+    }
+
+    /**
+     * Formats a latency in milliseconds.
+     * @param micros the latency in microseconds
+     * @return the latency in milliseconds with two decimals
+     */
+    private static String toMillis(long micros) {
+        return String.format("%.2f", micros / 1000.0);
+    }
+
+    /**
+     * Extracts a war into a directory.
+     * @param war       the path of the war
+     * @param directory the directory to extract it into
+     * @throws IOException if the war cannot be read or an entry points outside the directory
+     */
+    private static void unpackWar(Path war, Path directory) throws IOException {
+        Path root = directory.toAbsolutePath().normalize();
+        try (ZipFile zipFile = new ZipFile(war.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                Path target = root.resolve(entry.getName()).normalize();
+                if (!target.startsWith(root))
+                    throw new IOException("Invalid war entry: " + entry.getName());
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.createDirectories(target.getParent());
+                    try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                        Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the database properties of the unpacked war with the ones of the fixture and points its uploads
+     * directory at the generated image files.
+     * @param webappDirectory  the directory of the unpacked war
+     * @param uploadsDirectory the directory of the image files
+     * @throws IOException if the properties cannot be read or written
+     */
+    private void configureWebapp(Path webappDirectory, Path uploadsDirectory) throws IOException {
+        Path propertiesDirectory = webappDirectory.resolve("WEB-INF/classes/properties");
+        try (InputStream inputStream = LoadTest.class.getClassLoader().getResourceAsStream("properties/database.properties")) {
+            if (inputStream == null)
+                throw new IOException("Fixture database properties file not found.");
+            Files.copy(inputStream, propertiesDirectory.resolve("database.properties"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Path uploadsPropertiesFile = propertiesDirectory.resolve("uploads.properties");
+        Properties uploadsProperties = loadProperties(uploadsPropertiesFile);
+        uploadsProperties.setProperty("uploads.path", uploadsDirectory.toAbsolutePath().toString());
+        try (OutputStream outputStream = Files.newOutputStream(uploadsPropertiesFile)) {
+            uploadsProperties.store(outputStream, "Uploads directory of the load test");
+        }
+        Properties executionProperties = loadProperties(propertiesDirectory.resolve("execution.properties"));
+        executionMode = System.getProperty("execution.mode", executionProperties.getProperty("execution.mode", "POOL")).trim();
+    }
+
+    /**
+     * Generates a few distinct originals and gives each image of the fixture one of them, as a hard link
+     * where the file system supports it and as a copy otherwise.
+     * @param originalsDirectory the directory of the generated originals
+     * @param uploadsDirectory   the directory of the image files
+     * @throws IOException if a file cannot be written
+     */
+    private static void createImageFiles(Path originalsDirectory, Path uploadsDirectory) throws IOException {
+        Files.createDirectories(originalsDirectory);
+        Files.createDirectories(uploadsDirectory);
+        Path[] originals = new Path[DISTINCT_ORIGINALS];
+        for (int i = 0; i < DISTINCT_ORIGINALS; i++) {
+            originals[i] = originalsDirectory.resolve("original-" + i + ".jpg");
+            if (!ImageIO.write(drawOriginal(i), "jpg", originals[i].toFile()))
+                throw new IOException("No JPEG writer available.");
+        }
+        boolean linksSupported = true;
+        for (int imageId = 1; imageId <= DatabaseFixture.IMAGES; imageId++) {
+            Path original = originals[imageId % DISTINCT_ORIGINALS];
+            Path imageFile = uploadsDirectory.resolve(imageId + ".jpg");
+            if (linksSupported) {
+                try {
+                    Files.createLink(imageFile, original);
+                    continue;
+                } catch (IOException | UnsupportedOperationException e) {
+                    linksSupported = false;
+                }
+            }
+            Files.copy(original, imageFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Draws an original: a gradient covered with shapes, so that it compresses like a photograph rather than
+     * like a flat image.
+     * @param seed the seed of the colours and shapes
+     * @return the drawn image
+     */
+    private static BufferedImage drawOriginal(int seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(ORIGINAL_WIDTH, ORIGINAL_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setPaint(new GradientPaint(0, 0, new Color(random.nextInt(0x1000000)),
+                    ORIGINAL_WIDTH, ORIGINAL_HEIGHT, new Color(random.nextInt(0x1000000))));
+            graphics.fillRect(0, 0, ORIGINAL_WIDTH, ORIGINAL_HEIGHT);
+            for (int i = 0; i < 300; i++) {
+                graphics.setColor(new Color(random.nextInt(0x1000000)));
+                graphics.fillOval(random.nextInt(ORIGINAL_WIDTH), random.nextInt(ORIGINAL_HEIGHT), 10 + random.nextInt(200), 10 + random.nextInt(200));
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Deploys the unpacked war at the root context of an embedded Tomcat and starts it.
+     * @param baseDirectory   the working directory of Tomcat
+     * @param webappDirectory the directory of the unpacked war
+     * @return the started Tomcat
+     * @throws LifecycleException if Tomcat cannot be started
+     */
+    private Tomcat startTomcat(Path baseDirectory, Path webappDirectory) throws LifecycleException {
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(baseDirectory.toAbsolutePath().toString());
+        tomcat.setPort(port);
+        Connector connector = tomcat.getConnector();
+        connector.setProperty("maxThreads", String.valueOf(containerThreads));
+        // The default web.xml also declares the JSP servlet, whose Jasper engine is not on the classpath:
+        // the application has no JSP and only maps its static files to the default servlet
+        tomcat.setAddDefaultWebXmlToWebapp(false);
+        Context context = tomcat.addWebapp("", webappDirectory.toAbsolutePath().toString());
+        context.addLifecycleListener(event -> {
+            if (Lifecycle.BEFORE_START_EVENT.equals(event.getType()))
+                addDefaultServlet(context);
+        });
+        // The application is packaged in the war, the rest of the classpath belongs to the load test
+        StandardJarScanner jarScanner = new StandardJarScanner();
+        jarScanner.setScanClassPath(false);
+        context.setJarScanner(jarScanner);
+        tomcat.start();
+        if (context.getState() != LifecycleState.STARTED) {
+            tomcat.stop();
+            tomcat.destroy();
+            throw new LifecycleException("The application failed to start.");
+        }
+        baseUri = URI.create("http://localhost:" + connector.getLocalPort());
+        System.out.println("Application deployed at " + baseUri + " in " + executionMode + " execution mode");
+        return tomcat;
+    }
+
+    /**
+     * Declares the default servlet and the MIME types of the default web.xml, before the web.xml of the
+     * application is applied.
+     * @param context the context of the application
+     */
+    private static void addDefaultServlet(Context context) {
+        Wrapper defaultServlet = Tomcat.addServlet(context, "default", "org.apache.catalina.servlets.DefaultServlet");
+        defaultServlet.setLoadOnStartup(1);
+        defaultServlet.setOverridable(true);
+        Tomcat.addDefaultMimeTypeMappings(context);
+    }
+
+    /**
+     * Loads a properties file.
+     * @param file the path of the file
+     * @return the loaded properties
+     * @throws IOException if the file cannot be read
+     */
+    private static Properties loadProperties(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            properties.load(inputStream);
+        }
+        return properties;
+    }
+
+    /**
+     * Deletes a directory with its content, reporting the files which cannot be deleted.
+     * @param directory the directory to delete
+     */
+    private static void deleteDirectory(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    System.err.println("Could not delete " + path + ": " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Could not delete " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns a setting, giving precedence to the JVM system property of the same name.
+     * @param properties   the loaded load test properties
+     * @param key          the name of the setting
+     * @param defaultValue the value to return if the setting is not set
+     * @return the trimmed value of the setting, or the default value
+     */
+    private static String getSetting(Properties properties, String key, String defaultValue) {
+        String value = System.getProperty(key, properties.getProperty(key));
+        return value != null ? value.trim() : defaultValue;
+    }
+
+}
\ No newline at end of file
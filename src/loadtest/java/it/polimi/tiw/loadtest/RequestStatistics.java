@@ -0,0 +1,75 @@
+package it.polimi.tiw.loadtest;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RequestStatistics collects the outcome of the measured requests of an endpoint: the latency of the successful ones,
+ * the ones rejected by the application with 503 Service Unavailable, and the failed ones.
+ */
+public class RequestStatistics {
+
+    /** The latencies of the requests answered with 200 OK */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /** The number of requests answered with 503 Service Unavailable */
+    private final LongAdder rejected = new LongAdder();
+
+    /** The number of requests answered with another status, or not answered in time */
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * Records a request that received a response.
+     * @param status the status code of the response
+     * @param micros the time from sending the request to receiving the whole response, in microseconds
+     */
+    public void recordResponse(int status, long micros) {
+        if (status == 200)
+            latencies.record(micros);
+        else if (status == 503)
+            rejected.increment();
+        else
+            failed.increment();
+    }
+
+    /**
+     * Records a request that received no response.
+     */
+    public void recordFailure() {
+        failed.increment();
+    }
+
+    /**
+     * Adds the requests recorded by other statistics to these ones.
+     * @param other the statistics to add
+     */
+    public void add(RequestStatistics other) {
+        latencies.add(other.latencies);
+        rejected.add(other.rejected.sum());
+        failed.add(other.failed.sum());
+    }
+
+    /**
+     * Returns the latencies of the successful requests.
+     * @return the latency histogram
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Returns the number of requests rejected with 503 Service Unavailable.
+     * @return the rejected count
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the number of requests answered with an unexpected status or not answered.
+     * @return the failed count
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+package it.polimi.tiw.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * TrafficMix picks the endpoint of each request at random, in proportion to the weights of the mix.
+ * A mix is written as comma-separated name=weight pairs, e.g. home=15,album=15,uploads.thumb=40.
+ */
+public class TrafficMix {
+
+    /** The endpoints with a positive weight */
+    private final List<Endpoint> endpoints = new ArrayList<>();
+
+    /** The running sum of the weights, aligned with the endpoints */
+    private final List<Integer> cumulativeWeights = new ArrayList<>();
+
+    /** The sum of all weights */
+    private final int totalWeight;
+
+    /**
+     * Parses a traffic mix.
+     * @param mix the comma-separated name=weight pairs
+     * @throws IllegalArgumentException if a pair is malformed, names an unknown endpoint or no weight is positive
+     */
+    public TrafficMix(String mix) {
+        int total = 0;
+        for (String pair : mix.split(",")) {
+            if (pair.isBlank())
+                continue;
+            String[] parts = pair.split("=");
+            if (parts.length != 2)
+                throw new IllegalArgumentException("Invalid traffic mix entry: " + pair.trim());
+            Endpoint endpoint = Endpoint.fromName(parts[0].trim());
+            if (endpoint == null)
+                throw new IllegalArgumentException("Unknown endpoint in traffic mix: " + parts[0].trim());
+            int weight;
+            try {
+                weight = Integer.parseInt(parts[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid weight in traffic mix: " + pair.trim(), e);
+            }
+            if (weight <= 0)
+                continue;
+            total += weight;
+            endpoints.add(endpoint);
+            cumulativeWeights.add(total);
+        }
+        if (total == 0)
+            throw new IllegalArgumentException("The traffic mix has no endpoint with a positive weight.");
+        this.totalWeight = total;
+    }
+
+    /**
+     * Picks the endpoint of the next request.
+     * @param random the random generator of the client
+     * @return the endpoint
+     */
+    public Endpoint next(Random random) {
+        int value = random.nextInt(totalWeight);
+        for (int i = 0; i < endpoints.size(); i++) {
+            if (value < cumulativeWeights.get(i))
+                return endpoints.get(i);
+        }
+        return endpoints.get(endpoints.size() - 1);
+    }
+
+    /**
+     * Returns the endpoints with a positive weight, in the order of the mix.
+     * @return the endpoints
+     */
+    public List<Endpoint> getEndpoints() {
+        return new ArrayList<>(endpoints);
+    }
+
+    /**
+     * Returns the mix as comma-separated name=weight pairs.
+     * @return the description of the mix
+     */
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        int previous = 0;
+        for (int i = 0; i < endpoints.size(); i++) {
+            if (i > 0)
+                description.append(',');
+            description.append(endpoints.get(i).getName()).append('=').append(cumulativeWeights.get(i) - previous);
+            previous = cumulativeWeights.get(i);
+        }
+        return description.toString();
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,155 @@
+package it.polimi.tiw.loadtest;
+
+import it.polimi.tiw.fixture.DatabaseFixture;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * VirtualUser is a client of the load test: it signs in as a user of the DatabaseFixture, with its own session,
+ * then sends the requests of the traffic mix one after the other until the load test finishes.
+ * Only the requests started during the measurement are recorded.
+ */
+public class VirtualUser implements Runnable {
+
+    /** The load test the client belongs to */
+    private final LoadTest loadTest;
+
+    /** The index of the user the client signs in as */
+    private final int user;
+
+    /** The random generator picking the requests, seeded with the index of the client */
+    private final Random random;
+
+    /** The cookies of the session of the client */
+    private String cookies;
+
+    /**
+     * Creates a client.
+     * @param loadTest the load test the client belongs to
+     * @param user     the index of the user the client signs in as
+     * @param client   the index of the client, used as seed of its requests
+     */
+    public VirtualUser(LoadTest loadTest, int user, int client) {
+        this.loadTest = loadTest;
+        this.user = user;
+        this.random = new Random(client);
+    }
+
+    /**
+     * Signs in, waits for the other clients to sign in, then sends requests until the load test finishes.
+     */
+    @Override
+    public void run() {
+        boolean signedIn = false;
+        try {
+            signedIn = signIn();
+        } finally {
+            loadTest.clientSignedIn(signedIn);
+        }
+        if (!signedIn)
+            return;
+        try {
+            loadTest.awaitSignIns();
+            while (loadTest.getPhase() != LoadTest.Phase.FINISHED) {
+                sendRequest();
+                if (loadTest.getThinkTime() > 0)
+                    Thread.sleep(loadTest.getThinkTime());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Signs in through the sign-in form, retrying until the sign-in deadline of the load test while the application
+     * rejects the attempt as overloaded or does not answer in time. Retries are spread over a second so that
+     * the rejected clients do not come back all at once.
+     * @return true if the client has a session, false otherwise
+     */
+    private boolean signIn() {
+        String email = DatabaseFixture.email(user);
+        String form = "action=signIn&email=" + URLEncoder.encode(email, StandardCharsets.UTF_8)
+                + "&password=" + URLEncoder.encode(DatabaseFixture.PASSWORD, StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(loadTest.uri("/"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .timeout(loadTest.getRequestTimeout())
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        try {
+            while (System.nanoTime() - loadTest.getSignInDeadline() < 0) {
+                HttpResponse<Void> response;
+                try {
+                    response = loadTest.getHttpClient().send(request, HttpResponse.BodyHandlers.discarding());
+                } catch (HttpTimeoutException e) {
+                    continue;
+                }
+                if (response.statusCode() == 503) {
+                    long retryAfter = response.headers().firstValueAsLong("Retry-After").orElse(1L);
+                    Thread.sleep(Math.max(retryAfter, 1L) * 1000L + random.nextInt(1000));
+                    continue;
+                }
+                String location = response.headers().firstValue("Location").orElse("");
+                if (response.statusCode() == 302 && location.endsWith("/home")) {
+                    cookies = getCookies(response.headers().allValues("Set-Cookie"));
+                    return !cookies.isEmpty();
+                }
+                System.err.println("Sign-in of " + email + " failed with status " + response.statusCode() + ".");
+                return false;
+            }
+            System.err.println("Sign-in of " + email + " not accepted before the sign-in timeout, giving up.");
+        } catch (IOException e) {
+            System.err.println("Sign-in of " + email + " failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Sends a request picked from the traffic mix and records its outcome if it was started during the measurement.
+     * The whole response body is received before the request counts as completed.
+     * @throws InterruptedException if the client is interrupted while waiting for the response
+     */
+    private void sendRequest() throws InterruptedException {
+        Endpoint endpoint = loadTest.getTrafficMix().next(random);
+        HttpRequest request = HttpRequest.newBuilder(loadTest.uri(endpoint.path(random)))
+                .header("Cookie", cookies)
+                .timeout(loadTest.getRequestTimeout())
+                .GET()
+                .build();
+        boolean measured = loadTest.getPhase() == LoadTest.Phase.MEASUREMENT;
+        long start = System.nanoTime();
+        try {
+            HttpResponse<Void> response = loadTest.getHttpClient().send(request, HttpResponse.BodyHandlers.discarding());
+            if (measured)
+                loadTest.getStatistics(endpoint).recordResponse(response.statusCode(), (System.nanoTime() - start) / 1000L);
+        } catch (IOException e) {
+            if (measured)
+                loadTest.getStatistics(endpoint).recordFailure();
+        }
+    }
+
+    /**
+     * Joins the name=value pairs of the cookies set by a response into the value of a Cookie header.
+     * @param setCookies the values of the Set-Cookie headers
+     * @return the Cookie header value, empty if no cookie was set
+     */
+    private static String getCookies(List<String> setCookies) {
+        StringBuilder cookies = new StringBuilder();
+        for (String setCookie : setCookies) {
+            int end = setCookie.indexOf(';');
+            if (cookies.length() > 0)
+                cookies.append("; ");
+            cookies.append(end == -1 ? setCookie : setCookie.substring(0, end));
+        }
+        return cookies.toString();
+    }
+
+}
\ No newline at end of file
@@ -3,13 +3,13 @@ package it.polimi.tiw.controller;
 import it.polimi.tiw.dao.AlbumDAO;
 import it.polimi.tiw.model.Album;
 import it.polimi.tiw.model.Image;
+import it.polimi.tiw.util.PageCursor;
 import it.polimi.tiw.util.ViewEngine;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.WebContext;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
@@ -24,7 +24,7 @@ import java.util.ArrayList;
  * It also handles actions such as logout and redirects users based on their actions or
  * errors encountered during processing.
  */
-public class AlbumServlet extends HttpServlet {
+public class AlbumServlet extends AsyncHttpServlet {
 
     /**
      * Unique identifier for Serializable class to ensure compatibility
@@ -114,7 +114,7 @@ public class AlbumServlet extends HttpServlet {
         else if ("logout".equals(action))
             handleLogout(request, response);
         else
-            response.sendRedirect(request.getContextPath() + "/album?albumId=" + albumId + "&page=0");
+            response.sendRedirect(request.getContextPath() + "/album?albumId=" + albumId);
     }
 
     /**
@@ -188,49 +188,63 @@ public class AlbumServlet extends HttpServlet {
 
     /**
      * Loads and paginates the images for the specified album.
-     * Retrieves all images associated with the album ID, calculates the current page,
-     * and sets the paginated images along with pagination details in the web context.
-     * @param request    the HTTP request object, used to retrieve the "page" parameter.
+     * Pages are addressed by opaque cursors: the "after" parameter holds the cursor of the last image of the
+     * previous page and the "before" parameter the cursor of the first image of the next page. One image more
+     * than the page size is read to know whether a further page exists, without counting the images.
+     * @param request    the HTTP request object, used to retrieve the "after" and "before" parameters.
      * @param webContext the WebContext object for managing template variables.
      * @param albumId    the ID of the album whose images are to be loaded.
      * @throws SQLException if a database access error occurs while retrieving the images.
      */
     private void handleLoadAlbumImages(HttpServletRequest request, WebContext webContext, int albumId) throws SQLException {
         // Default information
-        int page = 0;
         int pageSize = 5;
-        // Get album info
         AlbumDAO albumDAO = new AlbumDAO();
-        int totalImages = albumDAO.getImagesCountByAlbumId(albumId);
-        // Calculate the maximum page index
-        int maxPage = 0;
-        if (totalImages > 0)
-            maxPage = (int) Math.ceil((double) totalImages / pageSize) - 1;
-        else
-            maxPage = 0;
-        // Manage current page with parameter (first page is 0)
-        String pageParam = request.getParameter("page");
-        if (pageParam != null && !pageParam.isEmpty()) {
-            try {
-                page = Integer.parseInt(pageParam);
-            } catch (NumberFormatException e) {
-                page = 0;
-            }
-            if (page < 0 || page > maxPage)
-                page = 0;
+        PageCursor after = PageCursor.fromToken(request.getParameter("after"));
+        PageCursor before = after == null ? PageCursor.fromToken(request.getParameter("before")) : null;
+        ArrayList<Image> images;
+        boolean hasPrevious;
+        boolean hasNext;
+        if (before != null) {
+            // Going backwards: the extra image, if any, is the oldest one of the preceding page
+            images = albumDAO.getImagesByAlbumIdBefore(albumId, before, pageSize + 1);
+            hasPrevious = images.size() > pageSize;
+            if (hasPrevious)
+                images.remove(0);
+            hasNext = true;
+        } else {
+            images = albumDAO.getImagesByAlbumIdAfter(albumId, after, pageSize + 1);
+            hasNext = images.size() > pageSize;
+            if (hasNext)
+                images.remove(images.size() - 1);
+            hasPrevious = after != null;
+        }
+        // A cursor past either end of the album, for example after deletions, falls back to the first page
+        if (images.isEmpty() && (after != null || before != null)) {
+            images = albumDAO.getImagesByAlbumIdAfter(albumId, null, pageSize + 1);
+            hasNext = images.size() > pageSize;
+            if (hasNext)
+                images.remove(images.size() - 1);
+            hasPrevious = false;
+        }
+        // Cursors of the first and last image shown, for the navigation links
+        String previousToken = null;
+        String nextToken = null;
+        if (!images.isEmpty()) {
+            Image firstImage = images.get(0);
+            Image lastImage = images.get(images.size() - 1);
+            previousToken = new PageCursor(firstImage.getImageDate(), firstImage.getImageId()).toToken();
+            nextToken = new PageCursor(lastImage.getImageDate(), lastImage.getImageId()).toToken();
         } else {
-            page = 0;
+            hasPrevious = false;
+            hasNext = false;
         }
-        // Calculate indexes
-        int startIndex = page * pageSize;
-        int endIndex = Math.min(startIndex + pageSize, totalImages);
-        // Load images to the page
-        ArrayList<Image> images = albumDAO.getImagesByAlbumIdWithPagination(albumId, pageSize, startIndex);
         // WebContext
         webContext.setVariable("images", images);
-        webContext.setVariable("currentPage", page);
-        webContext.setVariable("hasPrevious", page > 0);
-        webContext.setVariable("hasNext", endIndex < totalImages);
+        webContext.setVariable("hasPrevious", hasPrevious);
+        webContext.setVariable("hasNext", hasNext);
+        webContext.setVariable("previousToken", previousToken);
+        webContext.setVariable("nextToken", nextToken);
     }
 
     /**
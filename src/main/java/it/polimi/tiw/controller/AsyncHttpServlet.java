@@ -0,0 +1,288 @@
+package it.polimi.tiw.controller;
+
+import it.polimi.tiw.util.ConnectionContext;
+import it.polimi.tiw.util.RequestExecutor;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AsyncHttpServlet is the base class of the servlets whose handlers block on the database or the disk.
+ * Unless the RequestExecutor runs in SYNC mode, each request is put in asynchronous mode and its handler
+ * (doGet, doPost, ...) runs on a worker thread or a virtual thread of the RequestExecutor, so the container thread
+ * is returned to the container right away instead of waiting on MySQL.
+ * A request is answered with 503 Service Unavailable if the executor is saturated or if it does not
+ * complete within the configured timeout; a handler still running at that point can no longer write its response.
+ * Handlers streaming large responses lift the timeout once they start writing, so slow downloads are not cut off.
+ * The worker thread binds its own ConnectionContext, so the DAOs of a request keep sharing a single connection.
+ * Subclasses can keep some requests on the container thread by overriding isHandledAsynchronously.
+ */
+public abstract class AsyncHttpServlet extends HttpServlet {
+
+    /**
+     * Unique identifier for Serializable class to ensure compatibility
+     * during the deserialization process. Changing this value can cause
+     * deserialization issues if there are any modifications to the class structure.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of seconds after which a client rejected because of overload is invited to retry.
+     */
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    /**
+     * Dispatches the request to the handler of its method, on a worker thread if the executor is asynchronous.
+     * @param request  the HTTP request object.
+     * @param response the HTTP response object.
+     * @throws ServletException if an error occurs during processing.
+     * @throws IOException      if an I/O error occurs during processing.
+     */
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        RequestExecutor requestExecutor = RequestExecutor.getInstance();
+        if (!requestExecutor.isAsync() || !request.isAsyncSupported() || !isHandledAsynchronously(request)) {
+            super.service(request, response);
+            return;
+        }
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(requestExecutor.getTimeout());
+        AsyncExchange exchange = new AsyncExchange(asyncContext, request, response, requestExecutor);
+        asyncContext.addListener(exchange);
+        try {
+            exchange.future = requestExecutor.submit(exchange);
+        } catch (RejectedExecutionException e) {
+            exchange.abort(true);
+        }
+    }
+
+    /**
+     * Checks whether a request is handed to the RequestExecutor when it runs asynchronously.
+     * Requests for which this returns false are handled on the container thread, as in SYNC mode.
+     * @param request the HTTP request object.
+     * @return true to handle the request on the RequestExecutor, false to handle it on the container thread.
+     */
+    protected boolean isHandledAsynchronously(HttpServletRequest request) {
+        return true;
+    }
+
+    /**
+     * Lifts the timeout of an asynchronous request whose handler is about to stream its response, so that a long
+     * download is not aborted halfway; a client that stops reading still fails the writes and the request.
+     * @param request the HTTP request object.
+     */
+    protected static void liftTimeout(HttpServletRequest request) {
+        try {
+            if (request.isAsyncStarted())
+                request.getAsyncContext().setTimeout(0);
+        } catch (IllegalStateException e) {
+            // The request was aborted meanwhile, and the handler can no longer write its response
+        }
+    }
+
+    /**
+     * Answers a request that cannot be served because the server is overloaded, inviting the client to retry.
+     * @param response the HTTP response object.
+     * @throws IOException if an I/O error occurs while sending the response.
+     */
+    protected static void sendServiceUnavailable(HttpServletResponse response) throws IOException {
+        response.setHeader("Retry-After", RETRY_AFTER_SECONDS);
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * AsyncExchange runs the handler of an asynchronous request on a worker thread and answers the request itself
+     * if the handler cannot, because the request was rejected, timed out or failed on the client side.
+     * The state of the exchange decides which of the worker thread and the container completes the request.
+     */
+    private class AsyncExchange implements Runnable, AsyncListener {
+
+        /** The handler is waiting for a worker thread */
+        private static final int QUEUED = 0;
+
+        /** The handler is running on a worker thread */
+        private static final int RUNNING = 1;
+
+        /** The handler completed and the worker thread completes the request */
+        private static final int FINISHED = 2;
+
+        /** The request was answered without the handler, which must not run or write anymore */
+        private static final int ABORTED = 3;
+
+        /** The lock guarding the state and serializing the operations on the response */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /** The asynchronous context of the request */
+        private final AsyncContext asyncContext;
+
+        /** The request */
+        private final HttpServletRequest request;
+
+        /** The response, used when the request is answered without the handler */
+        private final HttpServletResponse response;
+
+        /** The response handed to the handler */
+        private final GuardedResponse guardedResponse;
+
+        /** The executor running the handler */
+        private final RequestExecutor requestExecutor;
+
+        /** The state of the exchange; guarded by the lock */
+        private int state = QUEUED;
+
+        /** The Future of the handler, used to interrupt it when the request is aborted */
+        private volatile Future<?> future;
+
+        /**
+         * Creates the exchange of an asynchronous request.
+         * @param asyncContext    the asynchronous context of the request
+         * @param request         the HTTP request object
+         * @param response        the HTTP response object
+         * @param requestExecutor the executor running the handler
+         */
+        AsyncExchange(AsyncContext asyncContext, HttpServletRequest request, HttpServletResponse response, RequestExecutor requestExecutor) {
+            this.asyncContext = asyncContext;
+            this.request = request;
+            this.response = response;
+            this.guardedResponse = new GuardedResponse(response, lock);
+            this.requestExecutor = requestExecutor;
+        }
+
+        /**
+         * Runs the handler on the worker thread, within a ConnectionContext, and completes the request.
+         */
+        @Override
+        public void run() {
+            lock.lock();
+            try {
+                if (state != QUEUED)
+                    return;
+                state = RUNNING;
+            } finally {
+                lock.unlock();
+            }
+            boolean bound = false;
+            try {
+                bound = ConnectionContext.bind();
+                AsyncHttpServlet.super.service(request, guardedResponse);
+            } catch (Exception e) {
+                handleFailure(e);
+            } finally {
+                if (bound)
+                    ConnectionContext.unbind();
+                finish();
+            }
+        }
+
+        /**
+         * Reports a handler failure to the client, if the response is still attached and not committed.
+         * @param e the exception thrown by the handler
+         */
+        private void handleFailure(Exception e) {
+            if (guardedResponse.isCommitted()) {
+                System.err.println("Request handler failed after the response was committed: " + e.getMessage());
+                return;
+            }
+            e.printStackTrace();
+            try {
+                guardedResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            } catch (IOException | IllegalStateException sendError) {
+                System.err.println("Could not report request handler failure: " + sendError.getMessage());
+            }
+        }
+
+        /**
+         * Completes the request after the handler returned, unless it was already answered.
+         */
+        private void finish() {
+            lock.lock();
+            try {
+                if (state == ABORTED)
+                    return;
+                state = FINISHED;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                asyncContext.complete();
+            } catch (IllegalStateException e) {
+                System.err.println("Could not complete request: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Answers the request without the handler, detaching the response from it and interrupting it.
+         * @param serviceUnavailable whether to answer with 503 Service Unavailable, false if the client is gone
+         */
+        private void abort(boolean serviceUnavailable) {
+            lock.lock();
+            try {
+                if (state == FINISHED || state == ABORTED)
+                    return;
+                state = ABORTED;
+                guardedResponse.detach();
+            } finally {
+                lock.unlock();
+            }
+            Future<?> handler = future;
+            if (handler != null)
+                handler.cancel(true);
+            try {
+                if (serviceUnavailable && !response.isCommitted())
+                    sendServiceUnavailable(response);
+            } catch (IOException | IllegalStateException e) {
+                System.err.println("Could not send 503 response: " + e.getMessage());
+            } finally {
+                try {
+                    asyncContext.complete();
+                } catch (IllegalStateException e) {
+                    System.err.println("Could not complete request: " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Answers the request with 503 Service Unavailable when it did not complete in time.
+         * @param event the AsyncEvent of the timeout
+         */
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            requestExecutor.recordTimeout();
+            abort(true);
+        }
+
+        /**
+         * Stops the handler when the request failed, for example because the client disconnected.
+         * @param event the AsyncEvent of the failure
+         */
+        @Override
+        public void onError(AsyncEvent event) {
+            abort(false);
+        }
+
+        /**
+         * Called when the request completed; nothing is left to do.
+         * @param event the AsyncEvent of the completion
+         */
+        @Override
+        public void onComplete(AsyncEvent event) {}
+
+        /**
+         * Called if the request is put in asynchronous mode again; nothing is left to do.
+         * @param event the AsyncEvent of the restart
+         */
+        @Override
+        public void onStartAsync(AsyncEvent event) {}
+
+    }
+
+}
\ No newline at end of file
@@ -67,4 +67,18 @@ public class ErrorServlet extends HttpServlet {
         templateEngine.process("error.html", webContext, response.getWriter());
     }
 
+    /**
+     * Handles POST requests to the servlet.
+     * Errors raised while handling a form submission are dispatched here with the method of the submission,
+     * so they render the same error page as GET requests instead of a 405 Method Not Allowed.
+     * @param request  the HTTP request object.
+     * @param response the HTTP response object.
+     * @throws ServletException if an error occurs during processing.
+     * @throws IOException      if an I/O error occurs during processing.
+     */
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        doGet(request, response);
+    }
+
 }
\ No newline at end of file
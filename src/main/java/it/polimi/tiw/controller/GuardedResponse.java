@@ -0,0 +1,603 @@
+package it.polimi.tiw.controller;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * GuardedResponse is the response handed to a handler running on a worker thread.
+ * Once the request is answered by someone else, for example with 503 Service Unavailable after a timeout,
+ * the response is detached: further changes to it are ignored and writes fail with an IOException,
+ * so that a late handler stops and never touches a response the container has already recycled.
+ * Every operation and the detachment are serialized by a lock shared with the owner of the request.
+ */
+class GuardedResponse extends HttpServletResponseWrapper {
+
+    /** The lock serializing the operations on the response with its detachment */
+    private final ReentrantLock lock;
+
+    /** Whether the response was detached from the handler; guarded by the lock */
+    private boolean detached = false;
+
+    /** The guarded output stream, created on first use */
+    private ServletOutputStream outputStream;
+
+    /** The guarded writer, created on first use */
+    private PrintWriter writer;
+
+    /**
+     * Wraps the response of an asynchronous request.
+     * @param response the response to guard
+     * @param lock     the lock serializing the operations on the response with its detachment
+     */
+    GuardedResponse(HttpServletResponse response, ReentrantLock lock) {
+        super(response);
+        this.lock = lock;
+    }
+
+    /**
+     * Detaches the response from the handler. The caller must hold the lock.
+     */
+    void detach() {
+        detached = true;
+    }
+
+    /**
+     * Fails if the response was detached. The caller must hold the lock.
+     * @throws IOException if the response was detached
+     */
+    private void checkAttached() throws IOException {
+        if (detached)
+            throw new IOException("The request was already answered.");
+    }
+
+    /**
+     * Returns the guarded output stream of the response.
+     * @return the guarded ServletOutputStream
+     * @throws IOException if the response was detached or an I/O error occurs
+     */
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        lock.lock();
+        try {
+            checkAttached();
+            if (outputStream == null)
+                outputStream = new GuardedOutputStream(super.getOutputStream());
+            return outputStream;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the guarded writer of the response.
+     * @return the guarded PrintWriter
+     * @throws IOException if the response was detached or an I/O error occurs
+     */
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        lock.lock();
+        try {
+            checkAttached();
+            if (writer == null)
+                writer = new PrintWriter(new GuardedWriter(super.getWriter()));
+            return writer;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether the response was committed; a detached response counts as committed.
+     * @return true if the response was committed or detached, false otherwise
+     */
+    @Override
+    public boolean isCommitted() {
+        lock.lock();
+        try {
+            return detached || super.isCommitted();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends an error response with a message.
+     * @param sc  the HTTP status code
+     * @param msg the error message
+     * @throws IOException if the response was detached or an I/O error occurs
+     */
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        lock.lock();
+        try {
+            checkAttached();
+            super.sendError(sc, msg);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends an error response.
+     * @param sc the HTTP status code
+     * @throws IOException if the response was detached or an I/O error occurs
+     */
+    @Override
+    public void sendError(int sc) throws IOException {
+        lock.lock();
+        try {
+            checkAttached();
+            super.sendError(sc);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends a redirect response.
+     * @param location the redirect location
+     * @throws IOException if the response was detached or an I/O error occurs
+     */
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        lock.lock();
+        try {
+            checkAttached();
+            super.sendRedirect(location);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Commits the buffered content of the response.
+     * @throws IOException if the response was detached or an I/O error occurs
+     */
+    @Override
+    public void flushBuffer() throws IOException {
+        lock.lock();
+        try {
+            checkAttached();
+            super.flushBuffer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the status code unless the response was detached.
+     * @param sc the HTTP status code
+     */
+    @Override
+    public void setStatus(int sc) {
+        lock.lock();
+        try {
+            if (!detached)
+                super.setStatus(sc);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets a header unless the response was detached.
+     * @param name  the name of the header
+     * @param value the value of the header
+     */
+    @Override
+    public void setHeader(String name, String value) {
+        lock.lock();
+        try {
+            if (!detached)
+                super.setHeader(name, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a header unless the response was detached.
+     * @param name  the name of the header
+     * @param value the value of the header
+     */
+    @Override
+    public void addHeader(String name, String value) {
+        lock.lock();
+        try {
+            if (!detached)
+                super.addHeader(name, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets an integer header unless the response was detached.
+     * @param name  the name of the header
+     * @param value the value of the header
+     */
+    @Override
+    public void setIntHeader(String name, int value) {
+        lock.lock();
+        try {
+            if (!detached)
+                super.setIntHeader(name, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an integer header unless the response was detached.
+     * @param name  the name of the header
+     * @param value the value of the header
+     */
+    @Override
+    public void addIntHeader(String name, int value) {
+        lock.lock();
+        try {
+            if (!detached)
+                super.addIntHeader(name, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets a date header unless the response was detached.
+     * @param name the name of the header
+     * @param date the date in milliseconds since the epoch
+     */
+    @Override
+    public void setDateHeader(String name, long date) {
+        lock.lock();
+        try {
+            if (!detached)
+                super.setDateHeader(name, date);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a date header unless the response was detached.
+     * @param name the name of the header
+     * @param date the date in milliseconds since the epoch
+     */
+    @Override
+    public void addDateHeader(String name, long date) {
+        lock.lock();
+        try {
+            if (!detached)
+                super.addDateHeader(name, date);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a cookie unless the response was detached.
+     * @param cookie the cookie to add
+     */
+    @Override
+    public void addCookie(Cookie cookie) {
+        lock.lock();
+        try {
+            if (!detached)
+                super.addCookie(cookie);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the content type unless the response was detached.
+     * @param type the content type
+     */
+    @Override
+    public void setContentType(String type) {
+        lock.lock();
+        try {
+            if (!detached)
+                super.setContentType(type);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the content length unless the response was detached.
+     * @param len the content length in bytes
+     */
+    @Override
+    public void setContentLength(int len) {
+        lock.lock();
+        try {
+            if (!detached)
+                super.setContentLength(len);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the content length unless the response was detached.
+     * @param len the content length in bytes
+     */
+    @Override
+    public void setContentLengthLong(long len) {
+        lock.lock();
+        try {
+            if (!detached)
+                super.setContentLengthLong(len);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the character encoding unless the response was detached.
+     * @param charset the name of the character encoding
+     */
+    @Override
+    public void setCharacterEncoding(String charset) {
+        lock.lock();
+        try {
+            if (!detached)
+                super.setCharacterEncoding(charset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the locale unless the response was detached.
+     * @param loc the locale of the response
+     */
+    @Override
+    public void setLocale(Locale loc) {
+        lock.lock();
+        try {
+            if (!detached)
+                super.setLocale(loc);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the buffer size unless the response was detached.
+     * @param size the buffer size in bytes
+     */
+    @Override
+    public void setBufferSize(int size) {
+        lock.lock();
+        try {
+            if (!detached)
+                super.setBufferSize(size);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Clears the status, headers and buffered content unless the response was detached.
+     */
+    @Override
+    public void reset() {
+        lock.lock();
+        try {
+            if (!detached)
+                super.reset();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Clears the buffered content unless the response was detached.
+     */
+    @Override
+    public void resetBuffer() {
+        lock.lock();
+        try {
+            if (!detached)
+                super.resetBuffer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * GuardedOutputStream forwards writes to the output stream of the response while it is attached.
+     */
+    private class GuardedOutputStream extends ServletOutputStream {
+
+        /** The output stream of the response */
+        private final ServletOutputStream outputStream;
+
+        /**
+         * Wraps the output stream of the response.
+         * @param outputStream the output stream to guard
+         */
+        GuardedOutputStream(ServletOutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        /**
+         * Writes a byte while the response is attached.
+         * @param b the byte to write
+         * @throws IOException if the response was detached or an I/O error occurs
+         */
+        @Override
+        public void write(int b) throws IOException {
+            lock.lock();
+            try {
+                checkAttached();
+                outputStream.write(b);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Writes bytes while the response is attached.
+         * @param b   the bytes to write
+         * @param off the offset of the first byte
+         * @param len the number of bytes
+         * @throws IOException if the response was detached or an I/O error occurs
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            lock.lock();
+            try {
+                checkAttached();
+                outputStream.write(b, off, len);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Flushes the stream while the response is attached.
+         * @throws IOException if the response was detached or an I/O error occurs
+         */
+        @Override
+        public void flush() throws IOException {
+            lock.lock();
+            try {
+                checkAttached();
+                outputStream.flush();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Closes the stream while the response is attached.
+         * @throws IOException if the response was detached or an I/O error occurs
+         */
+        @Override
+        public void close() throws IOException {
+            lock.lock();
+            try {
+                checkAttached();
+                outputStream.close();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Checks whether data can be written without blocking.
+         * @return true if a write would not block
+         */
+        @Override
+        public boolean isReady() {
+            return outputStream.isReady();
+        }
+
+        /**
+         * Registers the listener of non-blocking writes.
+         * @param writeListener the listener to notify
+         */
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            outputStream.setWriteListener(writeListener);
+        }
+
+    }
+
+    /**
+     * GuardedWriter forwards writes to the writer of the response while it is attached.
+     */
+    private class GuardedWriter extends Writer {
+
+        /** The writer of the response */
+        private final Writer writer;
+
+        /**
+         * Wraps the writer of the response.
+         * @param writer the writer to guard
+         */
+        GuardedWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        /**
+         * Writes characters while the response is attached.
+         * @param cbuf the characters to write
+         * @param off  the offset of the first character
+         * @param len  the number of characters
+         * @throws IOException if the response was detached or an I/O error occurs
+         */
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            GuardedResponse.this.lock.lock();
+            try {
+                checkAttached();
+                writer.write(cbuf, off, len);
+            } finally {
+                GuardedResponse.this.lock.unlock();
+            }
+        }
+
+        /**
+         * Writes a part of a string while the response is attached.
+         * @param str the string to write
+         * @param off the offset of the first character
+         * @param len the number of characters
+         * @throws IOException if the response was detached or an I/O error occurs
+         */
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            GuardedResponse.this.lock.lock();
+            try {
+                checkAttached();
+                writer.write(str, off, len);
+            } finally {
+                GuardedResponse.this.lock.unlock();
+            }
+        }
+
+        /**
+         * Flushes the stream while the response is attached.
+         * @throws IOException if the response was detached or an I/O error occurs
+         */
+        @Override
+        public void flush() throws IOException {
+            GuardedResponse.this.lock.lock();
+            try {
+                checkAttached();
+                writer.flush();
+            } finally {
+                GuardedResponse.this.lock.unlock();
+            }
+        }
+
+        /**
+         * Closes the stream while the response is attached.
+         * @throws IOException if the response was detached or an I/O error occurs
+         */
+        @Override
+        public void close() throws IOException {
+            GuardedResponse.this.lock.lock();
+            try {
+                checkAttached();
+                writer.close();
+            } finally {
+                GuardedResponse.this.lock.unlock();
+            }
+        }
+
+    }
+
+}
\ No newline at end of file
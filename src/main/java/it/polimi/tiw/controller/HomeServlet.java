@@ -1,12 +1,17 @@
 package it.polimi.tiw.controller;
 
 import it.polimi.tiw.dao.AlbumDAO;
-import it.polimi.tiw.dao.CommentDAO;
 import it.polimi.tiw.dao.ImageDAO;
+import it.polimi.tiw.dao.UserStatsDAO;
 import it.polimi.tiw.model.Album;
 import it.polimi.tiw.model.Image;
 import it.polimi.tiw.model.User;
+import it.polimi.tiw.model.UserStats;
+import it.polimi.tiw.util.ConnectionContext;
+import it.polimi.tiw.util.PageCursor;
+import it.polimi.tiw.util.QueryScope;
 import it.polimi.tiw.util.StringUtil;
+import it.polimi.tiw.util.ThumbnailGenerator;
 import it.polimi.tiw.util.ViewEngine;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.WebContext;
@@ -16,6 +21,7 @@ import javax.servlet.ServletException;
 import javax.servlet.http.*;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -28,7 +34,7 @@ import java.util.stream.Collectors;
  * HomeServlet handles requests for the home page of the application.
  * It manages album loading, album creation, and adding images to albums.
  */
-public class HomeServlet extends HttpServlet {
+public class HomeServlet extends AsyncHttpServlet {
 
     /**
      * Unique identifier for Serializable class to ensure compatibility
@@ -37,6 +43,11 @@ public class HomeServlet extends HttpServlet {
      */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Number of albums of other users shown per page.
+     */
+    private static final int OTHER_ALBUMS_PAGE_SIZE = 20;
+
     /**
      * Template engine for rendering HTML templates
      */
@@ -119,6 +130,8 @@ public class HomeServlet extends HttpServlet {
 
     /**
      * Renders the home page by loading user albums and profile data.
+     * The albums of the user, the page of other albums and the profile statistics are independent,
+     * so they are read in parallel, each on its own connection.
      * @param request     the HTTP request object.
      * @param response    the HTTP response object.
      * @param webContext  the Thymeleaf WebContext for rendering templates.
@@ -127,9 +140,17 @@ public class HomeServlet extends HttpServlet {
      * @throws IOException      if an I/O error occurs during processing.
      */
     private void renderHomePage(HttpServletRequest request, HttpServletResponse response, WebContext webContext, String username) throws ServletException, IOException {
-        try {
-            handleLoadAlbums(webContext, username);
-            handleLoadProfile(request, webContext, username);
+        try (QueryScope scope = new QueryScope()) {
+            PageCursor after = PageCursor.fromToken(request.getParameter("otherAlbumsAfter"));
+            PageCursor before = after == null ? PageCursor.fromToken(request.getParameter("otherAlbumsBefore")) : null;
+            QueryScope.Subtask<ArrayList<Album>> myAlbums = scope.fork(() -> new AlbumDAO().getMyAlbums(username));
+            QueryScope.Subtask<ArrayList<Album>> otherAlbums = scope.fork(() -> before != null
+                    ? new AlbumDAO().getOtherAlbumsBefore(username, before, OTHER_ALBUMS_PAGE_SIZE + 1)
+                    : new AlbumDAO().getOtherAlbumsAfter(username, after, OTHER_ALBUMS_PAGE_SIZE + 1));
+            QueryScope.Subtask<UserStats> userStats = scope.fork(() -> new UserStatsDAO().getUserStats(username));
+            scope.join();
+            handleLoadAlbums(webContext, username, myAlbums.get(), otherAlbums.get(), after, before);
+            handleLoadProfile(request, webContext, userStats.get());
         } catch (SQLException e) {
             webContext.setVariable("myAlbums", null);
             webContext.setVariable("otherAlbums", null);
@@ -149,43 +170,70 @@ public class HomeServlet extends HttpServlet {
     }
 
     /**
-     * Loads the albums associated with the user for display.
-     * @param webContext the Thymeleaf WebContext for rendering templates.
-     * @param username   the username of the logged-in user.
-     * @throws SQLException    if an error occurs while accessing the database.
-     * @throws ServletException if an error occurs during processing.
-     * @throws IOException      if an I/O error occurs during processing.
+     * Shows the albums associated with the user, and one page of the albums of the other users.
+     * Pages of other albums are addressed by opaque cursors: the "otherAlbumsAfter" parameter holds the cursor of
+     * the last album of the previous page and the "otherAlbumsBefore" parameter the cursor of the first album of
+     * the next page. One album more than the page size is read to know whether a further page exists.
+     * @param webContext  the Thymeleaf WebContext for rendering templates.
+     * @param username    the username of the logged-in user.
+     * @param myAlbums    the albums of the user.
+     * @param otherAlbums the page of other albums read with the cursor, including the extra album.
+     * @param after       the cursor of the last album of the previous page, or null.
+     * @param before      the cursor of the first album of the next page, or null.
+     * @throws SQLException if an error occurs while reading the first page, when the cursor is past the listing.
      */
-    private void handleLoadAlbums(WebContext webContext, String username) throws SQLException, ServletException, IOException {
-        AlbumDAO albumDAO = new AlbumDAO();
-        ArrayList<Album> myAlbums = albumDAO.getMyAlbums(username);
-        ArrayList<Album> otherAlbums = albumDAO.getOtherAlbums(username);
+    private void handleLoadAlbums(WebContext webContext, String username, ArrayList<Album> myAlbums, ArrayList<Album> otherAlbums, PageCursor after, PageCursor before) throws SQLException {
         webContext.setVariable("myAlbums", myAlbums);
+        // Other albums
+        boolean hasPrevious;
+        boolean hasNext;
+        if (before != null) {
+            // Going backwards: the extra album, if any, is the oldest one of the preceding page
+            hasPrevious = otherAlbums.size() > OTHER_ALBUMS_PAGE_SIZE;
+            if (hasPrevious)
+                otherAlbums.remove(0);
+            hasNext = true;
+        } else {
+            hasNext = otherAlbums.size() > OTHER_ALBUMS_PAGE_SIZE;
+            if (hasNext)
+                otherAlbums.remove(otherAlbums.size() - 1);
+            hasPrevious = after != null;
+        }
+        // A cursor past either end of the listing falls back to the first page
+        if (otherAlbums.isEmpty() && (after != null || before != null)) {
+            otherAlbums = new AlbumDAO().getOtherAlbumsAfter(username, null, OTHER_ALBUMS_PAGE_SIZE + 1);
+            hasNext = otherAlbums.size() > OTHER_ALBUMS_PAGE_SIZE;
+            if (hasNext)
+                otherAlbums.remove(otherAlbums.size() - 1);
+            hasPrevious = false;
+        }
         webContext.setVariable("otherAlbums", otherAlbums);
+        webContext.setVariable("otherAlbumsHasPrevious", hasPrevious && !otherAlbums.isEmpty());
+        webContext.setVariable("otherAlbumsHasNext", hasNext && !otherAlbums.isEmpty());
+        if (!otherAlbums.isEmpty()) {
+            Album firstAlbum = otherAlbums.get(0);
+            Album lastAlbum = otherAlbums.get(otherAlbums.size() - 1);
+            webContext.setVariable("otherAlbumsPreviousToken", new PageCursor(firstAlbum.getAlbumDate(), firstAlbum.getAlbumId()).toToken());
+            webContext.setVariable("otherAlbumsNextToken", new PageCursor(lastAlbum.getAlbumDate(), lastAlbum.getAlbumId()).toToken());
+        }
+        // Paging through other albums keeps their panel open
+        if ((after != null || before != null) && webContext.getVariable("activePanel") == null)
+            webContext.setVariable("activePanel", "otherAlbums");
     }
 
     /**
-     * Loads the profile statistics for the user.
+     * Shows the profile statistics for the user.
      * @param request    the HTTP request object.
      * @param webContext the Thymeleaf WebContext for rendering templates.
-     * @param username   the username of the logged-in user.
-     * @throws SQLException    if an error occurs while accessing the database.
-     * @throws ServletException if an error occurs during processing.
-     * @throws IOException      if an I/O error occurs during processing.
+     * @param userStats  the activity counters of the user.
      */
-    private void handleLoadProfile(HttpServletRequest request, WebContext webContext, String username) throws SQLException, ServletException, IOException {
-        AlbumDAO albumDAO = new AlbumDAO();
-        ImageDAO imageDAO = new ImageDAO();
-        CommentDAO commentDAO = new CommentDAO();
-        int numAlbums = albumDAO.getAlbumsCountByUser(username);
-        int numImages = imageDAO.getImagesCountByUser(username);
-        int numComments = commentDAO.getCommentsCountByUser(username);
+    private void handleLoadProfile(HttpServletRequest request, WebContext webContext, UserStats userStats) {
         User user = (User) request.getSession().getAttribute("user");
         webContext.setVariable("user", user);
         webContext.setVariable("userStats", Map.of(
-                "numAlbums", numAlbums,
-                "numImages", numImages,
-                "numComments", numComments
+                "numAlbums", userStats.getAlbumsCount(),
+                "numImages", userStats.getImagesCount(),
+                "numComments", userStats.getCommentsCount()
         ));
     }
 
@@ -223,7 +271,8 @@ public class HomeServlet extends HttpServlet {
 
     /**
      * Handles the process of adding a new image to the user's albums.
-     * Validates input data, saves the image to disk, updates the database, and provides user feedback.
+     * Validates input data, then stores the image as a single unit of work: the file is written to a temporary
+     * location, the database rows are inserted in one transaction and the file is moved into place before committing.
      * @param request    the HTTP request object.
      * @param response   the HTTP response object.
      * @param webContext the Thymeleaf WebContext for rendering templates.
@@ -244,12 +293,19 @@ public class HomeServlet extends HttpServlet {
         String imageExtension = getImageExtension(request, response, webContext, username, imageFile);
         if (imageExtension == null)
             return;
-        int imageId = insertImageIntoDatabase(request, response, webContext, username, imageStringParameters, selectedAlbums, imageExtension);
-        if (imageId == -1)
-            return;
-        boolean imageSaved = saveImageIntoDisk(request, response, webContext, username, imageFile, imageId, imageExtension);
-        if (!imageSaved)
+        // The upload does not need the database: give the connection back while the file is copied
+        ConnectionContext.release();
+        Path temporaryImagePath = saveImageIntoTemporaryFile(request, response, webContext, username, imageFile);
+        if (temporaryImagePath == null)
             return;
+        try {
+            boolean imageStored = storeImage(request, response, webContext, username, imageStringParameters, selectedAlbums, temporaryImagePath, imageExtension);
+            if (!imageStored)
+                return;
+        } finally {
+            // Nothing is left behind if the image was not moved into place
+            deleteImageFile(temporaryImagePath);
+        }
         HttpSession session = request.getSession();
         session.setAttribute("addImageSuccessMessage", "Image added successfully.");
         response.sendRedirect(request.getContextPath() + "/home");
@@ -392,97 +448,120 @@ public class HomeServlet extends HttpServlet {
     }
 
     /**
-     * Inserts the image data into the database and associates it with selected albums.
+     * Saves the uploaded image file to a temporary file inside the uploads directory.
+     * @param request    the HTTP request object.
+     * @param response   the HTTP response object.
+     * @param webContext the Thymeleaf WebContext for rendering templates.
+     * @param username   the username of the logged-in user.
+     * @param imageFile  the uploaded image Part.
+     * @return           the path of the temporary file if the image is saved successfully; otherwise, null.
+     * @throws ServletException if a servlet-specific error occurs.
+     * @throws IOException      if an I/O error occurs.
+     */
+    private Path saveImageIntoTemporaryFile(HttpServletRequest request, HttpServletResponse response, WebContext webContext, String username, Part imageFile) throws ServletException, IOException {
+        // Destination directory to save images
+        String uploadsPathString = getUploadsPath();
+        if (uploadsPathString == null) {
+            showErrorPage("addImage", "Server error. Please reload page.", request, response, webContext, username);
+            return null;
+        }
+        // Create Path object from the loaded uploads path
+        Path uploadsPath = Paths.get(uploadsPathString);
+        // Create uploads directory (if it doesn't already exist)
+        Files.createDirectories(uploadsPath); // thread-safe
+        // The temporary file lives in the uploads directory, so it can later be renamed atomically
+        Path temporaryImagePath = null;
+        try (InputStream inputStream = imageFile.getInputStream()) {
+            temporaryImagePath = Files.createTempFile(uploadsPath, "upload-", ".tmp");
+            Files.copy(inputStream, temporaryImagePath, StandardCopyOption.REPLACE_EXISTING);
+            return temporaryImagePath;
+        } catch (IOException save) {
+            // Rollback: delete the partial file, if it exists
+            deleteImageFile(temporaryImagePath);
+            showErrorPage("addImage", "Error saving image to server. Please reload page.", request, response, webContext, username);
+            save.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the image in a single transaction: the image row and its album associations are inserted
+     * with the final file path already set, and the temporary file is moved into place before committing.
+     * If any step fails the transaction is rolled back and the moved file, if any, is deleted.
      * @param request               the HTTP request object.
      * @param response              the HTTP response object.
      * @param webContext            the Thymeleaf WebContext for rendering templates.
      * @param username              the username of the logged-in user.
      * @param imageStringParameters the list containing image title and description.
      * @param selectedAlbums        the list of selected album IDs.
+     * @param temporaryImagePath    the path of the temporary file holding the uploaded image.
      * @param imageExtension        the file extension of the image.
-     * @return                      the image ID if successful; otherwise, -1.
+     * @return                      true if the image is stored successfully; otherwise, false.
      * @throws ServletException if a servlet-specific error occurs.
      * @throws IOException      if an I/O error occurs.
      */
-    private int insertImageIntoDatabase(HttpServletRequest request, HttpServletResponse response, WebContext webContext, String username, ArrayList<String> imageStringParameters, ArrayList<Integer> selectedAlbums, String imageExtension) throws ServletException, IOException {
+    private boolean storeImage(HttpServletRequest request, HttpServletResponse response, WebContext webContext, String username, ArrayList<String> imageStringParameters, ArrayList<Integer> selectedAlbums, Path temporaryImagePath, String imageExtension) throws ServletException, IOException {
+        // The final path is known before the insert, so no update of the row is needed afterwards
+        Path imagePath = temporaryImagePath.resolveSibling(UUID.randomUUID() + imageExtension);
+        Image image = new Image(username, imageStringParameters.get(0), imageStringParameters.get(1));
+        image.setImagePath(imagePath.toString());
         try {
-            Image image = new Image(username, imageStringParameters.get(0), imageStringParameters.get(1));
             ImageDAO imageDAO = new ImageDAO();
-            int imageId = imageDAO.addImage(image);
-            if (imageId == -1) {
-                showErrorPage("addImage", "Database error. Please reload page.", request, response, webContext, username);
-                return -1;
-            }
-            String uploadsPathString = getUploadsPath();
-            if (uploadsPathString == null) {
-                showErrorPage("addImage", "Server error. Please reload page.", request, response, webContext, username);
-                return -1;
-            }
-            Path uploadsPath = Paths.get(uploadsPathString);
-            Path imagePath = uploadsPath.resolve(imageId + imageExtension);
-            boolean updatedPath = imageDAO.updateImagePath(imageId, imagePath.toString());
-            if (!updatedPath) {
-                showErrorPage("addImage", "Database error. Please reload page.", request, response, webContext, username);
-                return -1;
-            }
-            boolean imageIntoAlbums = imageDAO.addImageToAlbums(imageId, selectedAlbums);
-            if (!imageIntoAlbums) {
-                showErrorPage("addImage", "Database error. Please reload page.", request, response, webContext, username);
-                return -1;
-            }
-            return imageId;
+            ConnectionContext.inTransaction(() -> {
+                int imageId = imageDAO.addImage(image);
+                if (imageId == -1)
+                    throw new SQLException("Image not inserted.");
+                if (!imageDAO.addImageToAlbums(imageId, selectedAlbums))
+                    throw new SQLException("Image not added to the selected albums.");
+                // Publish the file only once every row is in place; a failure here rolls the rows back
+                try {
+                    Files.move(temporaryImagePath, imagePath, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return imageId;
+            });
+            generateImageDerivatives(imagePath);
+            return true;
         } catch (SQLException e) {
-            showErrorPage("addImage", "Database error. There may have been errors adding the image. Please reload page.", request, response, webContext, username);
-            return -1;
+            // The commit may fail after the file has been moved
+            deleteImageFile(imagePath);
+            showErrorPage("addImage", "Database error. Please reload page.", request, response, webContext, username);
+            e.printStackTrace();
+            return false;
+        } catch (UncheckedIOException e) {
+            deleteImageFile(imagePath);
+            showErrorPage("addImage", "Error saving image to server. Please reload page.", request, response, webContext, username);
+            e.printStackTrace();
+            return false;
         }
     }
 
     /**
-     * Saves the uploaded image file to the server's disk storage.
-     * @param request        the HTTP request object.
-     * @param response       the HTTP response object.
-     * @param webContext     the Thymeleaf WebContext for rendering templates.
-     * @param username       the username of the logged-in user.
-     * @param imageFile      the uploaded image Part.
-     * @param imageId        the ID of the image in the database.
-     * @param imageExtension the file extension of the image.
-     * @return               true if the image is saved successfully; otherwise, false.
-     * @throws ServletException if a servlet-specific error occurs.
-     * @throws IOException      if an I/O error occurs.
+     * Schedules the generation of the smaller renditions of a newly stored image.
+     * Renditions are not essential: if the generator is not available they are generated on demand later.
+     * @param imagePath the path of the stored image.
      */
-    private boolean saveImageIntoDisk(HttpServletRequest request, HttpServletResponse response, WebContext webContext, String username, Part imageFile, int imageId, String imageExtension) throws ServletException, IOException {
-        // Destination directory to save images
-        String uploadsPathString = getUploadsPath();
-        if (uploadsPathString == null) {
-            showErrorPage("addImage", "Server error. Please reload page.", request, response, webContext, username);
-            return false;
+    private void generateImageDerivatives(Path imagePath) {
+        try {
+            ThumbnailGenerator.getInstance().generateDerivatives(imagePath);
+        } catch (IOException e) {
+            System.err.println("Could not schedule image renditions: " + e.getMessage());
         }
-        // Create Path object from the loaded uploads path
-        Path uploadsPath = Paths.get(uploadsPathString);
-        // Create uploads directory (if it doesn't already exist)
-        Files.createDirectories(uploadsPath); // thread-safe
-        // Full path of the file to save
-        Path imagePath = uploadsPath.resolve(imageId + imageExtension);
-        // Save the file contents to the destination
-        try (InputStream inputStream = imageFile.getInputStream()) {
-            Files.copy(inputStream, imagePath, StandardCopyOption.REPLACE_EXISTING);
-            // Verify that the file has been created
-            if (!Files.exists(imagePath)) {
-                showErrorPage("addImage", "Error saving image to server. Please reload page.", request, response, webContext, username);
-                return false;
-            }
-        } catch (IOException save) {
-            // Rollback: delete the partial file, if it exists
-            try {
-                Files.deleteIfExists(imagePath);
-            } catch (IOException delete) {
-                delete.printStackTrace();
-            }
-            showErrorPage("addImage", "Error saving image to server. Please reload page.", request, response, webContext, username);
-            save.printStackTrace();
-            return false;
+    }
+
+    /**
+     * Deletes an image file from disk if it exists, logging any error.
+     * @param imagePath the path of the file to delete, may be null.
+     */
+    private void deleteImageFile(Path imagePath) {
+        if (imagePath == null)
+            return;
+        try {
+            Files.deleteIfExists(imagePath);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        return true;
     }
 
     /**
@@ -1,19 +1,19 @@
 package it.polimi.tiw.controller;
 
-import it.polimi.tiw.dao.AlbumDAO;
 import it.polimi.tiw.dao.CommentDAO;
 import it.polimi.tiw.dao.ImageDAO;
+import it.polimi.tiw.dao.ImageViewDAO;
 import it.polimi.tiw.model.Comment;
-import it.polimi.tiw.model.Image;
+import it.polimi.tiw.model.ImageView;
 import it.polimi.tiw.model.User;
 import it.polimi.tiw.util.StringUtil;
+import it.polimi.tiw.util.ThumbnailGenerator;
 import it.polimi.tiw.util.ViewEngine;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.WebContext;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
@@ -29,7 +29,7 @@ import java.util.ArrayList;
  * It provides functionalities to display images, add comments, delete images,
  * and navigate back to albums or the home page.
  */
-public class ImageServlet extends HttpServlet {
+public class ImageServlet extends AsyncHttpServlet {
 
     /**
      * Unique identifier for Serializable class to ensure compatibility
@@ -38,6 +38,11 @@ public class ImageServlet extends HttpServlet {
      */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Number of comments shown on each page of the comments of an image.
+     */
+    private static final int COMMENTS_PAGE_SIZE = 20;
+
     /**
      * Template engine for rendering HTML templates.
      */
@@ -73,21 +78,18 @@ public class ImageServlet extends HttpServlet {
         // WebContext
         ServletContext servletContext = getServletContext();
         WebContext webContext = new WebContext(request, response, servletContext, request.getLocale());
-        // Get image ID and album ID from request
-        ArrayList<Integer> imageAndAlbumIds = getImageAndAlbumIds(request, response, webContext);
-        if (imageAndAlbumIds == null || imageAndAlbumIds.isEmpty() || imageAndAlbumIds.contains(-1))
-            return;
-        // Set image ID and album ID
-        webContext.setVariable("imageId", imageAndAlbumIds.get(0));
-        webContext.setVariable("albumId", imageAndAlbumIds.get(1));
         // Get user
         User user = (User) session.getAttribute("user");
         String username = user.getUsername();
         webContext.setVariable("user", user);
+        // Get the image, its album and its comments from request
+        ImageView imageView = getImageView(request, response, webContext, username, true);
+        if (imageView == null)
+            return;
         // Show success messages
         showSuccessMessage(session, webContext);
         // Render page
-        renderImagePage(request, response, webContext, username, imageAndAlbumIds.get(0));
+        renderImagePage(response, webContext, imageView);
     }
 
     /**
@@ -109,50 +111,52 @@ public class ImageServlet extends HttpServlet {
         // WebContext
         ServletContext servletContext = getServletContext();
         WebContext webContext = new WebContext(request, response, servletContext, request.getLocale());
-        // Get image ID and album ID from request
-        ArrayList<Integer> imageAndAlbumIds = getImageAndAlbumIds(request, response, webContext);
-        if (imageAndAlbumIds == null || imageAndAlbumIds.isEmpty() || imageAndAlbumIds.contains(-1))
-            return;
-        // Set image ID and album ID
-        webContext.setVariable("imageId", imageAndAlbumIds.get(0));
-        webContext.setVariable("albumId", imageAndAlbumIds.get(1));
         // Get user
         User user = (User) session.getAttribute("user");
         String username = user.getUsername();
         webContext.setVariable("user", user);
+        // Get the image and its album from request
+        ImageView imageView = getImageView(request, response, webContext, username, false);
+        if (imageView == null)
+            return;
+        int imageId = imageView.getImage().getImageId();
+        int albumId = imageView.getAlbumId();
         // Add Comment or Delete Image or Logout
         String action = request.getParameter("action");
         if ("addComment".equals(action))
-            handleAddComment(request, response, webContext, username, imageAndAlbumIds);
+            handleAddComment(request, response, webContext, username, imageView);
         else if ("deleteImage".equals(action))
-            handleDeleteImage(request, response, webContext, username, imageAndAlbumIds);
+            handleDeleteImage(request, response, webContext, username, imageView);
         else if ("returnToHome".equals(action))
             response.sendRedirect(request.getContextPath() + "/home");
         else if ("returnToAlbum".equals(action))
-            response.sendRedirect(request.getContextPath() + "/album?albumId=" + imageAndAlbumIds.get(1) + "&page=0");
+            response.sendRedirect(request.getContextPath() + "/album?albumId=" + albumId);
         else if ("logout".equals(action))
             handleLogout(request, response);
         else
-            response.sendRedirect(request.getContextPath() + "/image?albumId=" + imageAndAlbumIds.get(1) + "&imageId=" + imageAndAlbumIds.get(0));
+            response.sendRedirect(request.getContextPath() + "/image?albumId=" + albumId + "&imageId=" + imageId);
     }
 
     /**
-     * Retrieves and validates the image and album IDs from the request parameters.
-     * @param request    the HTTP request object.
-     * @param response   the HTTP response object.
-     * @param webContext the Thymeleaf WebContext for rendering templates.
-     * @return           a list containing the image ID and album ID.
+     * Retrieves and validates the image and album IDs from the request parameters,
+     * and loads the view of the image with a single query for the album, the image and its membership in the album.
+     * When the comments are loaded, the page of comments starts after the comment given by the commentsBefore
+     * parameter, or with the most recent comments if the parameter is missing or invalid.
+     * The client is redirected to the album or home page if the image cannot be viewed from the album.
+     * @param request      the HTTP request object.
+     * @param response     the HTTP response object.
+     * @param webContext   the Thymeleaf WebContext for rendering templates.
+     * @param username     the username of the logged-in user.
+     * @param withComments whether the comments on the image should be loaded as well.
+     * @return             the view of the image, or null if the client was redirected or an error page was rendered.
      * @throws ServletException if an error occurs during processing.
      * @throws IOException      if an I/O error occurs.
      */
-    private ArrayList<Integer> getImageAndAlbumIds(HttpServletRequest request, HttpServletResponse response, WebContext webContext) throws ServletException, IOException {
+    private ImageView getImageView(HttpServletRequest request, HttpServletResponse response, WebContext webContext, String username, boolean withComments) throws ServletException, IOException {
         String imageIdParam = request.getParameter("imageId");
         String albumIdParam = request.getParameter("albumId");
-        int imageId = -1;
-        int albumId = -1;
-        ArrayList<Integer> imageAndAlbumIds = new ArrayList<>();
-        imageAndAlbumIds.add(imageId);
-        imageAndAlbumIds.add(albumId);
+        int imageId;
+        int albumId;
         if (albumIdParam == null || albumIdParam.isEmpty()) {
             response.sendRedirect(request.getContextPath() + "/home");
             return null;
@@ -163,109 +167,81 @@ public class ImageServlet extends HttpServlet {
             response.sendRedirect(request.getContextPath() + "/home");
             return null;
         }
+        if (imageIdParam == null || imageIdParam.isEmpty()) {
+            response.sendRedirect(request.getContextPath() + "/album?albumId=" + albumId);
+            return null;
+        }
         try {
-            AlbumDAO albumDAO = new AlbumDAO();
-            boolean albumExists = albumDAO.doesAlbumExist(albumId);
-            if (albumExists) {
-                imageAndAlbumIds.set(1, albumId);
-            } else {
-                response.sendRedirect(request.getContextPath() + "/home");
-                return null;
-            }
-            if (imageIdParam == null || imageIdParam.isEmpty()) {
-                response.sendRedirect(request.getContextPath() + "/album?albumId=" + albumId + "&page=0");
-                return null;
-            }
-            try {
-                imageId = Integer.parseInt(imageIdParam);
-            } catch (NumberFormatException e) {
-                response.sendRedirect(request.getContextPath() + "/album?albumId=" + albumId + "&page=0");
-                return null;
-            }
-            ImageDAO imageDAO = new ImageDAO();
-            boolean imageExists = imageDAO.doesImageExist(imageId);
-            if (!imageExists) {
-                response.sendRedirect(request.getContextPath() + "/album?albumId=" + albumId + "&page=0");
-                return null;
-            }
-            boolean imageBelongToAlbum = imageDAO.doesImageBelongToAlbum(imageId, albumId);
-            if (imageBelongToAlbum) {
-                imageAndAlbumIds.set(0, imageId);
-            } else {
-                response.sendRedirect(request.getContextPath() + "/album?albumId=" + albumId + "&page=0");
-                return null;
-            }
-        } catch (SQLException e) {
-            renderImagePageException(request, response, webContext);
-            e.printStackTrace();
+            imageId = Integer.parseInt(imageIdParam);
+        } catch (NumberFormatException e) {
+            response.sendRedirect(request.getContextPath() + "/album?albumId=" + albumId);
             return null;
         }
-        return imageAndAlbumIds;
-    }
-
-    /**
-     * Renders the image page by loading image data, comments, and delete options.
-     * @param request   the HTTP request object.
-     * @param response  the HTTP response object.
-     * @param webContext the Thymeleaf WebContext for rendering templates.
-     * @param username  the username of the logged-in user.
-     * @param imageId   the ID of the image to be displayed.
-     * @throws ServletException if an error occurs during processing.
-     * @throws IOException      if an I/O error occurs.
-     */
-    private void renderImagePage(HttpServletRequest request, HttpServletResponse response, WebContext webContext, String username, int imageId) throws ServletException, IOException {
+        ImageView imageView;
         try {
-            handleLoadImageData(webContext, imageId);
-            handleLoadComments(webContext, imageId);
-            handleLoadDeleteOption(webContext, username, imageId);
-            templateEngine.process("image.html", webContext, response.getWriter());
+            ImageViewDAO imageViewDAO = new ImageViewDAO();
+            if (withComments)
+                imageView = imageViewDAO.getImageView(albumId, imageId, username, getCommentsBefore(request), COMMENTS_PAGE_SIZE + 1);
+            else
+                imageView = imageViewDAO.getImageView(albumId, imageId, username, null, 0);
         } catch (SQLException e) {
+            webContext.setVariable("albumId", albumId);
+            webContext.setVariable("imageId", imageId);
             renderImagePageException(request, response, webContext);
             e.printStackTrace();
+            return null;
         }
+        if (!imageView.doesAlbumExist()) {
+            response.sendRedirect(request.getContextPath() + "/home");
+            return null;
+        }
+        if (!imageView.isImageInAlbum()) {
+            response.sendRedirect(request.getContextPath() + "/album?albumId=" + albumId);
+            return null;
+        }
+        return imageView;
     }
 
     /**
-     * Loads the image data for the specified image ID.
-     * @param webContext the Thymeleaf WebContext for rendering templates.
-     * @param imageId    the ID of the image.
-     * @throws SQLException     if an error occurs while accessing the database.
-     * @throws ServletException if an error occurs during processing.
-     * @throws IOException      if an I/O error occurs.
+     * Retrieves the ID of the last comment of the previous page of comments from the request parameters.
+     * @param request the HTTP request object.
+     * @return the comment ID, or null if the parameter is missing or invalid.
      */
-    private void handleLoadImageData(WebContext webContext, int imageId) throws SQLException, ServletException, IOException {
-        ImageDAO imageDAO = new ImageDAO();
-        Image image = imageDAO.getImageById(imageId);
-        webContext.setVariable("image", image);
+    private Integer getCommentsBefore(HttpServletRequest request) {
+        String commentsBeforeParam = request.getParameter("commentsBefore");
+        if (commentsBeforeParam == null || commentsBeforeParam.isEmpty())
+            return null;
+        try {
+            return Integer.parseInt(commentsBeforeParam);
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     /**
-     * Loads comments associated with the specified image ID.
+     * Renders the image page with the image, a page of its comments and the delete option.
+     * The view holds one comment more than a page when older comments follow the page.
+     * @param response   the HTTP response object.
      * @param webContext the Thymeleaf WebContext for rendering templates.
-     * @param imageId    the ID of the image.
-     * @throws SQLException     if an error occurs while accessing the database.
+     * @param imageView  the view of the image to be displayed.
      * @throws ServletException if an error occurs during processing.
      * @throws IOException      if an I/O error occurs.
      */
-    private void handleLoadComments(WebContext webContext, int imageId) throws SQLException, ServletException, IOException {
-        CommentDAO commentDAO = new CommentDAO();
-        ArrayList<Comment> comments = commentDAO.getCommentsByImageId(imageId);
+    private void renderImagePage(HttpServletResponse response, WebContext webContext, ImageView imageView) throws ServletException, IOException {
+        webContext.setVariable("imageId", imageView.getImage().getImageId());
+        webContext.setVariable("albumId", imageView.getAlbumId());
+        webContext.setVariable("image", imageView.getImage());
+        ArrayList<Comment> comments = imageView.getComments();
+        boolean hasMoreComments = comments.size() > COMMENTS_PAGE_SIZE;
+        if (hasMoreComments)
+            comments = new ArrayList<>(comments.subList(0, COMMENTS_PAGE_SIZE));
         webContext.setVariable("comments", comments);
-    }
-
-    /**
-     * Determines whether the image belongs to the logged-in user and sets the delete option.
-     * @param webContext the Thymeleaf WebContext for rendering templates.
-     * @param username   the username of the logged-in user.
-     * @param imageId    the ID of the image.
-     * @throws SQLException     if an error occurs while accessing the database.
-     * @throws ServletException if an error occurs during processing.
-     * @throws IOException      if an I/O error occurs.
-     */
-    private void handleLoadDeleteOption(WebContext webContext, String username, int imageId) throws SQLException, ServletException, IOException {
-        ImageDAO imageDAO = new ImageDAO();
-        boolean imageBelongToUser = imageDAO.doesImageBelongToUser(imageId, username);
-        webContext.setVariable("imageBelongToUser", imageBelongToUser);
+        webContext.setVariable("commentsCount", imageView.getCommentsCount());
+        webContext.setVariable("hasMoreComments", hasMoreComments);
+        if (hasMoreComments)
+            webContext.setVariable("nextCommentsBefore", comments.get(comments.size() - 1).getCommentId());
+        webContext.setVariable("imageBelongToUser", imageView.doesImageBelongToUser());
+        templateEngine.process("image.html", webContext, response.getWriter());
     }
 
     /**
@@ -290,33 +266,30 @@ public class ImageServlet extends HttpServlet {
      * @param response          the HTTP response object.
      * @param webContext        the Thymeleaf WebContext for rendering templates.
      * @param username          the username of the logged-in user.
-     * @param imageAndAlbumIds  the list containing the image ID and album ID.
+     * @param imageView         the view of the image and of its album.
      * @throws ServletException if an error occurs during processing.
      * @throws IOException      if an I/O error occurs.
      */
-    private void handleAddComment(HttpServletRequest request, HttpServletResponse response, WebContext webContext, String username, ArrayList<Integer> imageAndAlbumIds) throws ServletException, IOException {
+    private void handleAddComment(HttpServletRequest request, HttpServletResponse response, WebContext webContext, String username, ImageView imageView) throws ServletException, IOException {
+        int imageId = imageView.getImage().getImageId();
         String commentText = request.getParameter("commentText");
         if (!StringUtil.isValidText(commentText)) {
-            showErrorPage("Invalid comment text.", request, response, webContext, username, imageAndAlbumIds.get(0));
+            showErrorPage("Invalid comment text.", request, response, webContext, username, imageView);
             return;
         }
-        Comment comment = new Comment(imageAndAlbumIds.get(0), username, commentText);
+        Comment comment = new Comment(imageId, username, commentText);
         try {
-            ImageDAO imageDAO = new ImageDAO();
-            boolean imageExists = imageDAO.doesImageExist(imageAndAlbumIds.get(0));
-            if (!imageExists)
-                return;
             CommentDAO commentDAO = new CommentDAO();
             boolean success = commentDAO.addComment(comment);
             if (success) {
                 HttpSession session = request.getSession();
                 session.setAttribute("addCommentSuccessMessage", "Comment added successfully.");
-                response.sendRedirect(request.getContextPath() + "/image?albumId=" + imageAndAlbumIds.get(1) + "&imageId=" + imageAndAlbumIds.get(0));
+                response.sendRedirect(request.getContextPath() + "/image?albumId=" + imageView.getAlbumId() + "&imageId=" + imageId);
             } else {
-                showErrorPage("Database error. Please reload page.", request, response, webContext, username, imageAndAlbumIds.get(0));
+                showErrorPage("Database error. Please reload page.", request, response, webContext, username, imageView);
             }
         } catch (SQLException e) {
-            showErrorPage("Database error. Please reload page.", request, response, webContext, username, imageAndAlbumIds.get(0));
+            showErrorPage("Database error. Please reload page.", request, response, webContext, username, imageView);
             e.printStackTrace();
         }
     }
@@ -327,33 +300,29 @@ public class ImageServlet extends HttpServlet {
      * @param response          the HTTP response object.
      * @param webContext        the Thymeleaf WebContext for rendering templates.
      * @param username          the username of the logged-in user.
-     * @param imageAndAlbumIds  the list containing the image ID and album ID.
+     * @param imageView         the view of the image and of its album.
      * @throws ServletException if an error occurs during processing.
      * @throws IOException      if an I/O error occurs.
      */
-    private void handleDeleteImage(HttpServletRequest request, HttpServletResponse response, WebContext webContext, String username, ArrayList<Integer> imageAndAlbumIds) throws ServletException, IOException {
+    private void handleDeleteImage(HttpServletRequest request, HttpServletResponse response, WebContext webContext, String username, ImageView imageView) throws ServletException, IOException {
+        if (!imageView.doesImageBelongToUser())
+            return;
+        String imagePathString = imageView.getImage().getImagePath();
+        if (imagePathString == null)
+            return;
         try {
             ImageDAO imageDAO = new ImageDAO();
-            boolean imageExists = imageDAO.doesImageExist(imageAndAlbumIds.get(0));
-            if (!imageExists)
-                return;
-            boolean imageBelongToUser = imageDAO.doesImageBelongToUser(imageAndAlbumIds.get(0), username);
-            if (!imageBelongToUser)
-                return;
-            String imagePathString = imageDAO.getImagePathById(imageAndAlbumIds.get(0));
-            if (imagePathString == null)
-                return;
-            boolean successDatabase = imageDAO.deleteImageById(imageAndAlbumIds.get(0));
+            boolean successDatabase = imageDAO.deleteImageById(imageView.getImage().getImageId());
             if (successDatabase) {
                 deleteImageFromDisk(imagePathString);
                 HttpSession session = request.getSession();
                 session.setAttribute("deleteImageSuccessMessage", "Image deleted successfully.");
-                response.sendRedirect(request.getContextPath() + "/album?albumId=" + imageAndAlbumIds.get(1) + "&page=0");
+                response.sendRedirect(request.getContextPath() + "/album?albumId=" + imageView.getAlbumId());
             } else {
-                showErrorPage("Database error. Please reload page.", request, response, webContext, username, imageAndAlbumIds.get(0));
+                showErrorPage("Database error. Please reload page.", request, response, webContext, username, imageView);
             }
         } catch (SQLException e) {
-            showErrorPage("Database error. Please reload page.", request, response, webContext, username, imageAndAlbumIds.get(0));
+            showErrorPage("Database error. Please reload page.", request, response, webContext, username, imageView);
             e.printStackTrace();
         }
     }
@@ -372,6 +341,7 @@ public class ImageServlet extends HttpServlet {
             // Attempt to delete the file
             if (Files.exists(imagePath)) {
                 Files.delete(imagePath);
+                deleteImageDerivatives(imagePath);
                 // Verify the file has been deleted
                 if (Files.exists(imagePath))
                     return false;
@@ -385,6 +355,18 @@ public class ImageServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Deletes the smaller renditions of a deleted image from the server's disk storage.
+     * @param imagePath the path of the deleted image file.
+     */
+    private void deleteImageDerivatives(Path imagePath) {
+        try {
+            ThumbnailGenerator.getInstance().deleteDerivatives(imagePath);
+        } catch (IOException e) {
+            System.err.println("Could not delete image renditions: " + e.getMessage());
+        }
+    }
+
     /**
      * Handles user logout by invalidating the session and redirecting to the login page.
      * @param request  the HTTP request object.
@@ -406,13 +388,25 @@ public class ImageServlet extends HttpServlet {
      * @param response     the HTTP response object.
      * @param webContext   the Thymeleaf WebContext for rendering templates.
      * @param username     the username of the logged-in user.
-     * @param imageId      the ID of the image to be displayed on the error page.
+     * @param imageView    the view of the image to be displayed on the error page.
      * @throws ServletException if an error occurs during processing.
      * @throws IOException      if an I/O error occurs.
      */
-    private void showErrorPage(String errorMessage, HttpServletRequest request, HttpServletResponse response, WebContext webContext, String username, int imageId) throws ServletException, IOException {
+    private void showErrorPage(String errorMessage, HttpServletRequest request, HttpServletResponse response, WebContext webContext, String username, ImageView imageView) throws ServletException, IOException {
         webContext.setVariable("imageErrorMessage", errorMessage);
-        renderImagePage(request, response, webContext, username, imageId);
+        webContext.setVariable("albumId", imageView.getAlbumId());
+        webContext.setVariable("imageId", imageView.getImage().getImageId());
+        try {
+            ImageViewDAO imageViewDAO = new ImageViewDAO();
+            ImageView reloadedImageView = imageViewDAO.getImageView(imageView.getAlbumId(), imageView.getImage().getImageId(), username, null, COMMENTS_PAGE_SIZE + 1);
+            if (reloadedImageView.isImageInAlbum())
+                renderImagePage(response, webContext, reloadedImageView);
+            else
+                renderImagePageException(request, response, webContext);
+        } catch (SQLException e) {
+            renderImagePageException(request, response, webContext);
+            e.printStackTrace();
+        }
     }
 
     /**
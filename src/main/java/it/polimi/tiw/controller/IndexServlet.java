@@ -1,10 +1,10 @@
 package it.polimi.tiw.controller;
 
-import it.polimi.tiw.dao.AlbumDAO;
 import it.polimi.tiw.dao.UserDAO;
-import it.polimi.tiw.model.Album;
 import it.polimi.tiw.model.User;
-import it.polimi.tiw.util.PasswordEncrypt;
+import it.polimi.tiw.util.ConnectionContext;
+import it.polimi.tiw.util.LoginThrottle;
+import it.polimi.tiw.util.PasswordHasher;
 import it.polimi.tiw.util.StringUtil;
 import it.polimi.tiw.util.ViewEngine;
 
@@ -13,11 +13,11 @@ import org.thymeleaf.context.WebContext;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * IndexServlet handles HTTP GET and POST requests for the application's main page.
@@ -25,7 +25,7 @@ import java.sql.SQLException;
  * The servlet communicates with the UserDAO for database operations and uses a TemplateEngine
  * to render dynamic content on the index page.
  */
-public class IndexServlet extends HttpServlet {
+public class IndexServlet extends AsyncHttpServlet {
 
     /**
      * Unique identifier for Serializable class to ensure compatibility
@@ -99,6 +99,10 @@ public class IndexServlet extends HttpServlet {
     /**
      * Handles the user sign-up process by validating inputs and registering
      * the user in the database if validation is successful.
+     * The user, their statistics and their personal album are created in a single transaction, which also tells
+     * whether the email or the username is already taken.
+     * The password is hashed by the PasswordHasher; if too many passwords are waiting to be hashed,
+     * the request is answered with 503 Service Unavailable.
      * @param request  the HttpServletRequest object that contains the client request
      * @param response the HttpServletResponse object that contains the response the servlet sends to the client
      * @throws ServletException if an error occurs during request handling
@@ -112,35 +116,33 @@ public class IndexServlet extends HttpServlet {
         try {
             if (!isSignUpValid(email, username, password1, password2, request, response))
                 return;
+            String hashedPassword = PasswordHasher.getInstance().hashPassword(password1);
             UserDAO userDAO = new UserDAO();
-            User user = new User(username, email, PasswordEncrypt.hashPassword(password1));
-            boolean successSignUp = userDAO.registerUser(user);
-            boolean successCreateAlbum = false;
-            if (successSignUp) {
-                AlbumDAO albumDAO = new AlbumDAO();
-                Album album = new Album(username, "@" + username);
-                successCreateAlbum = albumDAO.createAlbum(album);
-            }
-            if (successSignUp && successCreateAlbum) {
+            User user = new User(username, email, hashedPassword);
+            UserDAO.RegistrationResult result = userDAO.registerUser(user);
+            if (result == UserDAO.RegistrationResult.REGISTERED) {
+                user.setPassword(null);
                 request.getSession().setAttribute("user", user);
                 response.sendRedirect(request.getContextPath() + "/home");
-            } else if (successSignUp && !successCreateAlbum) {
-                userDAO.deleteUser(username);
-                showErrorPage(request, response, "Database error. Please try again.", "signUpErrorMessage", "signUp");
-                return;
+            } else if (result == UserDAO.RegistrationResult.EMAIL_TAKEN) {
+                showErrorPage(request, response, "Email already taken.", "signUpErrorMessage", "signUp");
             } else {
-                showErrorPage(request, response, "Wrong credentials.", "signUpErrorMessage", "signUp");
-                return;
+                showErrorPage(request, response, "Username already taken.", "signUpErrorMessage", "signUp");
             }
         } catch (SQLException e) {
             showErrorPage(request, response, "Database error. Please try again.", "signUpErrorMessage", "signUp");
             e.printStackTrace();
+        } catch (RejectedExecutionException e) {
+            sendServiceUnavailable(response);
         }
     }
 
     /**
      * Handles the user sign-in process by validating inputs and logging
      * in the user if validation is successful.
+     * The user is read in a single query and the password is verified by the PasswordHasher; if too many passwords
+     * are waiting to be hashed, the request is answered with 503 Service Unavailable.
+     * Emails with too many recent failed attempts are refused by the LoginThrottle before any of this.
      * @param request  the HttpServletRequest object that contains the client request
      * @param response the HttpServletResponse object that contains the response the servlet sends to the client
      * @throws ServletException if an error occurs during request handling
@@ -152,27 +154,61 @@ public class IndexServlet extends HttpServlet {
         try {
             if (!isSignInValid(email, password, request, response))
                 return;
+            LoginThrottle loginThrottle = LoginThrottle.getInstance();
+            if (loginThrottle.isBlocked(email)) {
+                showErrorPage(request, response, "Too many failed attempts. Please try again later.", "signInErrorMessage", "signIn");
+                return;
+            }
             UserDAO userDAO = new UserDAO();
-            User user = new User(null, email, password);
-            boolean success = userDAO.loginUser(user);
-            if (success) {
+            User user = userDAO.authenticate(email);
+            if (user == null) {
+                showErrorPage(request, response, "Email not registered.", "signInErrorMessage", "signIn");
+                return;
+            }
+            // No connection is held while hashing
+            ConnectionContext.release();
+            String hashedPassword = user.getPassword();
+            if (PasswordHasher.getInstance().checkPassword(password, hashedPassword)) {
+                loginThrottle.recordSuccess(email);
+                rehashPassword(userDAO, email, password, hashedPassword);
                 user.setPassword(null);
-                user.setUsername(userDAO.getUsernameByEmail(user.getEmail()));
                 request.getSession().setAttribute("user", user);
                 response.sendRedirect(request.getContextPath() + "/home");
             } else {
+                loginThrottle.recordFailure(email);
                 showErrorPage(request, response, "Wrong credentials. Please try again.", "signInErrorMessage", "signIn");
                 return;
             }
         } catch (SQLException e) {
             showErrorPage(request, response, "Database error. Please try again.", "signInErrorMessage", "signIn");
             e.printStackTrace();
+        } catch (RejectedExecutionException e) {
+            sendServiceUnavailable(response);
+        }
+    }
+
+    /**
+     * Hashes again the verified password of a user if its hash was created with a work factor other than
+     * the configured one. The sign-in does not depend on it: if the rehash fails, it is retried at the next one.
+     * @param userDAO        the UserDAO used to store the new hash
+     * @param email          the email address of the user
+     * @param password       the verified plain-text password
+     * @param hashedPassword the current hash of the password
+     */
+    private void rehashPassword(UserDAO userDAO, String email, String password, String hashedPassword) {
+        PasswordHasher passwordHasher = PasswordHasher.getInstance();
+        if (!passwordHasher.needsRehash(hashedPassword))
+            return;
+        try {
+            userDAO.updatePassword(email, hashedPassword, passwordHasher.hashPassword(password));
+        } catch (SQLException | RejectedExecutionException e) {
+            System.err.println("Could not rehash password: " + e.getMessage());
         }
     }
 
     /**
      * Validates the inputs for user sign-up. Ensures that the email, username, and passwords
-     * meet criteria and are not already in use.
+     * meet criteria; whether they are already in use is known once the user is registered.
      * @param email    the email address of the user
      * @param username the chosen username of the user
      * @param password1 the password entered by the user
@@ -182,9 +218,8 @@ public class IndexServlet extends HttpServlet {
      * @return true if validation is successful, false otherwise
      * @throws ServletException if an error occurs during request handling
      * @throws IOException      if an I/O error occurs during request handling
-     * @throws SQLException     if a database error occurs
      */
-    private boolean isSignUpValid(String email, String username, String password1, String password2, HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException, SQLException {
+    private boolean isSignUpValid(String email, String username, String password1, String password2, HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         if (!StringUtil.isValidEmail(email)) {
             showErrorPage(request, response, "Invalid email.", "signUpErrorMessage", "signUp");
             return false;
@@ -201,21 +236,12 @@ public class IndexServlet extends HttpServlet {
             showErrorPage(request, response, "Passwords don't match.", "signUpErrorMessage", "signUp");
             return false;
         }
-        UserDAO userDAO = new UserDAO();
-        if (userDAO.isEmailTaken(email)) {
-            showErrorPage(request, response, "Email already taken.", "signUpErrorMessage", "signUp");
-            return false;
-        }
-        if (userDAO.isUsernameTaken(username)) {
-            showErrorPage(request, response, "Username already taken.", "signUpErrorMessage", "signUp");
-            return false;
-        }
         return true;
     }
 
     /**
-     * Validates the inputs for user sign-in. Checks that the email is registered
-     * and that the password meets criteria.
+     * Validates the inputs for user sign-in. Checks that the email and the password meet criteria;
+     * whether the email is registered is known once the user is read.
      * @param email    the email address of the user
      * @param password the password entered by the user
      * @param request  the HttpServletRequest object that contains the client request
@@ -223,9 +249,8 @@ public class IndexServlet extends HttpServlet {
      * @return true if validation is successful, false otherwise
      * @throws ServletException if an error occurs during request handling
      * @throws IOException      if an I/O error occurs during request handling
-     * @throws SQLException     if a database error occurs
      */
-    private boolean isSignInValid(String email, String password, HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException, SQLException {
+    private boolean isSignInValid(String email, String password, HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         if (!StringUtil.isValidEmail(email)) {
             showErrorPage(request, response, "Invalid email.", "signInErrorMessage", "signIn");
             return false;
@@ -234,11 +259,6 @@ public class IndexServlet extends HttpServlet {
             showErrorPage(request, response, "Invalid password.", "signInErrorMessage", "signIn");
             return false;
         }
-        UserDAO userDAO = new UserDAO();
-        if (!userDAO.isEmailTaken(email)) {
-            showErrorPage(request, response, "Email not registered.", "signInErrorMessage", "signIn");
-            return false;
-        }
         return true;
     }
 
@@ -0,0 +1,77 @@
+package it.polimi.tiw.controller;
+
+import it.polimi.tiw.util.MetricsRegistry;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * MetricsServlet serves the metrics of the MetricsRegistry in the Prometheus text format.
+ * The metrics are only served to clients connecting from the loopback interface without going through a proxy,
+ * so that a scraper running on the same host can read them while they stay hidden from the public.
+ */
+public class MetricsServlet extends HttpServlet {
+
+    /**
+     * Unique identifier for Serializable class to ensure compatibility
+     * during the deserialization process. Changing this value can cause
+     * deserialization issues if there are any modifications to the class structure.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Registry of the metrics of the application.
+     */
+    private MetricsRegistry metricsRegistry;
+
+    /**
+     * Initializes the servlet and retrieves the MetricsRegistry instance.
+     * @throws ServletException if an error occurs during initialization.
+     */
+    @Override
+    public void init() throws ServletException {
+        this.metricsRegistry = MetricsRegistry.getInstance();
+    }
+
+    /**
+     * Handles GET requests to the servlet.
+     * Writes the current metrics, or answers 404 if the endpoint is disabled or the client is not local.
+     * @param request  the HTTP request object.
+     * @param response the HTTP response object.
+     * @throws ServletException if an error occurs during processing.
+     * @throws IOException      if an I/O error occurs during processing.
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (!metricsRegistry.isEndpointEnabled() || !isLocalRequest(request)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setContentType("text/plain; version=0.0.4");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        metricsRegistry.writePrometheus(response.getWriter());
+    }
+
+    /**
+     * Checks whether the request comes from the loopback interface and was not forwarded by a proxy.
+     * @param request the HTTP request object.
+     * @return true if the client is local, false otherwise.
+     */
+    private static boolean isLocalRequest(HttpServletRequest request) {
+        if (request.getHeader("Forwarded") != null || request.getHeader("X-Forwarded-For") != null)
+            return false;
+        try {
+            // The remote address is a literal, so no name lookup takes place
+            return InetAddress.getByName(request.getRemoteAddr()).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+}
\ No newline at end of file
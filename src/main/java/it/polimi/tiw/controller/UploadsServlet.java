@@ -1,21 +1,23 @@
 package it.polimi.tiw.controller;
 
 import it.polimi.tiw.dao.ImageDAO;
+import it.polimi.tiw.util.ConnectionContext;
+import it.polimi.tiw.util.FileStreamer;
+import it.polimi.tiw.util.ImageSize;
+import it.polimi.tiw.util.ThumbnailGenerator;
 import it.polimi.tiw.util.ViewEngine;
 import org.thymeleaf.TemplateEngine;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.sql.SQLException;
 import java.util.Properties;
 
@@ -23,8 +25,13 @@ import java.util.Properties;
  * UploadsServlet handles the retrieval and streaming of image files
  * stored on the server. It ensures secure access and delivers the
  * appropriate image file based on the request parameters.
+ * The optional size parameter (thumb, medium or original) selects a smaller rendition of the image,
+ * generated on demand by the ThumbnailGenerator if it does not exist yet.
+ * When the connector supports sendfile, the requests that can be answered without waiting are handled on the
+ * container thread, as Tomcat only sends files with sendfile for requests completed there; the others run on the
+ * RequestExecutor like the pages.
  */
-public class UploadsServlet extends HttpServlet {
+public class UploadsServlet extends AsyncHttpServlet {
 
     /**
      * Unique identifier for Serializable class to ensure compatibility
@@ -43,6 +50,11 @@ public class UploadsServlet extends HttpServlet {
      */
     private Path uploadsPath;
 
+    /**
+     * Generator of the smaller renditions of the images, or null if renditions are not available.
+     */
+    private ThumbnailGenerator thumbnailGenerator;
+
     /**
      * Initializes the servlet, retrieves the TemplateEngine instance, and
      * determines the uploads directory path from configuration.
@@ -61,6 +73,37 @@ public class UploadsServlet extends HttpServlet {
         } else {
             this.uploadsPath = Paths.get(getUploadsPath()).toAbsolutePath().normalize();
         }
+        try {
+            this.thumbnailGenerator = ThumbnailGenerator.getInstance();
+        } catch (IOException e) {
+            this.thumbnailGenerator = null;
+            System.err.println("Image renditions disabled: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Keeps the requests on the container thread when the connector supports sendfile and nothing has to be waited
+     * for, so that the images go from disk to socket without being copied through the heap or holding a worker
+     * thread during the transfer. A request is served right away when the image record is in the ImageDAO cache
+     * and the rendition is the original or already exists on disk; otherwise it may wait on MySQL or on the
+     * generation of the rendition, which must not block a container thread.
+     * @param request the HTTP request object.
+     * @return false if the image can be sent with sendfile without waiting, true otherwise.
+     */
+    @Override
+    protected boolean isHandledAsynchronously(HttpServletRequest request) {
+        if (!FileStreamer.canSendfile(request))
+            return true;
+        ImageSize imageSize = ImageSize.parse(request.getParameter("size"), ImageSize.ORIGINAL);
+        String imagePathString;
+        try {
+            imagePathString = ImageDAO.getCachedImagePath(Integer.parseInt(request.getParameter("imageId")));
+        } catch (NumberFormatException e) {
+            return true;
+        }
+        if (imageSize == null || imagePathString == null)
+            return true;
+        return thumbnailGenerator != null && !thumbnailGenerator.isDerivativeReady(Paths.get(imagePathString), imageSize);
     }
 
     /**
@@ -83,12 +126,20 @@ public class UploadsServlet extends HttpServlet {
         int imageId = getImageId(request, response);
         if (imageId == -1)
             return;
+        // Get requested rendition
+        ImageSize imageSize = ImageSize.parse(request.getParameter("size"), ImageSize.ORIGINAL);
+        if (imageSize == null) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid size parameter.");
+            return;
+        }
         // Get image path
         String imagePathString = getImagePathString(response, imageId);
         if (imagePathString == null || imagePathString.isEmpty())
             return;
+        // Give the database connection back before the potentially long file transfer
+        ConnectionContext.release();
         // Stream image
-        streamImage(response, imagePathString);
+        streamImage(request, response, imageId, imageSize, imagePathString);
     }
 
     /**
@@ -156,13 +207,21 @@ public class UploadsServlet extends HttpServlet {
 
     /**
      * Streams the image file to the client.
+     * Images never change once uploaded, so they are sent with validators derived from the image ID and the
+     * file attributes and with long-lived cache headers; a client holding a current copy gets 304 Not Modified.
+     * Range requests are honoured so that interrupted downloads of large images can be resumed.
+     * While a smaller rendition is not available yet, or if it could not be generated, the original is sent
+     * instead, with headers forcing the client to revalidate it so that it is never cached as the rendition.
+     * @param request          the HTTP request object.
      * @param response         the HTTP response object.
+     * @param imageId          the ID of the image.
+     * @param imageSize        the requested rendition of the image.
      * @param imagePathString  the file path of the image to be streamed.
      * @return true if the image is successfully streamed, false otherwise.
      * @throws ServletException if an error occurs during request processing.
      * @throws IOException      if an I/O error occurs during request processing.
      */
-    private boolean streamImage(HttpServletResponse response, String imagePathString) throws ServletException, IOException {
+    private boolean streamImage(HttpServletRequest request, HttpServletResponse response, int imageId, ImageSize imageSize, String imagePathString) throws ServletException, IOException {
         // Get image path
         Path imagePath = Paths.get(imagePathString);
         // Safety check on the path
@@ -170,26 +229,41 @@ public class UploadsServlet extends HttpServlet {
             response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid image path.");
             return false;
         }
-        // Check that the file exists and is not a directory
-        if (!Files.exists(imagePath) || Files.isDirectory(imagePath)) {
+        // Check that the file exists and is not a directory, reading its size at the same time
+        BasicFileAttributes imageAttributes = FileStreamer.readAttributes(imagePath);
+        if (imageAttributes == null) {
             response.sendError(HttpServletResponse.SC_NOT_FOUND, "Image not found on disk.");
             return false;
         }
-        // Determines the content type of the file
-        String contentType = Files.probeContentType(imagePath);
-        if (contentType == null)
-            contentType = "application/octet-stream"; // Generic content type
-        // Set the response headers
-        response.setContentType(contentType);
-        response.setContentLengthLong(Files.size(imagePath));
-        // Stream the file to the client
-        try (OutputStream outputStream = response.getOutputStream()) {
-            Files.copy(imagePath, outputStream);
-            outputStream.flush();
+        // Pick the requested rendition, falling back to the original while it is not available
+        boolean immutable = true;
+        if (imageSize != ImageSize.ORIGINAL) {
+            Path derivativePath = thumbnailGenerator != null ? thumbnailGenerator.getDerivative(imagePath, imageSize) : null;
+            BasicFileAttributes derivativeAttributes = derivativePath != null ? FileStreamer.readAttributes(derivativePath) : null;
+            if (derivativeAttributes != null) {
+                imagePath = derivativePath;
+                imageAttributes = derivativeAttributes;
+            } else {
+                immutable = false;
+            }
+        }
+        // Set the validators and answer conditional requests
+        String eTag = FileStreamer.createETag(imageId + "-" + imageSize.getName(), imageAttributes);
+        long lastModified = imageAttributes.lastModifiedTime().toMillis();
+        FileStreamer.setCacheHeaders(response, eTag, lastModified, immutable);
+        if (FileStreamer.isNotModified(request, eTag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        // Stream the file to the client, for as long as the transfer takes
+        liftTimeout(request);
+        try {
+            FileStreamer.streamFile(request, response, imagePath, imageAttributes, eTag);
             return true;
         } catch (IOException e) {
             e.printStackTrace();
-            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Internal server error.");
+            if (!response.isCommitted())
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Internal server error.");
             return false;
         }
     }
@@ -2,10 +2,13 @@ package it.polimi.tiw.dao;
 
 import it.polimi.tiw.model.Album;
 import it.polimi.tiw.model.Image;
+import it.polimi.tiw.util.ConnectionContext;
 import it.polimi.tiw.util.DatabaseConnectionPool;
+import it.polimi.tiw.util.PageCursor;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
 
 /**
  * Data Access Object for performing operations on the Album entity.
@@ -19,12 +22,18 @@ public class AlbumDAO {
      */
     private final DatabaseConnectionPool databaseConnectionPool;
 
+    /**
+     * DAO maintaining the statistics of the album creators.
+     */
+    private final UserStatsDAO userStatsDAO;
+
     /**
      * Initializes the AlbumDAO by obtaining an instance of the DatabaseConnectionPool.
      * @throws SQLException if there is a database access error.
      */
     public AlbumDAO() throws SQLException {
         this.databaseConnectionPool = DatabaseConnectionPool.getInstance();
+        this.userStatsDAO = new UserStatsDAO();
     }
 
     /**
@@ -66,13 +75,49 @@ public class AlbumDAO {
     }
 
     /**
-     * Retrieves the list of albums created by other users, ordered by the most recent.
-     * @param username the username of the user to exclude from the results.
-     * @return a list of albums created by other users.
+     * Retrieves a page of the albums created by other users, from the most recent, starting right after a cursor.
+     * Albums are ordered by creation date and then by ID, so that albums created at the same time keep a stable order.
+     * @param username the username of the current user, whose albums are excluded.
+     * @param after    the cursor of the last album of the previous page, or null for the first page.
+     * @param limit    the maximum number of albums to retrieve.
+     * @return a list of albums created by other users, from the most recent.
+     * @throws SQLException if a database access error occurs.
+     */
+    public ArrayList<Album> getOtherAlbumsAfter(String username, PageCursor after, int limit) throws SQLException {
+        String query = after == null
+                ? "SELECT * FROM Album WHERE album_creator != ? ORDER BY album_date DESC, album_id DESC LIMIT ?"
+                : "SELECT * FROM Album WHERE album_creator != ? AND (album_date < ? OR (album_date = ? AND album_id < ?)) ORDER BY album_date DESC, album_id DESC LIMIT ?";
+        return getOtherAlbumsPage(query, username, after, limit);
+    }
+
+    /**
+     * Retrieves a page of the albums created by other users ending right before a cursor, that is the page preceding it.
+     * @param username the username of the current user, whose albums are excluded.
+     * @param before   the cursor of the first album of the following page.
+     * @param limit    the maximum number of albums to retrieve.
+     * @return a list of albums created by other users, from the most recent, as for getOtherAlbumsAfter.
+     * @throws SQLException if a database access error occurs.
+     */
+    public ArrayList<Album> getOtherAlbumsBefore(String username, PageCursor before, int limit) throws SQLException {
+        String query = "SELECT * FROM Album WHERE album_creator != ? AND (album_date > ? OR (album_date = ? AND album_id > ?)) ORDER BY album_date ASC, album_id ASC LIMIT ?";
+        // The albums closest to the cursor are read first, then put back in display order
+        ArrayList<Album> otherAlbums = getOtherAlbumsPage(query, username, before, limit);
+        Collections.reverse(otherAlbums);
+        return otherAlbums;
+    }
+
+    /**
+     * Runs a keyset pagination query on the albums created by other users.
+     * Rows are read one at a time from the result set, so no more than one page of albums is ever held in memory.
+     * @param query    the query, with the username, the cursor date twice and the cursor ID as parameters
+     *                 if a cursor is given, and the limit as last parameter.
+     * @param username the username of the current user, whose albums are excluded.
+     * @param cursor   the cursor the page starts from, or null.
+     * @param limit    the maximum number of albums to retrieve.
+     * @return a list of albums in the order returned by the query.
      * @throws SQLException if a database access error occurs.
      */
-    public ArrayList<Album> getOtherAlbums(String username) throws SQLException {
-        String query = "SELECT * FROM Album WHERE album_creator != ? ORDER BY album_date DESC";
+    private ArrayList<Album> getOtherAlbumsPage(String query, String username, PageCursor cursor, int limit) throws SQLException {
         ArrayList<Album> otherAlbums = new ArrayList<>();
         Connection connection = null;
         PreparedStatement statement = null;
@@ -80,7 +125,14 @@ public class AlbumDAO {
         try {
             connection = databaseConnectionPool.getConnection();
             statement = connection.prepareStatement(query);
-            statement.setString(1, username);
+            int parameterIndex = 1;
+            statement.setString(parameterIndex++, username);
+            if (cursor != null) {
+                statement.setTimestamp(parameterIndex++, cursor.getDate());
+                statement.setTimestamp(parameterIndex++, cursor.getDate());
+                statement.setInt(parameterIndex++, cursor.getId());
+            }
+            statement.setInt(parameterIndex, limit);
             result = statement.executeQuery();
             while (result.next()) {
                 int albumId = result.getInt("album_id");
@@ -104,12 +156,27 @@ public class AlbumDAO {
     }
 
     /**
-     * Creates a new album in the database.
+     * Creates a new album in the database and counts it in the statistics of its creator.
      * @param album the Album object containing the details of the album to be created.
      * @return true if the album was created successfully, false otherwise.
      * @throws SQLException if a database access error occurs.
      */
     public boolean createAlbum(Album album) throws SQLException {
+        return ConnectionContext.inTransaction(() -> {
+            boolean created = insertAlbum(album);
+            if (created)
+                userStatsDAO.updateAlbumsCount(album.getAlbumCreator(), 1);
+            return created;
+        });
+    }
+
+    /**
+     * Inserts a new album into the database.
+     * @param album the Album object containing the details of the album to be inserted.
+     * @return true if the album was inserted successfully, false otherwise.
+     * @throws SQLException if a database access error occurs.
+     */
+    private boolean insertAlbum(Album album) throws SQLException {
         String query = "INSERT INTO Album (album_creator, album_title, album_date) VALUES (?, ?, ?)";
         Connection connection = null;
         PreparedStatement statement = null;
@@ -129,36 +196,6 @@ public class AlbumDAO {
         }
     }
 
-    /**
-     * Retrieves the number of albums created by a specific user.
-     * @param username the username of the album creator.
-     * @return the count of albums created by the user.
-     * @throws SQLException if a database access error occurs.
-     */
-    public int getAlbumsCountByUser(String username) throws SQLException {
-        String query = "SELECT COUNT(*) AS albums_count FROM Album WHERE album_creator = ?";
-        Connection connection = null;
-        PreparedStatement statement = null;
-        ResultSet result = null;
-        try {
-            connection = databaseConnectionPool.getConnection();
-            statement = connection.prepareStatement(query);
-            statement.setString(1, username);
-            result = statement.executeQuery();
-            if (result.next())
-                return result.getInt("albums_count");
-            else
-                return 0;
-        } finally {
-            if (result != null)
-                result.close();
-            if (statement != null)
-                statement.close();
-            if (connection != null)
-                databaseConnectionPool.releaseConnection(connection);
-        }
-    }
-
     /**
      * Retrieves the ID of the personal album of a specific user, identified by a specific naming convention.
      * @param username the username of the album creator.
@@ -323,7 +360,7 @@ public class AlbumDAO {
      * @throws SQLException if a database access error occurs.
      */
     public ArrayList<Image> getImagesByAlbumId(int albumId) throws SQLException {
-        String query = "SELECT i.* FROM AlbumContainsImage aci JOIN Image i ON aci.image_id = i.image_id WHERE aci.album_id = ? ORDER BY i.image_date DESC";
+        String query = "SELECT i.* FROM AlbumContainsImage aci JOIN Image i ON aci.image_id = i.image_id WHERE aci.album_id = ? ORDER BY aci.image_date DESC, aci.image_id DESC";
         ArrayList<Image> images = new ArrayList<>();
         Connection connection = null;
         PreparedStatement statement = null;
@@ -358,44 +395,50 @@ public class AlbumDAO {
     }
 
     /**
-     * Retrieves the number of images associated with a specific album ID.
+     * Retrieves a page of the images of an album, from the most recent, starting right after a cursor.
+     * Images are ordered by upload date and then by ID, so that images uploaded at the same time keep a stable order.
+     * The upload date is read from AlbumContainsImage, whose (album_id, image_date, image_id) index serves the seek
+     * and the order, so that the scan stops once the page is filled.
      * @param albumId the ID of the album.
-     * @return the count of images in the album.
+     * @param after   the cursor of the last image of the previous page, or null for the first page.
+     * @param limit   the maximum number of images to retrieve.
+     * @return a list of Image objects, from the most recent.
      * @throws SQLException if a database access error occurs.
      */
-    public int getImagesCountByAlbumId(int albumId) throws SQLException {
-        String query = "SELECT COUNT(*) AS image_count FROM AlbumContainsImage WHERE album_id = ?";
-        Connection connection = null;
-        PreparedStatement statement = null;
-        ResultSet result = null;
-        try {
-            connection = databaseConnectionPool.getConnection();
-            statement = connection.prepareStatement(query);
-            statement.setInt(1, albumId);
-            result = statement.executeQuery();
-            if (result.next())
-                return result.getInt("image_count");
-            return 0;
-        } finally {
-            if (result != null)
-                result.close();
-            if (statement != null)
-                statement.close();
-            if (connection != null)
-                databaseConnectionPool.releaseConnection(connection);
-        }
+    public ArrayList<Image> getImagesByAlbumIdAfter(int albumId, PageCursor after, int limit) throws SQLException {
+        String query = after == null
+                ? "SELECT i.* FROM AlbumContainsImage aci JOIN Image i ON aci.image_id = i.image_id WHERE aci.album_id = ? ORDER BY aci.image_date DESC, aci.image_id DESC LIMIT ?"
+                : "SELECT i.* FROM AlbumContainsImage aci JOIN Image i ON aci.image_id = i.image_id WHERE aci.album_id = ? AND (aci.image_date < ? OR (aci.image_date = ? AND aci.image_id < ?)) ORDER BY aci.image_date DESC, aci.image_id DESC LIMIT ?";
+        return getImagesPage(query, albumId, after, limit);
     }
 
     /**
-     * Retrieves the images associated with a specific album ID with pagination.
-     * @param albumId   the ID of the album.
-     * @param pageSize  the number of images to retrieve per page.
-     * @param startIndex the starting index for pagination.
-     * @return a list of Image objects associated with the album.
+     * Retrieves a page of the images of an album ending right before a cursor, that is the page preceding it.
+     * @param albumId the ID of the album.
+     * @param before  the cursor of the first image of the following page.
+     * @param limit   the maximum number of images to retrieve.
+     * @return a list of Image objects, from the most recent, as for getImagesByAlbumIdAfter.
      * @throws SQLException if a database access error occurs.
      */
-    public ArrayList<Image> getImagesByAlbumIdWithPagination(int albumId, int pageSize, int startIndex) throws SQLException {
-        String query = "SELECT i.* FROM AlbumContainsImage aci JOIN Image i ON aci.image_id = i.image_id WHERE aci.album_id = ? ORDER BY i.image_date DESC LIMIT ? OFFSET ?";
+    public ArrayList<Image> getImagesByAlbumIdBefore(int albumId, PageCursor before, int limit) throws SQLException {
+        String query = "SELECT i.* FROM AlbumContainsImage aci JOIN Image i ON aci.image_id = i.image_id WHERE aci.album_id = ? AND (aci.image_date > ? OR (aci.image_date = ? AND aci.image_id > ?)) ORDER BY aci.image_date ASC, aci.image_id ASC LIMIT ?";
+        // The images closest to the cursor are read first, then put back in display order
+        ArrayList<Image> images = getImagesPage(query, albumId, before, limit);
+        Collections.reverse(images);
+        return images;
+    }
+
+    /**
+     * Runs a keyset pagination query on the images of an album.
+     * @param query   the query, with the album ID, the cursor date twice and the cursor ID as parameters
+     *                if a cursor is given, and the limit as last parameter.
+     * @param albumId the ID of the album.
+     * @param cursor  the cursor the page starts from, or null.
+     * @param limit   the maximum number of images to retrieve.
+     * @return a list of Image objects in the order returned by the query.
+     * @throws SQLException if a database access error occurs.
+     */
+    private ArrayList<Image> getImagesPage(String query, int albumId, PageCursor cursor, int limit) throws SQLException {
         ArrayList<Image> images = new ArrayList<>();
         Connection connection = null;
         PreparedStatement statement = null;
@@ -403,9 +446,14 @@ public class AlbumDAO {
         try {
             connection = databaseConnectionPool.getConnection();
             statement = connection.prepareStatement(query);
-            statement.setInt(1, albumId);
-            statement.setInt(2, pageSize);
-            statement.setInt(3, startIndex);
+            int parameterIndex = 1;
+            statement.setInt(parameterIndex++, albumId);
+            if (cursor != null) {
+                statement.setTimestamp(parameterIndex++, cursor.getDate());
+                statement.setTimestamp(parameterIndex++, cursor.getDate());
+                statement.setInt(parameterIndex++, cursor.getId());
+            }
+            statement.setInt(parameterIndex, limit);
             result = statement.executeQuery();
             while (result.next()) {
                 int imageId = result.getInt("image_id");
@@ -1,7 +1,10 @@
 package it.polimi.tiw.dao;
 
 import it.polimi.tiw.model.Comment;
+import it.polimi.tiw.util.ConnectionContext;
 import it.polimi.tiw.util.DatabaseConnectionPool;
+import it.polimi.tiw.util.LruCache;
+import it.polimi.tiw.util.MetricsRegistry;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -12,42 +15,77 @@ import java.util.ArrayList;
 /**
  * Data Access Object for performing operations on the Comment entity.
  * This class provides methods to retrieve and manage comments in the database.
+ * The number of comments of each image is kept in an LRU cache shared by all instances,
+ * which is invalidated whenever a comment is added to the image or the image is deleted.
  */
 public class CommentDAO {
 
+    /**
+     * Maximum number of images whose comments count is kept in the cache.
+     */
+    private static final int COMMENTS_COUNT_CACHE_SIZE = 10_000;
+
+    /**
+     * Cache of the number of comments of each image keyed by image ID, shared by all CommentDAO instances.
+     */
+    private static final LruCache<Integer, Integer> commentsCountCache = new LruCache<>(COMMENTS_COUNT_CACHE_SIZE);
+
     /**
      * Connection pool to manage database connections efficiently.
      */
     private final DatabaseConnectionPool databaseConnectionPool;
 
+    /**
+     * DAO maintaining the statistics of the comment authors.
+     */
+    private final UserStatsDAO userStatsDAO;
+
+    static {
+        MetricsRegistry.getInstance().registerCache("commentsCount", commentsCountCache);
+    }
+
     /**
      * Initializes the CommentDAO by obtaining an instance of the DatabaseConnectionPool.
      * @throws SQLException if there is a database access error.
      */
     public CommentDAO() throws SQLException {
         this.databaseConnectionPool = DatabaseConnectionPool.getInstance();
+        this.userStatsDAO = new UserStatsDAO();
     }
 
     /**
-     * Retrieves the count of comments made by a specific user.
-     * @param username the username of the comment author.
-     * @return the count of comments made by the user.
+     * Retrieves a page of the comments associated with a specific image ID, most recent first.
+     * The page starts right after the given comment, so the database reads only the rows of the page
+     * from the image_id index, whose entries are ordered by comment ID within each image.
+     * @param imageId         the ID of the image.
+     * @param beforeCommentId the ID of the last comment of the previous page, or null for the most recent comments.
+     * @param limit           the maximum number of comments to retrieve.
+     * @return a list of comments associated with the image, older than the given comment.
      * @throws SQLException if a database access error occurs.
      */
-    public int getCommentsCountByUser(String username) throws SQLException {
-        String query = "SELECT COUNT(*) AS comments_count FROM Comment WHERE comment_author = ?";
+    public ArrayList<Comment> getCommentsByImageIdBefore(int imageId, Integer beforeCommentId, int limit) throws SQLException {
+        String query = "SELECT * FROM Comment WHERE image_id = ? AND comment_id < ? ORDER BY comment_id DESC LIMIT ?";
+        ArrayList<Comment> comments = new ArrayList<>();
         Connection connection = null;
         PreparedStatement statement = null;
         ResultSet result = null;
         try {
             connection = databaseConnectionPool.getConnection();
             statement = connection.prepareStatement(query);
-            statement.setString(1, username);
+            statement.setInt(1, imageId);
+            statement.setInt(2, beforeCommentId != null ? beforeCommentId : Integer.MAX_VALUE);
+            statement.setInt(3, limit);
             result = statement.executeQuery();
-            if (result.next())
-                return result.getInt("comments_count");
-            else
-                return 0;
+            while (result.next()) {
+                Comment comment = new Comment(
+                        result.getInt("image_id"),
+                        result.getString("comment_author"),
+                        result.getString("comment_text")
+                );
+                comment.setCommentId(result.getInt("comment_id"));
+                comments.add(comment);
+            }
+            return comments;
         } finally {
             if (result != null)
                 result.close();
@@ -59,14 +97,58 @@ public class CommentDAO {
     }
 
     /**
-     * Retrieves the comments associated with a specific image ID.
+     * Retrieves the number of comments associated with a specific image ID, from the comments count cache if possible.
      * @param imageId the ID of the image.
-     * @return a list of comments associated with the image.
+     * @return the number of comments associated with the image.
      * @throws SQLException if a database access error occurs.
      */
-    public ArrayList<Comment> getCommentsByImageId(int imageId) throws SQLException {
-        String query = "SELECT * FROM Comment WHERE image_id = ? ORDER BY comment_id DESC";
-        ArrayList<Comment> comments = new ArrayList<>();
+    public int getCommentsCountByImageId(int imageId) throws SQLException {
+        Integer commentsCount = commentsCountCache.get(imageId);
+        if (commentsCount == null) {
+            long invalidations = commentsCountCache.getInvalidationCount();
+            commentsCount = loadCommentsCountByImageId(imageId);
+            // A concurrent insert or delete may have made the count stale while it was being read
+            commentsCountCache.putIfNotInvalidated(imageId, commentsCount, invalidations);
+        }
+        return commentsCount;
+    }
+
+    /**
+     * Returns the comments count of an image if it is cached, without reading it from the database.
+     * @param imageId the ID of the image.
+     * @return the cached number of comments, or null if it is not cached.
+     */
+    static Integer getCachedCommentsCount(int imageId) {
+        return commentsCountCache.get(imageId);
+    }
+
+    /**
+     * Returns the number of invalidations of the comments count cache, to be read before counting the comments
+     * of an image in another query.
+     * @return the invalidation count of the comments count cache.
+     */
+    static long getCommentsCountInvalidationCount() {
+        return commentsCountCache.getInvalidationCount();
+    }
+
+    /**
+     * Caches the comments count of an image counted by another query, unless the cache was invalidated since.
+     * @param imageId       the ID of the image.
+     * @param commentsCount the number of comments of the image.
+     * @param invalidations the invalidation count read before the comments were counted.
+     */
+    static void cacheCommentsCount(int imageId, int commentsCount, long invalidations) {
+        commentsCountCache.putIfNotInvalidated(imageId, commentsCount, invalidations);
+    }
+
+    /**
+     * Counts the comments associated with a specific image ID in the database.
+     * @param imageId the ID of the image.
+     * @return the number of comments associated with the image.
+     * @throws SQLException if a database access error occurs.
+     */
+    private int loadCommentsCountByImageId(int imageId) throws SQLException {
+        String query = "SELECT COUNT(*) AS comments_count FROM Comment WHERE image_id = ?";
         Connection connection = null;
         PreparedStatement statement = null;
         ResultSet result = null;
@@ -75,16 +157,10 @@ public class CommentDAO {
             statement = connection.prepareStatement(query);
             statement.setInt(1, imageId);
             result = statement.executeQuery();
-            while (result.next()) {
-                Comment comment = new Comment(
-                        result.getInt("image_id"),
-                        result.getString("comment_author"),
-                        result.getString("comment_text")
-                );
-                comment.setCommentId(result.getInt("comment_id"));
-                comments.add(comment);
-            }
-            return comments;
+            if (result.next())
+                return result.getInt("comments_count");
+            else
+                return 0;
         } finally {
             if (result != null)
                 result.close();
@@ -96,12 +172,27 @@ public class CommentDAO {
     }
 
     /**
-     * Adds a new comment to the database.
+     * Adds a new comment to the database and counts it in the statistics of its author.
      * @param comment the Comment object containing the details of the comment to be added.
      * @return true if the comment was added successfully, false otherwise.
      * @throws SQLException if a database access error occurs.
      */
     public boolean addComment(Comment comment) throws SQLException {
+        return ConnectionContext.inTransaction(() -> {
+            boolean added = insertComment(comment);
+            if (added)
+                userStatsDAO.updateCommentsCount(comment.getCommentAuthor(), 1);
+            return added;
+        });
+    }
+
+    /**
+     * Inserts a new comment into the database.
+     * @param comment the Comment object containing the details of the comment to be inserted.
+     * @return true if the comment was inserted successfully, false otherwise.
+     * @throws SQLException if a database access error occurs.
+     */
+    private boolean insertComment(Comment comment) throws SQLException {
         String query = "INSERT INTO Comment (image_id, comment_author, comment_text) VALUES (?, ?, ?)";
         Connection connection = null;
         PreparedStatement statement = null;
@@ -114,6 +205,7 @@ public class CommentDAO {
             int rowsInserted = statement.executeUpdate();
             return rowsInserted > 0;
         } finally {
+            invalidateCachedCommentsCount(comment.getImageId());
             if (statement != null)
                 statement.close();
             if (connection != null)
@@ -121,4 +213,20 @@ public class CommentDAO {
         }
     }
 
+    /**
+     * Removes the comments count of an image from the cache after its comments changed.
+     * @param imageId the ID of the image whose comments changed.
+     */
+    static void invalidateCachedCommentsCount(int imageId) {
+        commentsCountCache.invalidate(imageId);
+    }
+
+    /**
+     * Removes the comments count of every image from the cache, for changes deleting the comments of several images
+     * at once, such as the deletion of a user.
+     */
+    static void invalidateAllCachedCommentsCounts() {
+        commentsCountCache.invalidateAll();
+    }
+
 }
\ No newline at end of file
@@ -1,7 +1,10 @@
 package it.polimi.tiw.dao;
 
 import it.polimi.tiw.model.Image;
+import it.polimi.tiw.util.ConnectionContext;
 import it.polimi.tiw.util.DatabaseConnectionPool;
+import it.polimi.tiw.util.LruCache;
+import it.polimi.tiw.util.MetricsRegistry;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -12,59 +15,66 @@ import java.util.ArrayList;
 /**
  * Data Access Object for performing operations on the Image entity.
  * This class provides methods to retrieve, create, update, and manage images in the database.
+ * Image records looked up by ID are kept in a read-through LRU cache shared by all instances,
+ * which is invalidated whenever an image is updated or deleted.
  */
 public class ImageDAO {
 
+    /**
+     * Maximum number of image records kept in the cache.
+     */
+    private static final int IMAGE_CACHE_SIZE = 10_000;
+
+    /**
+     * Cache of image records keyed by image ID, shared by all ImageDAO instances.
+     */
+    private static final LruCache<Integer, Image> imageCache = new LruCache<>(IMAGE_CACHE_SIZE);
+
     /**
      * Connection pool to manage database connections efficiently.
      */
     private final DatabaseConnectionPool databaseConnectionPool;
 
+    /**
+     * DAO maintaining the statistics of the image uploaders and comment authors.
+     */
+    private final UserStatsDAO userStatsDAO;
+
+    static {
+        MetricsRegistry.getInstance().registerCache("image", imageCache);
+    }
+
     /**
      * Initializes the ImageDAO by obtaining an instance of the DatabaseConnectionPool.
      * @throws SQLException if there is a database access error
      */
     public ImageDAO() throws SQLException {
         this.databaseConnectionPool = DatabaseConnectionPool.getInstance();
+        this.userStatsDAO = new UserStatsDAO();
     }
 
     /**
-     * Retrieves the count of images uploaded by a specific user.
-     * @param username the username of the image uploader
-     * @return the count of images uploaded by the user
+     * Adds a new image to the database and counts it in the statistics of its uploader.
+     * @param image the Image object containing the details of the image to be added
+     * @return the ID of the newly inserted image, or -1 if the insertion fails
      * @throws SQLException if a database access error occurs
      */
-    public int getImagesCountByUser(String username) throws SQLException {
-        String query = "SELECT COUNT(*) AS images_count FROM Image WHERE image_uploader = ?";
-        Connection connection = null;
-        PreparedStatement statement = null;
-        ResultSet result = null;
-        try {
-            connection = databaseConnectionPool.getConnection();
-            statement = connection.prepareStatement(query);
-            statement.setString(1, username);
-            result = statement.executeQuery();
-            if (result.next())
-                return result.getInt("images_count");
-            else
-                return 0;
-        } finally {
-            if (result != null)
-                result.close();
-            if (statement != null)
-                statement.close();
-            if (connection != null)
-                databaseConnectionPool.releaseConnection(connection);
-        }
+    public int addImage(Image image) throws SQLException {
+        return ConnectionContext.inTransaction(() -> {
+            int imageId = insertImage(image);
+            if (imageId != -1)
+                userStatsDAO.updateImagesCount(image.getImageUploader(), 1);
+            return imageId;
+        });
     }
 
     /**
-     * Adds a new image to the database.
-     * @param image the Image object containing the details of the image to be added
+     * Inserts a new image into the database.
+     * @param image the Image object containing the details of the image to be inserted
      * @return the ID of the newly inserted image, or -1 if the insertion fails
      * @throws SQLException if a database access error occurs
      */
-    public int addImage(Image image) throws SQLException {
+    private int insertImage(Image image) throws SQLException {
         String query = "INSERT INTO Image (image_uploader, image_title, image_date, image_text, image_path) VALUES (?, ?, ?, ?, ?)";
         Connection connection = null;
         PreparedStatement statement = null;
@@ -112,6 +122,7 @@ public class ImageDAO {
             int rowsUpdated = statement.executeUpdate();
             return rowsUpdated > 0;
         } finally {
+            imageCache.invalidate(imageId);
             if (statement != null)
                 statement.close();
             if (connection != null)
@@ -127,7 +138,8 @@ public class ImageDAO {
      * @throws SQLException if a database access error occurs
      */
     public boolean addImageToAlbums(int imageId, ArrayList<Integer> albumIds) throws SQLException {
-        String query = "INSERT INTO AlbumContainsImage (album_id, image_id) VALUES (?, ?)";
+        // The upload date is copied into the link, so that the images of an album are listed from its own index
+        String query = "INSERT INTO AlbumContainsImage (album_id, image_id, image_date) SELECT a.album_id, i.image_id, i.image_date FROM Album a, Image i WHERE a.album_id = ? AND i.image_id = ?";
         Connection connection = null;
         PreparedStatement statement = null;
         if (albumIds == null || albumIds.isEmpty())
@@ -161,66 +173,35 @@ public class ImageDAO {
      * @throws SQLException if a database access error occurs.
      */
     public boolean doesImageExist(int imageId) throws SQLException {
-        String query = "SELECT COUNT(*) AS count FROM Image WHERE image_id = ?";
-        Connection connection = null;
-        PreparedStatement statement = null;
-        ResultSet result = null;
-        try {
-            connection = databaseConnectionPool.getConnection();
-            statement = connection.prepareStatement(query);
-            statement.setInt(1, imageId);
-            result = statement.executeQuery();
-            if (result.next())
-                return result.getInt("count") > 0;
-            return false;
-        } finally {
-            if (result != null)
-                result.close();
-            if (statement != null)
-                statement.close();
-            if (connection != null)
-                databaseConnectionPool.releaseConnection(connection);
-        }
+        return getImageById(imageId) != null;
     }
 
     /**
-     * Checks whether a specific image belongs to a given album.
-     * @param imageId the ID of the image.
-     * @param albumId the ID of the album.
-     * @return true if the image belongs to the album, false otherwise.
+     * Retrieves an image by its ID, from the image cache if possible.
+     * @param imageId the ID of the image to retrieve.
+     * @return a copy of the Image object corresponding to the given ID, or null if no image is found.
      * @throws SQLException if a database access error occurs.
      */
-    public boolean doesImageBelongToAlbum(int imageId, int albumId) throws SQLException {
-        String query = "SELECT COUNT(*) AS count FROM AlbumContainsImage WHERE album_id = ? AND image_id = ?";
-        Connection connection = null;
-        PreparedStatement statement = null;
-        ResultSet result = null;
-        try {
-            connection = databaseConnectionPool.getConnection();
-            statement = connection.prepareStatement(query);
-            statement.setInt(1, albumId);
-            statement.setInt(2, imageId);
-            result = statement.executeQuery();
-            if (result.next())
-                return result.getInt("count") > 0;
-            return false;
-        } finally {
-            if (result != null)
-                result.close();
-            if (statement != null)
-                statement.close();
-            if (connection != null)
-                databaseConnectionPool.releaseConnection(connection);
+    public Image getImageById(int imageId) throws SQLException {
+        Image image = imageCache.get(imageId);
+        if (image == null) {
+            long invalidations = imageCache.getInvalidationCount();
+            image = loadImageById(imageId);
+            if (image == null)
+                return null;
+            // A concurrent update or delete may have made the record stale while it was being read
+            imageCache.putIfNotInvalidated(imageId, image, invalidations);
         }
+        return new Image(image);
     }
 
     /**
-     * Retrieves an image by its ID.
+     * Reads an image by its ID from the database.
      * @param imageId the ID of the image to retrieve.
      * @return the Image object corresponding to the given ID, or null if no image is found.
      * @throws SQLException if a database access error occurs.
      */
-    public Image getImageById(int imageId) throws SQLException {
+    private Image loadImageById(int imageId) throws SQLException {
         String query = "SELECT * FROM Image WHERE image_id = ?";
         Connection connection = null;
         PreparedStatement statement = null;
@@ -253,43 +234,33 @@ public class ImageDAO {
     }
 
     /**
-     * Checks whether a specific image belongs to a given user.
-     * @param imageId  the ID of the image.
-     * @param username the username of the user.
-     * @return true if the image belongs to the user, false otherwise.
+     * Deletes an image from the database by its ID, together with its comments, and updates the statistics
+     * of its uploader and of the authors of the comments.
+     * @param imageId the ID of the image to delete.
+     * @return true if the image was successfully deleted, false otherwise.
      * @throws SQLException if a database access error occurs.
      */
-    public boolean doesImageBelongToUser(int imageId, String username) throws SQLException {
-        String query = "SELECT COUNT(*) AS count FROM Image WHERE image_id = ? AND image_uploader = ?";
-        Connection connection = null;
-        PreparedStatement statement = null;
-        ResultSet result = null;
-        try {
-            connection = databaseConnectionPool.getConnection();
-            statement = connection.prepareStatement(query);
-            statement.setInt(1, imageId);
-            statement.setString(2, username);
-            result = statement.executeQuery();
-            if (result.next())
-                return result.getInt("count") > 0;
-            return false;
-        } finally {
-            if (result != null)
-                result.close();
-            if (statement != null)
-                statement.close();
-            if (connection != null)
-                databaseConnectionPool.releaseConnection(connection);
-        }
+    public boolean deleteImageById(int imageId) throws SQLException {
+        return ConnectionContext.inTransaction(() -> {
+            Image image = getImageById(imageId);
+            if (image == null)
+                return false;
+            // The comments are deleted by the cascade, so their authors are counted before the image goes
+            userStatsDAO.removeCommentsOnImage(imageId);
+            boolean deleted = removeImage(imageId);
+            if (deleted)
+                userStatsDAO.updateImagesCount(image.getImageUploader(), -1);
+            return deleted;
+        });
     }
 
     /**
-     * Deletes an image from the database by its ID.
-     * @param imageId the ID of the image to delete.
-     * @return true if the image was successfully deleted, false otherwise.
+     * Removes an image from the database by its ID.
+     * @param imageId the ID of the image to remove.
+     * @return true if the image was successfully removed, false otherwise.
      * @throws SQLException if a database access error occurs.
      */
-    public boolean deleteImageById(int imageId) throws SQLException {
+    private boolean removeImage(int imageId) throws SQLException {
         String query = "DELETE FROM Image WHERE image_id = ?";
         Connection connection = null;
         PreparedStatement statement = null;
@@ -300,6 +271,8 @@ public class ImageDAO {
             int rowsDeleted = statement.executeUpdate();
             return rowsDeleted > 0;
         } finally {
+            imageCache.invalidate(imageId);
+            CommentDAO.invalidateCachedCommentsCount(imageId);
             if (statement != null)
                 statement.close();
             if (connection != null)
@@ -314,26 +287,34 @@ public class ImageDAO {
      * @throws SQLException if a database access error occurs.
      */
     public String getImagePathById(int imageId) throws SQLException {
-        String query = "SELECT image_path FROM Image WHERE image_id = ?";
-        Connection connection = null;
-        PreparedStatement statement = null;
-        ResultSet result = null;
-        try {
-            connection = databaseConnectionPool.getConnection();
-            statement = connection.prepareStatement(query);
-            statement.setInt(1, imageId);
-            result = statement.executeQuery();
-            if (result.next())
-                return result.getString("image_path");
-            return null;
-        } finally {
-            if (result != null)
-                result.close();
-            if (statement != null)
-                statement.close();
-            if (connection != null)
-                databaseConnectionPool.releaseConnection(connection);
-        }
+        Image image = getImageById(imageId);
+        return image != null ? image.getImagePath() : null;
+    }
+
+    /**
+     * Returns the file path of an image if its record is cached, without reading it from the database.
+     * @param imageId the ID of the image.
+     * @return the file path of the image, or null if the image is not cached.
+     */
+    public static String getCachedImagePath(int imageId) {
+        Image image = imageCache.peek(imageId);
+        return image != null ? image.getImagePath() : null;
+    }
+
+    /**
+     * Returns the number of image lookups served by the image cache.
+     * @return the image cache hit count
+     */
+    public static long getImageCacheHits() {
+        return imageCache.getHitCount();
+    }
+
+    /**
+     * Returns the number of image lookups that had to query the database.
+     * @return the image cache miss count
+     */
+    public static long getImageCacheMisses() {
+        return imageCache.getMissCount();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+package it.polimi.tiw.dao;
+
+import it.polimi.tiw.model.Image;
+import it.polimi.tiw.model.ImageView;
+import it.polimi.tiw.util.DatabaseConnectionPool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Data Access Object building the ImageView read model of the image page.
+ * The existence of the album, the image, its membership in the album and its uploader are read with a single query,
+ * together with the number of comments on the image unless it is cached, and a page of the comments with a second
+ * one, instead of checking each of them with a separate round trip.
+ */
+public class ImageViewDAO {
+
+    /**
+     * Connection pool to manage database connections efficiently.
+     */
+    private final DatabaseConnectionPool databaseConnectionPool;
+
+    /**
+     * Initializes the ImageViewDAO by obtaining an instance of the DatabaseConnectionPool.
+     * @throws SQLException if there is a database access error.
+     */
+    public ImageViewDAO() throws SQLException {
+        this.databaseConnectionPool = DatabaseConnectionPool.getInstance();
+    }
+
+    /**
+     * Retrieves the view of an image of an album for a user, with a page of the comments on the image.
+     * @param albumId        the ID of the album the image is viewed from.
+     * @param imageId        the ID of the image.
+     * @param username       the username of the user viewing the image.
+     * @param commentsBefore the ID of the last comment of the previous page, or null for the most recent comments.
+     * @param commentsLimit  the maximum number of comments to load, 0 to load neither the comments nor their count.
+     * @return the view of the image; the comments are loaded only if the image belongs to the album.
+     * @throws SQLException if a database access error occurs.
+     */
+    public ImageView getImageView(int albumId, int imageId, String username, Integer commentsBefore, int commentsLimit) throws SQLException {
+        Integer cachedCommentsCount = commentsLimit > 0 ? CommentDAO.getCachedCommentsCount(imageId) : null;
+        boolean withCommentsCount = commentsLimit > 0 && cachedCommentsCount == null;
+        long invalidations = CommentDAO.getCommentsCountInvalidationCount();
+        ImageView imageView = loadImageView(albumId, imageId, username, withCommentsCount);
+        if (commentsLimit > 0 && imageView.isImageInAlbum()) {
+            imageView.setComments(new CommentDAO().getCommentsByImageIdBefore(imageId, commentsBefore, commentsLimit));
+            if (withCommentsCount)
+                CommentDAO.cacheCommentsCount(imageId, imageView.getCommentsCount(), invalidations);
+            else
+                imageView.setCommentsCount(cachedCommentsCount);
+        }
+        return imageView;
+    }
+
+    /**
+     * Reads the album, the image and the membership of the image in the album with a single query.
+     * @param albumId           the ID of the album the image is viewed from.
+     * @param imageId           the ID of the image.
+     * @param username          the username of the user viewing the image.
+     * @param withCommentsCount whether to count the comments on the image in the same query.
+     * @return the view of the image, without comments.
+     * @throws SQLException if a database access error occurs.
+     */
+    private ImageView loadImageView(int albumId, int imageId, String username, boolean withCommentsCount) throws SQLException {
+        String query = "SELECT i.*" +
+                (withCommentsCount ? ", (SELECT COUNT(*) FROM Comment c WHERE c.image_id = i.image_id) AS comments_count" : "") +
+                " FROM Album a " +
+                "LEFT JOIN AlbumContainsImage aci ON aci.album_id = a.album_id AND aci.image_id = ? " +
+                "LEFT JOIN Image i ON i.image_id = aci.image_id " +
+                "WHERE a.album_id = ?";
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet result = null;
+        try {
+            connection = databaseConnectionPool.getConnection();
+            statement = connection.prepareStatement(query);
+            statement.setInt(1, imageId);
+            statement.setInt(2, albumId);
+            result = statement.executeQuery();
+            if (!result.next())
+                return new ImageView(albumId, false, null, false);
+            if (result.getObject("image_id") == null)
+                return new ImageView(albumId, true, null, false);
+            Image image = new Image(result.getString("image_uploader"),
+                    result.getString("image_title"),
+                    result.getString("image_text")
+            );
+            image.setImageId(result.getInt("image_id"));
+            image.setImageDate(result.getTimestamp("image_date"));
+            image.setImagePath(result.getString("image_path"));
+            ImageView imageView = new ImageView(albumId, true, image, image.getImageUploader().equals(username));
+            if (withCommentsCount)
+                imageView.setCommentsCount(result.getInt("comments_count"));
+            return imageView;
+        } finally {
+            if (result != null)
+                result.close();
+            if (statement != null)
+                statement.close();
+            if (connection != null)
+                databaseConnectionPool.releaseConnection(connection);
+        }
+    }
+
+}
\ No newline at end of file
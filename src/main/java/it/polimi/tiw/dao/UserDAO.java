@@ -1,128 +1,199 @@
 package it.polimi.tiw.dao;
 
+import it.polimi.tiw.model.Album;
 import it.polimi.tiw.model.User;
+import it.polimi.tiw.util.ConnectionContext;
 import it.polimi.tiw.util.DatabaseConnectionPool;
-import it.polimi.tiw.util.PasswordEncrypt;
+import it.polimi.tiw.util.LruCache;
+import it.polimi.tiw.util.MetricsRegistry;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Locale;
 
 /**
  * Data Access Object for performing CRUD operations on the User entity.
- * This class provides methods to register a new user, log in a user,
- * check if a username or email is taken, and retrieve a username by email.
+ * This class provides methods to register a new user, authenticate a user,
+ * change the password of a user, and delete a user.
+ * Emails found not to be registered during authentication are remembered for a short time,
+ * so that repeated sign-in attempts with unknown emails do not reach the database.
  */
 public class UserDAO {
 
+    /**
+     * The outcome of the registration of a new user.
+     */
+    public enum RegistrationResult {
+
+        /** The user was registered */
+        REGISTERED,
+
+        /** The email is already registered by another user */
+        EMAIL_TAKEN,
+
+        /** The username is already registered by another user */
+        USERNAME_TAKEN
+
+    }
+
+    /**
+     * Error code of MySQL for a duplicate key
+     */
+    private static final int DUPLICATE_KEY_ERROR_CODE = 1062;
+
+    /**
+     * Standard SQLState of a unique key violation, used by databases other than MySQL
+     */
+    private static final String UNIQUE_VIOLATION_SQL_STATE = "23505";
+
+    /**
+     * Name of the unique key on the email column, reported in the message of a duplicate key error
+     */
+    private static final String EMAIL_KEY = "email_unique";
+
+    /**
+     * Maximum number of unknown emails remembered
+     */
+    private static final int UNKNOWN_EMAIL_CACHE_SIZE = 10_000;
+
+    /**
+     * Time in milliseconds an email is remembered as unknown
+     */
+    private static final long UNKNOWN_EMAIL_TTL = 30_000L;
+
+    /**
+     * Emails, in lower case, found not to be registered, with the time at which they are forgotten
+     */
+    private static final LruCache<String, Long> unknownEmailCache = new LruCache<>(UNKNOWN_EMAIL_CACHE_SIZE);
+
     /**
      * Connection pool to manage database connections efficiently
      */
     private final DatabaseConnectionPool databaseConnectionPool;
 
+    /**
+     * DAO maintaining the statistics of the users
+     */
+    private final UserStatsDAO userStatsDAO;
+
+    /**
+     * DAO creating the personal album of a new user
+     */
+    private final AlbumDAO albumDAO;
+
+    static {
+        MetricsRegistry.getInstance().registerCache("unknownEmail", unknownEmailCache);
+    }
+
     /**
      * Initializes the UserDAO by obtaining an instance of the DatabaseConnectionPool.
      * @throws SQLException if there is a database access error
      */
     public UserDAO() throws SQLException {
         this.databaseConnectionPool = DatabaseConnectionPool.getInstance();
+        this.userStatsDAO = new UserStatsDAO();
+        this.albumDAO = new AlbumDAO();
     }
 
     /**
-     * Registers a new user in the database.
+     * Registers a new user in the database in a single transaction, together with the row holding the statistics
+     * of the user and the personal "@username" album, so that no partially registered user is ever left behind.
+     * Whether the email or the username is taken is not checked beforehand: the unique keys of the User table
+     * reject the insertion, and the violated key tells which one.
      * @param user the User object containing the details to register
-     * @return true if the user was registered successfully, false otherwise
+     * @return REGISTERED if the user was registered, EMAIL_TAKEN or USERNAME_TAKEN if another user has them
      * @throws SQLException if a database access error occurs
      */
-    public boolean registerUser(User user) throws SQLException {
-        String query = "INSERT INTO User (username, email, password) VALUES (?, ?, ?)";
-        Connection connection = null;
-        PreparedStatement statement = null;
+    public RegistrationResult registerUser(User user) throws SQLException {
+        String emailKey = user.getEmail().toLowerCase(Locale.ROOT);
         try {
-            connection = databaseConnectionPool.getConnection();
-            statement = connection.prepareStatement(query);
-            statement.setString(1, user.getUsername());
-            statement.setString(2, user.getEmail());
-            statement.setString(3, user.getPassword());
-            int rowsInserted = statement.executeUpdate();
-            return rowsInserted > 0;
-        } finally {
-            if (statement != null)
-                statement.close();
-            if (connection != null)
-                databaseConnectionPool.releaseConnection(connection);
+            ConnectionContext.inTransaction(() -> {
+                // A sign-in failing concurrently must not remember the email as unknown once the user is committed
+                unknownEmailCache.invalidate(emailKey);
+                boolean registered = insertUser(user)
+                        && userStatsDAO.createUserStats(user.getUsername())
+                        && albumDAO.createAlbum(new Album(user.getUsername(), "@" + user.getUsername()));
+                if (!registered)
+                    throw new SQLException("Registration of user " + user.getUsername() + " did not insert all rows.");
+                return true;
+            });
+        } catch (SQLException e) {
+            if (!isDuplicateKey(e))
+                throw e;
+            return isEmailKeyViolated(e) ? RegistrationResult.EMAIL_TAKEN : RegistrationResult.USERNAME_TAKEN;
         }
+        return RegistrationResult.REGISTERED;
     }
 
     /**
-     * Authenticates a user by checking the password against the stored hash in the database.
-     * @param user the User object containing the email and password to authenticate
-     * @return true if the user is authenticated successfully, false otherwise
-     * @throws SQLException if a database access error occurs
+     * Checks whether an exception reports the violation of a unique key.
+     * @param e the exception to check
+     * @return true if a row with the same key already exists, false otherwise
      */
-    public boolean loginUser(User user) throws SQLException {
-        String query = "SELECT password FROM User WHERE email = ?";
-        Connection connection = null;
-        PreparedStatement statement = null;
-        ResultSet result = null;
-        try {
-            connection = databaseConnectionPool.getConnection();
-            statement = connection.prepareStatement(query);
-            statement.setString(1, user.getEmail());
-            result = statement.executeQuery();
-            if (result.next()) {
-                String hashedPassword = result.getString("password");
-                return PasswordEncrypt.checkPassword(user.getPassword(), hashedPassword);
-            }
-        } finally {
-            if (result != null)
-                result.close();
-            if (statement != null)
-                statement.close();
-            if (connection != null)
-                databaseConnectionPool.releaseConnection(connection);
-        }
-        return false;
+    private static boolean isDuplicateKey(SQLException e) {
+        return e.getErrorCode() == DUPLICATE_KEY_ERROR_CODE || UNIQUE_VIOLATION_SQL_STATE.equals(e.getSQLState());
+    }
+
+    /**
+     * Checks whether the key violated by a duplicate key error is the unique key on the email column.
+     * Otherwise it is the primary key, the username.
+     * @param e the duplicate key error
+     * @return true if the email is duplicate, false if the username is
+     */
+    private static boolean isEmailKeyViolated(SQLException e) {
+        String message = e.getMessage() != null ? e.getMessage().toLowerCase(Locale.ROOT) : "";
+        // MySQL names the key at the end, after the duplicate value; other databases quote the duplicate value.
+        // Either way the value, which may look like a key name, is left out
+        int keyStart = message.lastIndexOf(" for key ");
+        String key = keyStart >= 0 ? message.substring(keyStart) : message.replaceAll("'[^']*'", "");
+        return key.contains(EMAIL_KEY);
     }
 
     /**
-     * Checks if a username is already registered in the database.
-     * @param username the username to check
-     * @return true if the username is taken, false otherwise
+     * Inserts a new user into the database.
+     * @param user the User object containing the details to insert
+     * @return true if the user was inserted successfully, false otherwise
      * @throws SQLException if a database access error occurs
      */
-    public boolean isUsernameTaken(String username) throws SQLException {
-        String query = "SELECT COUNT(*) FROM User WHERE username = ?";
+    private boolean insertUser(User user) throws SQLException {
+        String query = "INSERT INTO User (username, email, password) VALUES (?, ?, ?)";
         Connection connection = null;
         PreparedStatement statement = null;
-        ResultSet result = null;
         try {
             connection = databaseConnectionPool.getConnection();
             statement = connection.prepareStatement(query);
-            statement.setString(1, username);
-            result = statement.executeQuery();
-            if (result.next())
-                return result.getInt(1) > 0;
+            statement.setString(1, user.getUsername());
+            statement.setString(2, user.getEmail());
+            statement.setString(3, user.getPassword());
+            int rowsInserted = statement.executeUpdate();
+            return rowsInserted > 0;
         } finally {
-            if (result != null)
-                result.close();
             if (statement != null)
                 statement.close();
             if (connection != null)
                 databaseConnectionPool.releaseConnection(connection);
         }
-        return false;
     }
 
     /**
-     * Checks if an email is already registered in the database.
-     * @param email the email address to check
-     * @return true if the email is taken, false otherwise
+     * Retrieves in a single query the user with a given email address, including the hashed password,
+     * so that the caller can verify the password without holding a connection.
+     * @param email the email address of the user
+     * @return the User object with username, email and hashed password, or null if the email is not registered
      * @throws SQLException if a database access error occurs
      */
-    public boolean isEmailTaken(String email) throws SQLException {
-        String query = "SELECT COUNT(*) FROM User WHERE email = ?";
+    public User authenticate(String email) throws SQLException {
+        String emailKey = email.toLowerCase(Locale.ROOT);
+        Long forgetTime = unknownEmailCache.get(emailKey);
+        if (forgetTime != null) {
+            if (System.currentTimeMillis() < forgetTime)
+                return null;
+            unknownEmailCache.remove(emailKey);
+        }
+        long invalidations = unknownEmailCache.getInvalidationCount();
+        String query = "SELECT username, email, password FROM User WHERE email = ?";
         Connection connection = null;
         PreparedStatement statement = null;
         ResultSet result = null;
@@ -132,7 +203,7 @@ public class UserDAO {
             statement.setString(1, email);
             result = statement.executeQuery();
             if (result.next())
-                return result.getInt(1) > 0;
+                return new User(result.getString("username"), result.getString("email"), result.getString("password"));
         } finally {
             if (result != null)
                 result.close();
@@ -141,45 +212,65 @@ public class UserDAO {
             if (connection != null)
                 databaseConnectionPool.releaseConnection(connection);
         }
-        return false;
+        // A concurrent registration may have added the email while it was being looked up
+        unknownEmailCache.putIfNotInvalidated(emailKey, System.currentTimeMillis() + UNKNOWN_EMAIL_TTL, invalidations);
+        return null;
     }
 
     /**
-     * Retrieves the username associated with a given email address.
-     * @param email the email address to look up
-     * @return the username associated with the email, or null if not found
+     * Replaces the hashed password of a user, for example to hash it again with a different work factor.
+     * The password is replaced only if it was not changed since it was read.
+     * @param email           the email address of the user
+     * @param currentPassword the hashed password read from the database
+     * @param newPassword     the new hashed password
+     * @return true if the password was replaced, false otherwise
      * @throws SQLException if a database access error occurs
      */
-    public String getUsernameByEmail(String email) throws SQLException {
-        String query = "SELECT username FROM User WHERE email = ?";
+    public boolean updatePassword(String email, String currentPassword, String newPassword) throws SQLException {
+        String query = "UPDATE User SET password = ? WHERE email = ? AND password = ?";
         Connection connection = null;
         PreparedStatement statement = null;
-        ResultSet result = null;
         try {
             connection = databaseConnectionPool.getConnection();
             statement = connection.prepareStatement(query);
-            statement.setString(1, email);
-            result = statement.executeQuery();
-            if (result.next())
-                return result.getString("username");
+            statement.setString(1, newPassword);
+            statement.setString(2, email);
+            statement.setString(3, currentPassword);
+            int rowsUpdated = statement.executeUpdate();
+            return rowsUpdated > 0;
         } finally {
-            if (result != null)
-                result.close();
             if (statement != null)
                 statement.close();
             if (connection != null)
                 databaseConnectionPool.releaseConnection(connection);
         }
-        return null;
     }
 
     /**
-     * Deletes a user from the database by their username.
+     * Deletes a user from the database by their username, together with their content,
+     * and updates the statistics of the users who commented on their images.
      * @param username the username of the user to delete
      * @return true if the user was deleted successfully, false otherwise
      * @throws SQLException if a database access error occurs
      */
     public boolean deleteUser(String username) throws SQLException {
+        return ConnectionContext.inTransaction(() -> {
+            // The comments on the images of the user are deleted by the cascade, so their authors are counted first
+            userStatsDAO.removeCommentsOnImagesOf(username);
+            boolean deleted = removeUser(username);
+            // The comments of the user on the images of other users are deleted as well
+            CommentDAO.invalidateAllCachedCommentsCounts();
+            return deleted;
+        });
+    }
+
+    /**
+     * Removes a user from the database by their username.
+     * @param username the username of the user to remove
+     * @return true if the user was removed successfully, false otherwise
+     * @throws SQLException if a database access error occurs
+     */
+    private boolean removeUser(String username) throws SQLException {
         String query = "DELETE FROM User WHERE username = ?";
         Connection connection = null;
         PreparedStatement statement = null;
@@ -0,0 +1,297 @@
+package it.polimi.tiw.dao;
+
+import it.polimi.tiw.model.UserStats;
+import it.polimi.tiw.util.DatabaseConnectionPool;
+import it.polimi.tiw.util.LruCache;
+import it.polimi.tiw.util.MetricsRegistry;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Data Access Object for performing operations on the UserStats entity.
+ * The UserStats table keeps one row of activity counters per user, maintained incrementally by the DAOs
+ * that create albums, add or delete images and add comments, so the profile page reads a single row
+ * instead of counting the rows of the Album, Image and Comment tables.
+ * The counters must be updated in the same transaction as the change they count.
+ * Counters looked up by username are kept in a read-through LRU cache shared by all instances,
+ * which is invalidated whenever the counters of a user change.
+ */
+public class UserStatsDAO {
+
+    /**
+     * Maximum number of users whose counters are kept in the cache.
+     */
+    private static final int USER_STATS_CACHE_SIZE = 10_000;
+
+    /**
+     * Cache of user counters keyed by username, shared by all UserStatsDAO instances.
+     */
+    private static final LruCache<String, UserStats> userStatsCache = new LruCache<>(USER_STATS_CACHE_SIZE);
+
+    /**
+     * Connection pool to manage database connections efficiently.
+     */
+    private final DatabaseConnectionPool databaseConnectionPool;
+
+    static {
+        MetricsRegistry.getInstance().registerCache("userStats", userStatsCache);
+    }
+
+    /**
+     * Initializes the UserStatsDAO by obtaining an instance of the DatabaseConnectionPool.
+     * @throws SQLException if there is a database access error.
+     */
+    public UserStatsDAO() throws SQLException {
+        this.databaseConnectionPool = DatabaseConnectionPool.getInstance();
+    }
+
+    /**
+     * Retrieves the counters of a user, from the counters cache if possible.
+     * @param username the username of the user.
+     * @return the counters of the user, all zero if the user has no counters row yet.
+     * @throws SQLException if a database access error occurs.
+     */
+    public UserStats getUserStats(String username) throws SQLException {
+        UserStats userStats = userStatsCache.get(username);
+        if (userStats == null) {
+            long invalidations = userStatsCache.getInvalidationCount();
+            userStats = loadUserStats(username);
+            // A concurrent update may have made the counters stale while they were being read
+            userStatsCache.putIfNotInvalidated(username, userStats, invalidations);
+        }
+        return userStats;
+    }
+
+    /**
+     * Reads the counters of a user from the database.
+     * @param username the username of the user.
+     * @return the counters of the user, all zero if the user has no counters row yet.
+     * @throws SQLException if a database access error occurs.
+     */
+    private UserStats loadUserStats(String username) throws SQLException {
+        String query = "SELECT albums_count, images_count, comments_count FROM UserStats WHERE username = ?";
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet result = null;
+        try {
+            connection = databaseConnectionPool.getConnection();
+            statement = connection.prepareStatement(query);
+            statement.setString(1, username);
+            result = statement.executeQuery();
+            if (result.next())
+                return new UserStats(username,
+                        result.getInt("albums_count"),
+                        result.getInt("images_count"),
+                        result.getInt("comments_count")
+                );
+            else
+                return new UserStats(username, 0, 0, 0);
+        } finally {
+            if (result != null)
+                result.close();
+            if (statement != null)
+                statement.close();
+            if (connection != null)
+                databaseConnectionPool.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Creates the counters row of a newly registered user, with all counters set to zero.
+     * @param username the username of the user.
+     * @return true if the row was created successfully, false otherwise.
+     * @throws SQLException if a database access error occurs.
+     */
+    public boolean createUserStats(String username) throws SQLException {
+        String query = "INSERT INTO UserStats (username) VALUES (?)";
+        Connection connection = null;
+        PreparedStatement statement = null;
+        try {
+            connection = databaseConnectionPool.getConnection();
+            statement = connection.prepareStatement(query);
+            statement.setString(1, username);
+            int rowsInserted = statement.executeUpdate();
+            return rowsInserted > 0;
+        } finally {
+            userStatsCache.invalidate(username);
+            if (statement != null)
+                statement.close();
+            if (connection != null)
+                databaseConnectionPool.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Adds a delta to the number of albums created by a user.
+     * @param username the username of the album creator.
+     * @param delta    the number of albums created, negative for deleted albums.
+     * @throws SQLException if a database access error occurs.
+     */
+    public void updateAlbumsCount(String username, int delta) throws SQLException {
+        updateCount("albums_count", username, delta);
+    }
+
+    /**
+     * Adds a delta to the number of images uploaded by a user.
+     * @param username the username of the image uploader.
+     * @param delta    the number of images uploaded, negative for deleted images.
+     * @throws SQLException if a database access error occurs.
+     */
+    public void updateImagesCount(String username, int delta) throws SQLException {
+        updateCount("images_count", username, delta);
+    }
+
+    /**
+     * Adds a delta to the number of comments written by a user.
+     * @param username the username of the comment author.
+     * @param delta    the number of comments written, negative for deleted comments.
+     * @throws SQLException if a database access error occurs.
+     */
+    public void updateCommentsCount(String username, int delta) throws SQLException {
+        updateCount("comments_count", username, delta);
+    }
+
+    /**
+     * Subtracts the comments on an image from the counters of their authors.
+     * It must be called in the transaction deleting the image, before the deletion cascades to the comments.
+     * @param imageId the ID of the image about to be deleted.
+     * @throws SQLException if a database access error occurs.
+     */
+    public void removeCommentsOnImage(int imageId) throws SQLException {
+        String query = "SELECT comment_author FROM Comment WHERE image_id = ? FOR UPDATE";
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet result = null;
+        Map<String, Integer> commentsByAuthor = new LinkedHashMap<>();
+        try {
+            connection = databaseConnectionPool.getConnection();
+            statement = connection.prepareStatement(query);
+            statement.setInt(1, imageId);
+            result = statement.executeQuery();
+            while (result.next())
+                commentsByAuthor.merge(result.getString("comment_author"), 1, Integer::sum);
+        } finally {
+            if (result != null)
+                result.close();
+            if (statement != null)
+                statement.close();
+            if (connection != null)
+                databaseConnectionPool.releaseConnection(connection);
+        }
+        subtractCommentsCounts(commentsByAuthor);
+    }
+
+    /**
+     * Subtracts the comments written by other users on the images of a user from the counters of their authors.
+     * It must be called in the transaction deleting the user, before the deletion cascades to the images
+     * and their comments. The counters row of the deleted user itself is deleted by the cascade.
+     * @param username the username of the user about to be deleted.
+     * @throws SQLException if a database access error occurs.
+     */
+    public void removeCommentsOnImagesOf(String username) throws SQLException {
+        String query = "SELECT comment_author FROM Comment WHERE image_id IN (SELECT image_id FROM Image WHERE image_uploader = ?) AND comment_author <> ? FOR UPDATE";
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet result = null;
+        Map<String, Integer> commentsByAuthor = new LinkedHashMap<>();
+        try {
+            connection = databaseConnectionPool.getConnection();
+            statement = connection.prepareStatement(query);
+            statement.setString(1, username);
+            statement.setString(2, username);
+            result = statement.executeQuery();
+            while (result.next())
+                commentsByAuthor.merge(result.getString("comment_author"), 1, Integer::sum);
+        } finally {
+            userStatsCache.invalidate(username);
+            if (result != null)
+                result.close();
+            if (statement != null)
+                statement.close();
+            if (connection != null)
+                databaseConnectionPool.releaseConnection(connection);
+        }
+        subtractCommentsCounts(commentsByAuthor);
+    }
+
+    /**
+     * Adds a delta to one of the counters of a user, creating the counters row if the user has none yet.
+     * Counters never go below zero.
+     * @param column   the name of the counter column to update.
+     * @param username the username of the user.
+     * @param delta    the value to add to the counter.
+     * @throws SQLException if a database access error occurs.
+     */
+    private void updateCount(String column, String username, int delta) throws SQLException {
+        String query = "INSERT INTO UserStats (username, " + column + ") VALUES (?, GREATEST(?, 0)) " +
+                "ON DUPLICATE KEY UPDATE " + column + " = GREATEST(" + column + " + ?, 0)";
+        Connection connection = null;
+        PreparedStatement statement = null;
+        try {
+            connection = databaseConnectionPool.getConnection();
+            statement = connection.prepareStatement(query);
+            statement.setString(1, username);
+            statement.setInt(2, delta);
+            statement.setInt(3, delta);
+            statement.executeUpdate();
+        } finally {
+            userStatsCache.invalidate(username);
+            if (statement != null)
+                statement.close();
+            if (connection != null)
+                databaseConnectionPool.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Subtracts a number of deleted comments from the counters of their authors.
+     * @param commentsByAuthor the number of deleted comments, keyed by the username of their author.
+     * @throws SQLException if a database access error occurs.
+     */
+    private void subtractCommentsCounts(Map<String, Integer> commentsByAuthor) throws SQLException {
+        if (commentsByAuthor.isEmpty())
+            return;
+        String query = "UPDATE UserStats SET comments_count = GREATEST(comments_count - ?, 0) WHERE username = ?";
+        Connection connection = null;
+        PreparedStatement statement = null;
+        try {
+            connection = databaseConnectionPool.getConnection();
+            statement = connection.prepareStatement(query);
+            for (Map.Entry<String, Integer> entry : commentsByAuthor.entrySet()) {
+                statement.setInt(1, entry.getValue());
+                statement.setString(2, entry.getKey());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            for (String author : commentsByAuthor.keySet())
+                userStatsCache.invalidate(author);
+            if (statement != null)
+                statement.close();
+            if (connection != null)
+                databaseConnectionPool.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Returns the number of counters lookups served by the counters cache.
+     * @return the counters cache hit count
+     */
+    public static long getUserStatsCacheHits() {
+        return userStatsCache.getHitCount();
+    }
+
+    /**
+     * Returns the number of counters lookups that had to query the database.
+     * @return the counters cache miss count
+     */
+    public static long getUserStatsCacheMisses() {
+        return userStatsCache.getMissCount();
+    }
+
+}
\ No newline at end of file
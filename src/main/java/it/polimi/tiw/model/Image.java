@@ -54,6 +54,19 @@ public class Image {
         this.imagePath = getUploadsPath() + "/0.png";
     }
 
+    /**
+     * Constructs a copy of the given Image.
+     * @param image the image to copy
+     */
+    public Image(Image image) {
+        this.imageId = image.imageId;
+        this.imageUploader = image.imageUploader;
+        this.imageTitle = image.imageTitle;
+        this.imageDate = image.imageDate != null ? (Timestamp) image.imageDate.clone() : null;
+        this.imageText = image.imageText;
+        this.imagePath = image.imagePath;
+    }
+
     /**
      * Retrieves the uploads directory path from the configuration properties.
      * @return the uploads directory path as a String; otherwise, null if an error occurs.
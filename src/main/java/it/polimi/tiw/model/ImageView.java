@@ -0,0 +1,128 @@
+package it.polimi.tiw.model;
+
+import java.util.ArrayList;
+
+/**
+ * Represents everything the image page needs to show an image of an album to a user:
+ * whether the album exists, the image if it belongs to the album, whether the user uploaded it,
+ * and a page of the comments on the image.
+ */
+public class ImageView {
+
+    /**
+     * The unique identifier of the album the image is viewed from.
+     */
+    private final int albumId;
+
+    /**
+     * Whether the album exists.
+     */
+    private final boolean albumExists;
+
+    /**
+     * The image, or null if it does not exist or does not belong to the album.
+     */
+    private final Image image;
+
+    /**
+     * Whether the image was uploaded by the user viewing it.
+     */
+    private final boolean imageBelongToUser;
+
+    /**
+     * A page of the comments on the image, most recent first.
+     */
+    private ArrayList<Comment> comments = new ArrayList<>();
+
+    /**
+     * The total number of comments on the image.
+     */
+    private int commentsCount;
+
+    /**
+     * Constructs a new ImageView with the specified attributes.
+     * @param albumId           the unique identifier of the album the image is viewed from
+     * @param albumExists       whether the album exists
+     * @param image             the image, or null if it does not exist or does not belong to the album
+     * @param imageBelongToUser whether the image was uploaded by the user viewing it
+     */
+    public ImageView(int albumId, boolean albumExists, Image image, boolean imageBelongToUser) {
+        this.albumId = albumId;
+        this.albumExists = albumExists;
+        this.image = image;
+        this.imageBelongToUser = imageBelongToUser;
+    }
+
+    /**
+     * Retrieves the unique identifier of the album the image is viewed from.
+     * @return the album ID
+     */
+    public int getAlbumId() {
+        return albumId;
+    }
+
+    /**
+     * Checks whether the album exists.
+     * @return true if the album exists, false otherwise
+     */
+    public boolean doesAlbumExist() {
+        return albumExists;
+    }
+
+    /**
+     * Checks whether the image exists and belongs to the album.
+     * @return true if the image can be viewed from the album, false otherwise
+     */
+    public boolean isImageInAlbum() {
+        return image != null;
+    }
+
+    /**
+     * Retrieves the image.
+     * @return the image, or null if it does not exist or does not belong to the album
+     */
+    public Image getImage() {
+        return image;
+    }
+
+    /**
+     * Checks whether the image was uploaded by the user viewing it.
+     * @return true if the user owns the image, false otherwise
+     */
+    public boolean doesImageBelongToUser() {
+        return imageBelongToUser;
+    }
+
+    /**
+     * Retrieves the loaded page of the comments on the image.
+     * @return the comments, most recent first
+     */
+    public ArrayList<Comment> getComments() {
+        return comments;
+    }
+
+    /**
+     * Updates the loaded page of the comments on the image.
+     * @param comments the comments, most recent first
+     */
+    public void setComments(ArrayList<Comment> comments) {
+        this.comments = comments;
+    }
+
+    /**
+     * Retrieves the total number of comments on the image.
+     * @return the comments count
+     */
+    public int getCommentsCount() {
+        return commentsCount;
+    }
+
+    /**
+     * Updates the total number of comments on the image.
+     * @param commentsCount the comments count
+     */
+    public void setCommentsCount(int commentsCount) {
+        this.commentsCount = commentsCount;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,75 @@
+package it.polimi.tiw.model;
+
+/**
+ * Represents the activity counters of a user: the number of albums created, images uploaded and comments written.
+ * Instances are immutable, so they can be shared safely by the cache of the UserStatsDAO.
+ */
+public class UserStats {
+
+    /**
+     * The username of the user the counters refer to.
+     */
+    private final String username;
+
+    /**
+     * The number of albums created by the user.
+     */
+    private final int albumsCount;
+
+    /**
+     * The number of images uploaded by the user.
+     */
+    private final int imagesCount;
+
+    /**
+     * The number of comments written by the user.
+     */
+    private final int commentsCount;
+
+    /**
+     * Constructs a new UserStats with the specified counters.
+     * @param username      the username of the user
+     * @param albumsCount   the number of albums created by the user
+     * @param imagesCount   the number of images uploaded by the user
+     * @param commentsCount the number of comments written by the user
+     */
+    public UserStats(String username, int albumsCount, int imagesCount, int commentsCount) {
+        this.username = username;
+        this.albumsCount = albumsCount;
+        this.imagesCount = imagesCount;
+        this.commentsCount = commentsCount;
+    }
+
+    /**
+     * Retrieves the username of the user the counters refer to.
+     * @return the username
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Retrieves the number of albums created by the user.
+     * @return the albums count
+     */
+    public int getAlbumsCount() {
+        return albumsCount;
+    }
+
+    /**
+     * Retrieves the number of images uploaded by the user.
+     * @return the images count
+     */
+    public int getImagesCount() {
+        return imagesCount;
+    }
+
+    /**
+     * Retrieves the number of comments written by the user.
+     * @return the comments count
+     */
+    public int getCommentsCount() {
+        return commentsCount;
+    }
+
+}
\ No newline at end of file
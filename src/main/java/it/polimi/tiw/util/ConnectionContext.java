@@ -0,0 +1,239 @@
+package it.polimi.tiw.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ConnectionContext binds a single pooled database connection to the current thread for the duration
+ * of a unit of work, typically one HTTP request.
+ * While a context is bound, every DAO obtaining a connection from the DatabaseConnectionPool shares the same
+ * connection, which is leased lazily on first use and returned to the pool when the context is unbound.
+ * The context also supports transactions spanning several DAO calls.
+ */
+public class ConnectionContext {
+
+    /**
+     * A unit of work executed against the database.
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    public interface SqlWork<T> {
+
+        /**
+         * Executes the unit of work.
+         * @return the result of the work
+         * @throws SQLException if a database access error occurs
+         */
+        T execute() throws SQLException;
+
+    }
+
+    /** The context bound to the current thread, if any */
+    private static final ThreadLocal<ConnectionContext> currentContext = new ThreadLocal<>();
+
+    /** The pool the connection is leased from */
+    private final DatabaseConnectionPool databaseConnectionPool;
+
+    /** The connection leased for this context, or null if no DAO needed one yet */
+    private Connection connection;
+
+    /** The nesting level of the transactions running in this context */
+    private int transactionDepth = 0;
+
+    /** Whether a nested transaction failed, so the outermost one must be rolled back */
+    private boolean rollbackOnly = false;
+
+    /** The actions to run once the running transaction commits or rolls back */
+    private final List<Runnable> completionActions = new ArrayList<>();
+
+    /**
+     * Creates a new context leasing its connection from the given pool.
+     * @param databaseConnectionPool the pool to lease the connection from
+     */
+    private ConnectionContext(DatabaseConnectionPool databaseConnectionPool) {
+        this.databaseConnectionPool = databaseConnectionPool;
+    }
+
+    /**
+     * Binds a new context to the current thread, unless one is already bound.
+     * @return true if a new context was bound and the caller must unbind it, false if one was already bound
+     * @throws SQLException if the connection pool cannot be obtained
+     */
+    public static boolean bind() throws SQLException {
+        if (currentContext.get() != null)
+            return false;
+        currentContext.set(new ConnectionContext(DatabaseConnectionPool.getInstance()));
+        return true;
+    }
+
+    /**
+     * Unbinds the context from the current thread, rolling back any unfinished transaction
+     * and returning the connection to the pool.
+     */
+    public static void unbind() {
+        ConnectionContext context = currentContext.get();
+        if (context == null)
+            return;
+        currentContext.remove();
+        if (context.transactionDepth > 0 && context.connection != null) {
+            try {
+                context.connection.rollback();
+                context.connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                System.err.println("Error rolling back unfinished transaction: " + e.getMessage());
+            }
+        }
+        context.transactionDepth = 0;
+        context.releaseConnection();
+        context.runCompletionActions();
+    }
+
+    /**
+     * Returns the context bound to the current thread.
+     * @return the current ConnectionContext, or null if none is bound
+     */
+    public static ConnectionContext current() {
+        return currentContext.get();
+    }
+
+    /**
+     * Returns the connection of the current context to the pool ahead of time, for example before a long
+     * I/O operation that no longer needs the database. A later DAO call leases a connection again.
+     * Nothing happens if no context is bound or a transaction is running.
+     */
+    public static void release() {
+        ConnectionContext context = currentContext.get();
+        if (context != null && context.transactionDepth == 0)
+            context.releaseConnection();
+    }
+
+    /**
+     * Runs an action once the transaction running in the current context commits or rolls back,
+     * for example to invalidate cached data the transaction modified. The action runs immediately
+     * if no transaction is running.
+     * @param action the action to run
+     */
+    public static void afterCompletion(Runnable action) {
+        ConnectionContext context = currentContext.get();
+        if (context != null && context.transactionDepth > 0)
+            context.completionActions.add(action);
+        else
+            action.run();
+    }
+
+    /**
+     * Runs a unit of work in a transaction on the connection of the current context.
+     * A temporary context is bound if none is, and a transaction already running in the context is joined,
+     * so the work commits or rolls back together with it.
+     * @param work the unit of work to execute
+     * @param <T>  the type of the result
+     * @return the result of the work
+     * @throws SQLException if a database access error occurs; the transaction is rolled back in that case
+     */
+    public static <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        boolean bound = bind();
+        try {
+            return currentContext.get().runInTransaction(work);
+        } finally {
+            if (bound)
+                unbind();
+        }
+    }
+
+    /**
+     * Returns the connection of this context, leasing it from the pool on first use.
+     * @return the Connection object shared by the DAOs in this context
+     * @throws SQLException if a connection cannot be obtained from the pool
+     */
+    Connection getConnection() throws SQLException {
+        if (connection == null)
+            connection = databaseConnectionPool.leaseConnection();
+        return connection;
+    }
+
+    /**
+     * Checks whether a connection is the one leased by this context.
+     * @param connection the connection to check
+     * @return true if the connection belongs to this context, false otherwise
+     */
+    boolean owns(Connection connection) {
+        return connection != null && connection == this.connection;
+    }
+
+    /**
+     * Executes a unit of work in a transaction, joining the one already running in this context if any.
+     * @param work the unit of work to execute
+     * @param <T>  the type of the result
+     * @return the result of the work
+     * @throws SQLException if a database access error occurs
+     */
+    private <T> T runInTransaction(SqlWork<T> work) throws SQLException {
+        // Join the running transaction: the outermost one decides whether to commit
+        if (transactionDepth > 0) {
+            transactionDepth++;
+            try {
+                return work.execute();
+            } catch (SQLException | RuntimeException e) {
+                rollbackOnly = true;
+                throw e;
+            } finally {
+                transactionDepth--;
+            }
+        }
+        Connection transactionConnection = getConnection();
+        transactionConnection.setAutoCommit(false);
+        transactionDepth = 1;
+        rollbackOnly = false;
+        try {
+            T result = work.execute();
+            if (rollbackOnly)
+                throw new SQLException("Transaction rolled back because a nested unit of work failed.");
+            transactionConnection.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            try {
+                transactionConnection.rollback();
+            } catch (SQLException rollback) {
+                e.addSuppressed(rollback);
+            }
+            throw e;
+        } finally {
+            transactionDepth = 0;
+            rollbackOnly = false;
+            try {
+                transactionConnection.setAutoCommit(true);
+            } catch (SQLException e) {
+                System.err.println("Error restoring auto-commit mode: " + e.getMessage());
+            }
+            runCompletionActions();
+        }
+    }
+
+    /**
+     * Runs and forgets the actions registered for the completion of the transaction.
+     */
+    private void runCompletionActions() {
+        while (!completionActions.isEmpty()) {
+            Runnable action = completionActions.remove(0);
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                System.err.println("Error running transaction completion action: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the leased connection to the pool, if any.
+     */
+    private void releaseConnection() {
+        if (connection != null) {
+            Connection leased = connection;
+            connection = null;
+            databaseConnectionPool.returnConnection(leased);
+        }
+    }
+
+}
\ No newline at end of file
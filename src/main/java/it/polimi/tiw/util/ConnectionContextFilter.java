@@ -0,0 +1,42 @@
+package it.polimi.tiw.util;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * ConnectionContextFilter binds a ConnectionContext to every request, so that all the DAOs used
+ * while handling the request share a single pooled connection.
+ * The connection is leased on the first database access and returned to the pool when the request completes.
+ */
+public class ConnectionContextFilter implements Filter {
+
+    /**
+     * Binds a ConnectionContext for the duration of the request and unbinds it afterwards.
+     * @param request  the ServletRequest object that contains the client request
+     * @param response the ServletResponse object that contains the response the servlet sends to the client
+     * @param chain    the FilterChain used to invoke the next filter or the servlet
+     * @throws IOException      if an I/O error occurs during request handling
+     * @throws ServletException if an error occurs during request handling
+     */
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        boolean bound;
+        try {
+            bound = ConnectionContext.bind();
+        } catch (SQLException e) {
+            throw new ServletException("Failed to obtain the connection pool", e);
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (bound)
+                ConnectionContext.unbind();
+        }
+    }
+
+}
\ No newline at end of file
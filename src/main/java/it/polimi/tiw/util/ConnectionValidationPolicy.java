@@ -0,0 +1,45 @@
+package it.polimi.tiw.util;
+
+/**
+ * ConnectionValidationPolicy defines when the DatabaseConnectionPool checks that a pooled connection
+ * is still alive with a round trip to the database.
+ * Each check costs a network round trip, so the policies trade detection speed for database chatter.
+ */
+public enum ConnectionValidationPolicy {
+
+    /**
+     * A connection is validated when it is borrowed only if it has been idle for longer than the configured threshold.
+     * Connections reused shortly after being released skip the check.
+     */
+    IDLE_THRESHOLD,
+
+    /**
+     * Borrowed and released connections are never validated; idle connections are validated
+     * periodically by the pool's housekeeping scheduler instead.
+     */
+    BACKGROUND,
+
+    /**
+     * Connections are never validated proactively; a connection is validated when it is released only if
+     * a statement failed on it with a connection error, and dropped once the driver reports it as closed.
+     */
+    ON_ERROR;
+
+    /**
+     * Parses a policy name, ignoring case and surrounding spaces.
+     * @param value        the name of the policy
+     * @param defaultValue the policy to return if the value is missing or unknown
+     * @return the matching ConnectionValidationPolicy, or the default one
+     */
+    public static ConnectionValidationPolicy parse(String value, ConnectionValidationPolicy defaultValue) {
+        if (value == null || value.isBlank())
+            return defaultValue;
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown connection validation policy: " + value);
+            return defaultValue;
+        }
+    }
+
+}
\ No newline at end of file
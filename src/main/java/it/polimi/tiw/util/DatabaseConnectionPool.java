@@ -6,22 +6,79 @@ import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * DatabaseConnectionPool is a singleton class that manages a pool of reusable database connections.
  * This class optimizes database access by maintaining a set of preallocated connections,
- * reducing the overhead of frequently creating and closing connections. It supports expanding
- * the pool when needed and includes periodic cleanup of idle or invalid connections.
+ * reducing the overhead of frequently creating and closing connections. The pool grows on demand
+ * up to a hard ceiling, keeps track of total, idle and leased connections, serves waiting threads
+ * in arrival order and includes periodic cleanup of idle or invalid connections.
+ * Connections are validated according to a configurable ConnectionValidationPolicy, and each of them keeps
+ * an LRU cache of prepared statements so that constant SQL is not parsed again on every DAO call.
  */
 public class DatabaseConnectionPool {
 
     /** The singleton instance of the DatabaseConnectionPool */
     private static DatabaseConnectionPool instance;
 
-    /** A blocking queue that holds available database connections in the pool */
-    private BlockingQueue<Connection> availableConnections;
+    /**
+     * The lock guarding the creation and disposal of the singleton instance.
+     * A ReentrantLock rather than a monitor, so that a virtual thread waiting for the pool to open its
+     * connections does not pin its carrier thread.
+     */
+    private static final ReentrantLock instanceLock = new ReentrantLock();
+
+    /**
+     * A deque that holds idle database connections in the pool.
+     * Connections are returned to and taken from the head, so the most recently used ones are reused first.
+     */
+    private final BlockingDeque<PooledConnection> availableConnections;
+
+    /** The connections currently handed out to callers, mapped to their pool bookkeeping */
+    private final Map<Connection, PooledConnection> leasedConnectionMap;
+
+    /**
+     * Fair semaphore with one permit per connection that can be leased.
+     * It enforces the maximum pool size and queues waiting threads in FIFO order.
+     */
+    private final Semaphore leasePermits;
+
+    /** The number of open connections owned by the pool, both idle and leased */
+    private final AtomicInteger totalConnections = new AtomicInteger();
+
+    /** The number of idle connections waiting in the pool */
+    private final AtomicInteger idleConnections = new AtomicInteger();
+
+    /** The number of connections currently leased to callers */
+    private final AtomicInteger leasedConnections = new AtomicInteger();
+
+    /** The number of validation round trips performed, grouped by the policy that triggered them */
+    private final Map<ConnectionValidationPolicy, LongAdder> validationCounters = new EnumMap<>(ConnectionValidationPolicy.class);
+
+    /** The number of borrows and releases that skipped the validation round trip */
+    private final LongAdder skippedValidations = new LongAdder();
+
+    /** The number of connections discarded because they were found broken or closed */
+    private final LongAdder failedValidations = new LongAdder();
+
+    /** The number of prepared statements served from a connection's statement cache */
+    private final LongAdder statementCacheHits = new LongAdder();
+
+    /** The number of prepared statements that had to be prepared on the connection */
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    /** The registry timing the leases and the statement executions */
+    private final MetricsRegistry metricsRegistry = MetricsRegistry.getInstance();
+
+    /** Whether the pool is shutting down; released connections are closed instead of pooled */
+    private volatile boolean shuttingDown = false;
 
     /** The driver class name for connecting to the database */
     private static String databaseDriver;
@@ -35,15 +92,24 @@ public class DatabaseConnectionPool {
     /** The password for connecting to the database */
     private static String databasePassword;
 
+    /** The policy deciding when connections are validated */
+    private static ConnectionValidationPolicy validationPolicy = ConnectionValidationPolicy.IDLE_THRESHOLD;
+
+    /** The idle time in milliseconds after which a borrowed connection is validated with the IDLE_THRESHOLD policy */
+    private static long validationIdleThreshold = 30_000L;
+
+    /** The interval in seconds between background validations of idle connections with the BACKGROUND policy */
+    private static long validationInterval = 30L;
+
+    /** The maximum number of prepared statements cached by each connection, 0 to disable the cache */
+    private static int statementCacheSize = 64;
+
     /** The initial number of connections to create in the pool */
     private static final int INITIAL_POOL_SIZE = 20;
 
     /** The maximum number of connections allowed in the pool */
     private static final int MAX_POOL_SIZE = 100;
 
-    /** The number of additional connections to add when expanding the pool */
-    private static final int INCREASE_POOL_SIZE = 5;
-
     /** The timeout in seconds for obtaining a connection from the pool */
     private static final int CONNECTION_TIMEOUT = 3;
 
@@ -58,6 +124,7 @@ public class DatabaseConnectionPool {
      */
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
         Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setDaemon(true);
         return t;
     });
 
@@ -68,9 +135,14 @@ public class DatabaseConnectionPool {
      */
     private DatabaseConnectionPool() throws SQLException {
         loadDatabaseProperties();
-        this.availableConnections = new LinkedBlockingQueue<>(MAX_POOL_SIZE);
+        this.availableConnections = new LinkedBlockingDeque<>(MAX_POOL_SIZE);
+        this.leasedConnectionMap = new ConcurrentHashMap<>();
+        this.leasePermits = new Semaphore(MAX_POOL_SIZE, true);
+        for (ConnectionValidationPolicy policy : ConnectionValidationPolicy.values())
+            validationCounters.put(policy, new LongAdder());
         for (int i = 0; i < INITIAL_POOL_SIZE; i++) {
-            this.availableConnections.add(createConnection());
+            if (reserveConnectionSlot(INITIAL_POOL_SIZE))
+                addIdleConnection(createReservedConnection());
         }
         startCleanUpTask();
     }
@@ -92,11 +164,19 @@ public class DatabaseConnectionPool {
             databaseUrl = properties.getProperty("database.url");
             databaseUsername = properties.getProperty("database.username");
             databasePassword = properties.getProperty("database.password");
+            // Validation settings are optional and fall back to their defaults
+            validationPolicy = ConnectionValidationPolicy.parse(properties.getProperty("database.validation.policy"), validationPolicy);
+            validationIdleThreshold = Long.parseLong(properties.getProperty("database.validation.idleThreshold", String.valueOf(validationIdleThreshold)).trim());
+            validationInterval = Long.parseLong(properties.getProperty("database.validation.interval", String.valueOf(validationInterval)).trim());
+            statementCacheSize = Integer.parseInt(properties.getProperty("database.statementCacheSize", String.valueOf(statementCacheSize)).trim());
             // Load the database driver
             Class.forName(databaseDriver);
         } catch (IOException e) {
             System.err.println("Error reading properties file: " + e.getMessage());
             System.exit(1);
+        } catch (NumberFormatException e) {
+            System.err.println("Error in database pool settings: " + e.getMessage());
+            System.exit(1);
         } catch (ClassNotFoundException e) {
             System.err.println("Error loading database driver: " + e.getMessage());
             System.exit(1);
@@ -108,110 +188,438 @@ public class DatabaseConnectionPool {
      * @return the singleton instance of the DatabaseConnectionPool
      * @throws SQLException if a database access error occurs
      */
-    public static synchronized DatabaseConnectionPool getInstance() throws SQLException {
-        if (instance == null)
-            instance = new DatabaseConnectionPool();
-        return instance;
+    public static DatabaseConnectionPool getInstance() throws SQLException {
+        instanceLock.lock();
+        try {
+            if (instance == null)
+                instance = new DatabaseConnectionPool();
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the singleton instance if it has already been created, without creating it.
+     * @return the singleton instance, or null
+     */
+    static DatabaseConnectionPool getExistingInstance() {
+        instanceLock.lock();
+        try {
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
     }
 
     /**
      * Creates a new database connection using the configured database URL, username, and password.
+     * With MySQL, statements are prepared on the server so that the cached ones are not parsed again.
      * @return a new Connection object
      * @throws SQLException if a database access error occurs
      */
     private Connection createConnection() throws SQLException {
-        return DriverManager.getConnection(databaseUrl, databaseUsername, databasePassword);
+        Properties connectionProperties = new Properties();
+        connectionProperties.setProperty("user", databaseUsername);
+        connectionProperties.setProperty("password", databasePassword);
+        if (statementCacheSize > 0 && databaseUrl.startsWith("jdbc:mysql:"))
+            connectionProperties.setProperty("useServerPrepStmts", "true");
+        return DriverManager.getConnection(databaseUrl, connectionProperties);
+    }
+
+    /**
+     * Atomically reserves room for one more connection, as long as the total stays within the given limit.
+     * @param limit the maximum total number of connections allowed after the reservation
+     * @return true if a slot was reserved, false if the pool already reached the limit
+     */
+    private boolean reserveConnectionSlot(int limit) {
+        while (true) {
+            int total = totalConnections.get();
+            if (total >= limit)
+                return false;
+            if (totalConnections.compareAndSet(total, total + 1))
+                return true;
+        }
     }
 
     /**
-     * Retrieves a connection from the pool, expanding the pool if necessary and within the maximum pool size.
+     * Opens a new connection for a slot previously reserved with reserveConnectionSlot.
+     * The reservation is given back if the connection cannot be created.
+     * @return the new connection wrapped with its pool bookkeeping
+     * @throws SQLException if a database access error occurs
+     */
+    private PooledConnection createReservedConnection() throws SQLException {
+        try {
+            return new PooledConnection(createConnection(), this, statementCacheSize, statementCacheHits, statementCacheMisses, metricsRegistry);
+        } catch (SQLException | RuntimeException e) {
+            totalConnections.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieves a connection from the pool.
+     * If a ConnectionContext is bound to the current thread, its shared connection is returned instead,
+     * so that all DAOs used while handling a request work on a single lease.
      * @return a valid Connection object from the pool
-     * @throws SQLException if a database access error occurs or if interrupted while waiting for a connection
+     * @throws SQLException if a database access error occurs, if no connection becomes available in time
+     *                      or if interrupted while waiting for a connection
      */
     public Connection getConnection() throws SQLException {
-        Connection connection = null;
+        ConnectionContext context = ConnectionContext.current();
+        if (context != null)
+            return context.getConnection();
+        return leaseConnection();
+    }
+
+    /**
+     * Leases a connection from the pool.
+     * An idle connection is reused when available; otherwise a new one is opened immediately as long as the
+     * pool is below its maximum size. When the pool is exhausted, callers wait in arrival order for a
+     * connection to be released, up to CONNECTION_TIMEOUT seconds.
+     * @return a valid Connection object from the pool
+     * @throws SQLException if a database access error occurs, if no connection becomes available in time
+     *                      or if interrupted while waiting for a connection
+     */
+    Connection leaseConnection() throws SQLException {
+        long start = System.nanoTime();
         try {
-            // Try to retrieve a connection from the pool within the specified timeout
-            connection = availableConnections.poll(CONNECTION_TIMEOUT, TimeUnit.SECONDS);
-            // If no connection is available and pool expansion is possible, add new connections
-            if (connection == null && availableConnections.size() + INCREASE_POOL_SIZE <= MAX_POOL_SIZE) {
-                synchronized (this) {
-                    for (int i = 0; i < INCREASE_POOL_SIZE; i++) {
-                        availableConnections.offer(createConnection());
-                    }
-                }
-                // Retrieve a newly created connection from the pool
-                connection = availableConnections.take();
-            }
-            // Check if the retrieved connection is valid
-            if (connection != null && !connection.isValid(CONNECTION_TIMEOUT)) {
-                connection.close();
-                availableConnections.remove(connection);
-                connection = createConnection();
-            }
+            return leaseConnection(start + TimeUnit.SECONDS.toNanos(CONNECTION_TIMEOUT));
+        } finally {
+            metricsRegistry.recordConnectionAcquire(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Leases a connection from the pool, waiting for a lease permit first.
+     * @param deadline the System.nanoTime() value after which the caller stops waiting
+     * @return a valid Connection object from the pool
+     * @throws SQLException if a database access error occurs, if no connection becomes available in time
+     *                      or if interrupted while waiting for a connection
+     */
+    private Connection leaseConnection(long deadline) throws SQLException {
+        try {
+            // Wait for a lease permit: this bounds the number of leased connections and queues waiters fairly
+            if (!leasePermits.tryAcquire(CONNECTION_TIMEOUT, TimeUnit.SECONDS))
+                throw new SQLException("Timed out waiting for a database connection.");
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new SQLException("Interrupted while waiting for a connection.", e);
         }
-        return connection;
+        try {
+            PooledConnection pooledConnection = acquireConnection(deadline);
+            Connection connection = pooledConnection.getConnection();
+            leasedConnectionMap.put(connection, pooledConnection);
+            leasedConnections.incrementAndGet();
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            leasePermits.release();
+            throw e;
+        }
     }
 
     /**
-     * Returns a connection back to the pool if it is valid, allowing it to be reused.
+     * Obtains a connection for a caller already holding a lease permit, reusing an idle connection
+     * or opening a new one when the pool can still grow.
+     * @param deadline the System.nanoTime() value after which the caller stops waiting
+     * @return a usable connection wrapped with its pool bookkeeping
+     * @throws SQLException if a database access error occurs or if no connection becomes available in time
+     */
+    private PooledConnection acquireConnection(long deadline) throws SQLException {
+        while (true) {
+            if (shuttingDown)
+                throw new SQLException("The connection pool has been shut down.");
+            PooledConnection pooledConnection = pollIdleConnection();
+            // Grow the pool right away instead of waiting for a connection to be released
+            if (pooledConnection == null && reserveConnectionSlot(MAX_POOL_SIZE))
+                return createReservedConnection();
+            // The pool is at its ceiling: wait for a connection that is being returned
+            if (pooledConnection == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    throw new SQLException("Timed out waiting for a database connection.");
+                try {
+                    pooledConnection = availableConnections.pollFirst(remaining, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a connection.", e);
+                }
+                if (pooledConnection == null)
+                    continue;
+                idleConnections.decrementAndGet();
+            }
+            // Check the connection as required by the validation policy, otherwise discard it and try again
+            if (isUsableOnBorrow(pooledConnection))
+                return pooledConnection;
+            failedValidations.increment();
+            discardConnection(pooledConnection);
+        }
+    }
+
+    /**
+     * Decides whether an idle connection can be handed out, validating it only when the policy requires it.
+     * @param pooledConnection the idle connection about to be borrowed
+     * @return true if the connection can be used, false if it is broken
+     */
+    private boolean isUsableOnBorrow(PooledConnection pooledConnection) {
+        Connection connection = pooledConnection.getPhysicalConnection();
+        try {
+            // Closed connections are detected locally, without a round trip
+            if (connection.isClosed())
+                return false;
+            if (validationPolicy == ConnectionValidationPolicy.IDLE_THRESHOLD && pooledConnection.getIdleMillis() > validationIdleThreshold) {
+                validationCounters.get(ConnectionValidationPolicy.IDLE_THRESHOLD).increment();
+                return connection.isValid(CONNECTION_TIMEOUT);
+            }
+            skippedValidations.increment();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Takes the most recently used idle connection without waiting.
+     * @return an idle connection, or null if there are none
+     */
+    private PooledConnection pollIdleConnection() {
+        PooledConnection pooledConnection = availableConnections.pollFirst();
+        if (pooledConnection != null)
+            idleConnections.decrementAndGet();
+        return pooledConnection;
+    }
+
+    /**
+     * Puts a connection back among the idle ones, closing it if the pool cannot hold it.
+     * @param pooledConnection the connection to make available
+     */
+    private void addIdleConnection(PooledConnection pooledConnection) {
+        pooledConnection.markIdle();
+        idleConnections.incrementAndGet();
+        if (!availableConnections.offerFirst(pooledConnection)) {
+            idleConnections.decrementAndGet();
+            discardConnection(pooledConnection);
+        }
+    }
+
+    /**
+     * Closes a connection and removes it from the pool accounting.
+     * @param pooledConnection the connection to discard
+     */
+    private void discardConnection(PooledConnection pooledConnection) {
+        totalConnections.decrementAndGet();
+        try {
+            pooledConnection.close();
+        } catch (SQLException e) {
+            System.err.println("Error while closing connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns a connection back to the pool, allowing it to be reused.
+     * The shared connection of the ConnectionContext bound to the current thread is kept until the context is unbound.
      * @param connection the Connection object to release back to the pool
      */
     public void releaseConnection(Connection connection) {
-        if (connection != null) {
-            try {
-                // Only add the connection back to the pool if it is still valid
-                if (connection.isValid(CONNECTION_TIMEOUT))
-                    availableConnections.offer(connection);
-            } catch (SQLException e) {
-                System.err.println("Error while releasing connection: " + e.getMessage());
+        ConnectionContext context = ConnectionContext.current();
+        if (context != null && context.owns(connection))
+            return;
+        returnConnection(connection);
+    }
+
+    /**
+     * Returns a leased connection to the pool.
+     * No round trip is made, unless the ON_ERROR policy is used and a statement failed on the connection:
+     * otherwise the connection is dropped only if the driver already reports it as closed.
+     * @param connection the Connection object to return to the pool
+     */
+    void returnConnection(Connection connection) {
+        if (connection == null)
+            return;
+        // Ignore connections that were not leased by this pool or that were already released
+        PooledConnection pooledConnection = leasedConnectionMap.remove(connection);
+        if (pooledConnection == null) {
+            System.err.println("Attempt to release a connection that is not leased from the pool.");
+            return;
+        }
+        leasedConnections.decrementAndGet();
+        try {
+            boolean closed = pooledConnection.getPhysicalConnection().isClosed();
+            if (!closed && validationPolicy == ConnectionValidationPolicy.ON_ERROR && pooledConnection.hasErrorOccurred()) {
+                validationCounters.get(ConnectionValidationPolicy.ON_ERROR).increment();
+                closed = !pooledConnection.getPhysicalConnection().isValid(CONNECTION_TIMEOUT);
+            } else if (!closed) {
+                skippedValidations.increment();
             }
+            if (closed)
+                failedValidations.increment();
+            if (!shuttingDown && !closed)
+                addIdleConnection(pooledConnection);
+            else
+                discardConnection(pooledConnection);
+        } catch (SQLException e) {
+            System.err.println("Error while releasing connection: " + e.getMessage());
+            discardConnection(pooledConnection);
+        } finally {
+            // The permit is given back only once the connection is idle again, so the next waiter can reuse it
+            leasePermits.release();
         }
     }
 
     /**
      * Starts a scheduled task for cleaning up idle and invalid connections in the pool,
      * ensuring the pool maintains a minimum number of valid connections.
+     * With the BACKGROUND validation policy, idle connections are also validated at the configured interval.
      */
     private void startCleanUpTask() {
         // Schedule a task to clean up idle connections at regular intervals
-        scheduler.scheduleAtFixedRate(this::cleanUpIdleConnections, CLEAN_UP_TIMEOUT, CLEAN_UP_TIMEOUT, TimeUnit.MINUTES);
+        if (validationPolicy == ConnectionValidationPolicy.BACKGROUND)
+            scheduler.scheduleWithFixedDelay(this::cleanUpIdleConnections, validationInterval, validationInterval, TimeUnit.SECONDS);
+        else
+            scheduler.scheduleAtFixedRate(this::cleanUpIdleConnections, CLEAN_UP_TIMEOUT, CLEAN_UP_TIMEOUT, TimeUnit.MINUTES);
     }
 
     /**
      * Removes idle or invalid connections from the pool and replenishes it if the pool size falls below INITIAL_POOL_SIZE.
+     * Idle connections are validated with a round trip only with the BACKGROUND validation policy.
      */
     private void cleanUpIdleConnections() {
-        // Remove connections that are invalid or closed
-        availableConnections.removeIf(connection -> {
-            try {
-                return !connection.isValid(CONNECTION_TIMEOUT) || connection.isClosed();
-            } catch (SQLException e) {
-                return true;
+        // Check each idle connection once, taking it out of the pool so no caller can use it meanwhile
+        int idleCount = availableConnections.size();
+        for (int i = 0; i < idleCount; i++) {
+            PooledConnection pooledConnection = availableConnections.pollLast();
+            if (pooledConnection == null)
+                break;
+            idleConnections.decrementAndGet();
+            if (!isUsableWhileIdle(pooledConnection)) {
+                failedValidations.increment();
+                discardConnection(pooledConnection);
+                continue;
+            }
+            idleConnections.incrementAndGet();
+            if (!availableConnections.offerLast(pooledConnection)) {
+                idleConnections.decrementAndGet();
+                discardConnection(pooledConnection);
             }
-        });
+        }
         // Replenish the pool if it falls below the initial size
-        if (availableConnections.size() < INITIAL_POOL_SIZE) {
-            synchronized (this) {
-                while (availableConnections.size() < INITIAL_POOL_SIZE) {
-                    try {
-                        availableConnections.offer(createConnection());
-                    } catch (SQLException e) {
-                        System.err.println("Error while creating new connections during clean up: " + e.getMessage());
-                    }
-                }
+        while (!shuttingDown && reserveConnectionSlot(INITIAL_POOL_SIZE)) {
+            try {
+                addIdleConnection(createReservedConnection());
+            } catch (SQLException e) {
+                System.err.println("Error while creating new connections during clean up: " + e.getMessage());
+                break;
             }
         }
     }
 
+    /**
+     * Checks an idle connection during clean up, validating it only when the policy requires it.
+     * @param pooledConnection the idle connection to check
+     * @return true if the connection can stay in the pool, false if it is broken
+     */
+    private boolean isUsableWhileIdle(PooledConnection pooledConnection) {
+        Connection connection = pooledConnection.getPhysicalConnection();
+        try {
+            if (connection.isClosed())
+                return false;
+            if (validationPolicy != ConnectionValidationPolicy.BACKGROUND)
+                return true;
+            validationCounters.get(ConnectionValidationPolicy.BACKGROUND).increment();
+            return connection.isValid(CONNECTION_TIMEOUT);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of open connections owned by the pool, both idle and leased.
+     * @return the total number of connections
+     */
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    /**
+     * Returns the number of idle connections ready to be leased.
+     * @return the number of idle connections
+     */
+    public int getIdleConnections() {
+        return idleConnections.get();
+    }
+
+    /**
+     * Returns the number of connections currently leased to callers.
+     * @return the number of leased connections
+     */
+    public int getLeasedConnections() {
+        return leasedConnections.get();
+    }
+
+    /**
+     * Returns an estimate of the number of threads waiting for a connection.
+     * @return the number of waiting threads
+     */
+    public int getWaitingThreads() {
+        return leasePermits.getQueueLength();
+    }
+
+    /**
+     * Returns the validation policy in use.
+     * @return the configured ConnectionValidationPolicy
+     */
+    public ConnectionValidationPolicy getValidationPolicy() {
+        return validationPolicy;
+    }
+
+    /**
+     * Returns the number of validation round trips triggered by a given policy.
+     * @param policy the policy that triggered the validations
+     * @return the number of validation round trips performed
+     */
+    public long getValidationCount(ConnectionValidationPolicy policy) {
+        return validationCounters.get(policy).sum();
+    }
+
+    /**
+     * Returns the number of borrows and releases that did not need a validation round trip.
+     * @return the number of round trips saved
+     */
+    public long getSkippedValidationCount() {
+        return skippedValidations.sum();
+    }
+
+    /**
+     * Returns the number of connections discarded because they were found broken or closed.
+     * @return the number of failed validations
+     */
+    public long getFailedValidationCount() {
+        return failedValidations.sum();
+    }
+
+    /**
+     * Returns the number of prepared statements served from a connection's statement cache.
+     * @return the statement cache hit count
+     */
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    /**
+     * Returns the number of prepared statements that had to be prepared on the connection.
+     * @return the statement cache miss count
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
     /**
      * Shuts down the connection pool, closing all connections and deregistering the database driver.
+     * Connections still leased are closed as soon as they are released.
      * This method is typically called when the application is shutting down.
      */
     public void shutdown() {
+        shuttingDown = true;
         // Stop the scheduler for cleanup tasks
         scheduler.shutdownNow();
         try {
@@ -220,15 +628,9 @@ public class DatabaseConnectionPool {
             Thread.currentThread().interrupt();
         }
         // Close all available connections in the pool
-        for (Connection connection : availableConnections) {
-            try {
-                if (connection != null && !connection.isClosed())
-                    connection.close();
-            } catch (SQLException e) {
-                System.err.println("Error closing connection during shutdown: " + e.getMessage());
-            }
-        }
-        availableConnections.clear();
+        PooledConnection pooledConnection;
+        while ((pooledConnection = pollIdleConnection()) != null)
+            discardConnection(pooledConnection);
         // Deregister the database driver
         try {
             Driver driver = DriverManager.getDriver(databaseUrl);
@@ -238,7 +640,12 @@ public class DatabaseConnectionPool {
             System.err.println("Error deregistering JDBC driver: " + e.getMessage());
         }
         // Nullify the singleton instance
-        instance = null;
+        instanceLock.lock();
+        try {
+            instance = null;
+        } finally {
+            instanceLock.unlock();
+        }
     }
 
     /**
@@ -0,0 +1,36 @@
+package it.polimi.tiw.util;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * ExecutionListener is a ServletContextListener that manages the lifecycle of the RequestExecutor.
+ * It starts the worker threads when the web application starts and stops them when the application is stopped.
+ */
+public class ExecutionListener implements ServletContextListener {
+
+    /**
+     * Called when the web application context is initialized.
+     * This method creates the singleton instance of RequestExecutor, so that its configuration is reported
+     * at startup rather than on the first request.
+     * @param contextEvent the ServletContextEvent that provides access to the ServletContext
+     */
+    @Override
+    public void contextInitialized(ServletContextEvent contextEvent) {
+        RequestExecutor requestExecutor = RequestExecutor.getInstance();
+        contextEvent.getServletContext().log("Request execution mode: " + requestExecutor.getMode());
+    }
+
+    /**
+     * Called when the web application context is destroyed.
+     * This method lets the running handlers complete and stops the worker threads of the RequestExecutor.
+     * @param contextEvent the ServletContextEvent that provides access to the ServletContext
+     */
+    @Override
+    public void contextDestroyed(ServletContextEvent contextEvent) {
+        RequestExecutor requestExecutor = RequestExecutor.getExistingInstance();
+        if (requestExecutor != null)
+            requestExecutor.shutdown();
+    }
+
+}
\ No newline at end of file
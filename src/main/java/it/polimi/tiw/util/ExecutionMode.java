@@ -0,0 +1,44 @@
+package it.polimi.tiw.util;
+
+/**
+ * ExecutionMode defines on which threads the RequestExecutor runs the servlet handlers.
+ * Handlers block on JDBC and disk I/O, so running them off the container threads keeps those threads free
+ * to accept requests while others wait on the database.
+ */
+public enum ExecutionMode {
+
+    /**
+     * Handlers run on the container thread that received the request, as in a plain servlet.
+     */
+    SYNC,
+
+    /**
+     * Handlers run asynchronously on a bounded pool of worker threads with a bounded queue;
+     * requests that find the queue full are rejected instead of piling up.
+     */
+    POOL,
+
+    /**
+     * Handlers run asynchronously, each on a new virtual thread, which releases its carrier thread while
+     * blocked on I/O; requests beyond the maximum number of concurrent requests are rejected.
+     */
+    VIRTUAL;
+
+    /**
+     * Parses a mode name, ignoring case and surrounding spaces.
+     * @param value        the name of the mode
+     * @param defaultValue the mode to return if the value is missing or unknown
+     * @return the matching ExecutionMode, or the default one
+     */
+    public static ExecutionMode parse(String value, ExecutionMode defaultValue) {
+        if (value == null || value.isBlank())
+            return defaultValue;
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown execution mode: " + value);
+            return defaultValue;
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,448 @@
+package it.polimi.tiw.util;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Utility class for sending files stored on the server to the client.
+ * The size of a file is taken from a single attribute read and its content type from its extension.
+ * When the container supports it, the transfer is delegated to its sendfile support so that the file
+ * goes from disk to socket without passing through the JVM heap; otherwise the file is sent from a
+ * FileChannel with transferTo.
+ * Files that never change once written can be sent with validators and long-lived cache headers,
+ * answering conditional requests with 304 Not Modified.
+ * Range requests are answered with 206 Partial Content, so that interrupted downloads can be resumed.
+ */
+public class FileStreamer {
+
+    /**
+     * Request attribute set by Tomcat when the connector supports sendfile.
+     */
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+
+    /**
+     * Request attribute holding the absolute path of the file to send with sendfile.
+     */
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+
+    /**
+     * Request attribute holding the first byte of the file to send with sendfile.
+     */
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+
+    /**
+     * Request attribute holding the byte after the last one of the file to send with sendfile.
+     */
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Minimum size in bytes of a file sent with sendfile; smaller files are cheaper to write directly.
+     */
+    private static final long SENDFILE_THRESHOLD = 48 * 1024;
+
+    /**
+     * Maximum number of ranges accepted in a single Range header; requests asking for more get the whole file.
+     */
+    private static final int MAX_RANGES = 16;
+
+    /**
+     * Content type used for files whose extension is not known.
+     */
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    /**
+     * Cache-Control value for files that never change once written: cached for a year without revalidation,
+     * only by the browser of the authenticated user.
+     */
+    private static final String IMMUTABLE_CACHE_CONTROL = "private, max-age=31536000, immutable";
+
+    /**
+     * Cache-Control value for files that may be replaced: cached only by the browser of the authenticated user,
+     * which must revalidate its copy on every use.
+     */
+    private static final String REVALIDATE_CACHE_CONTROL = "private, no-cache";
+
+    /**
+     * Content types of the file extensions accepted for uploads.
+     */
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            ".jpg", "image/jpeg",
+            ".jpeg", "image/jpeg",
+            ".png", "image/png",
+            ".webp", "image/webp"
+    );
+
+    /**
+     * Reads the attributes of a regular file.
+     * @param path the path of the file
+     * @return the attributes of the file, or null if the file does not exist or is not a regular file
+     * @throws IOException if an I/O error occurs while reading the attributes
+     */
+    public static BasicFileAttributes readAttributes(Path path) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.isRegularFile() ? attributes : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Determines the content type of a file from its extension.
+     * @param path the path of the file
+     * @return the content type of the file, or a generic binary content type if the extension is not known
+     */
+    public static String getContentType(Path path) {
+        String fileName = path.getFileName().toString();
+        int dotIndex = fileName.lastIndexOf('.');
+        if (dotIndex == -1)
+            return DEFAULT_CONTENT_TYPE;
+        return CONTENT_TYPES.getOrDefault(fileName.substring(dotIndex).toLowerCase(Locale.ROOT), DEFAULT_CONTENT_TYPE);
+    }
+
+    /**
+     * Builds a strong entity tag for a file from an identifier of its content and its attributes.
+     * @param id         the identifier of the content, such as the ID of the image
+     * @param attributes the attributes of the file
+     * @return the quoted entity tag
+     */
+    public static String createETag(String id, BasicFileAttributes attributes) {
+        return "\"" + id + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis()) + "-" + Long.toHexString(attributes.size()) + "\"";
+    }
+
+    /**
+     * Sets the validators and the cache headers of a file.
+     * @param response     the HTTP response object
+     * @param eTag         the entity tag of the file
+     * @param lastModified the last modification time of the file in milliseconds
+     * @param immutable    true if the file never changes once written and can be cached for a long time,
+     *                     false if the client must revalidate its copy on every use
+     */
+    public static void setCacheHeaders(HttpServletResponse response, String eTag, long lastModified, boolean immutable) {
+        response.setHeader("ETag", eTag);
+        response.setDateHeader("Last-Modified", lastModified);
+        response.setHeader("Cache-Control", immutable ? IMMUTABLE_CACHE_CONTROL : REVALIDATE_CACHE_CONTROL);
+    }
+
+    /**
+     * Checks the conditional headers of a GET or HEAD request against the validators of a file.
+     * If-None-Match takes precedence over If-Modified-Since, which is ignored when both are present.
+     * @param request      the HTTP request object
+     * @param eTag         the entity tag of the file
+     * @param lastModified the last modification time of the file in milliseconds
+     * @return true if the client copy is still current and 304 Not Modified can be sent, false otherwise
+     */
+    public static boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null)
+            return matchesETag(ifNoneMatch, eTag, true);
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP dates have a precision of one second
+        return ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * Checks whether an entity tag appears in the value of an If-None-Match or If-Match header.
+     * @param headerValue the comma-separated list of entity tags, or "*"
+     * @param eTag        the strong entity tag of the file
+     * @param weak        true to use the weak comparison, which ignores the W/ prefix of the listed tags
+     * @return true if the entity tag matches, false otherwise
+     */
+    private static boolean matchesETag(String headerValue, String eTag, boolean weak) {
+        String value = headerValue.trim();
+        if (value.equals("*"))
+            return true;
+        for (String candidate : value.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                if (!weak)
+                    continue;
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(eTag))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sends a file to the client, setting the content type and length of the response.
+     * If the request has a satisfiable Range header, and its If-Range header, if any, still matches the file,
+     * only the requested ranges are sent with 206 Partial Content; a single range is sent as is, several ranges
+     * as a multipart/byteranges body. A Range header with no satisfiable range gets 416 Range Not Satisfiable.
+     * @param request    the HTTP request object
+     * @param response   the HTTP response object
+     * @param path       the path of the file
+     * @param attributes the attributes of the file, as returned by readAttributes
+     * @param eTag       the entity tag of the file, used to evaluate If-Range, or null if the file has none
+     * @throws IOException if an I/O error occurs while sending the file
+     */
+    public static void streamFile(HttpServletRequest request, HttpServletResponse response, Path path, BasicFileAttributes attributes, String eTag) throws IOException {
+        long size = attributes.size();
+        String contentType = getContentType(path);
+        response.setHeader("Accept-Ranges", "bytes");
+        List<long[]> ranges = null;
+        String rangeHeader = request.getHeader("Range");
+        if (rangeHeader != null && isIfRangeSatisfied(request, eTag, attributes.lastModifiedTime().toMillis()))
+            ranges = parseRanges(rangeHeader, size);
+        if (ranges != null && ranges.isEmpty()) {
+            response.setHeader("Content-Range", "bytes */" + size);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        if (ranges == null) {
+            response.setContentType(contentType);
+            response.setContentLengthLong(size);
+            sendRange(request, response, path, 0L, size);
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        if (ranges.size() == 1) {
+            long start = ranges.get(0)[0];
+            long end = ranges.get(0)[1];
+            response.setContentType(contentType);
+            response.setContentLengthLong(end - start + 1);
+            response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + size);
+            sendRange(request, response, path, start, end + 1);
+            return;
+        }
+        sendMultipartRanges(response, path, contentType, size, ranges);
+    }
+
+    /**
+     * Sends a portion of a file as the whole body of the response, with sendfile if possible.
+     * @param request  the HTTP request object
+     * @param response the HTTP response object
+     * @param path     the path of the file
+     * @param start    the position of the first byte to send
+     * @param end      the position after the last byte to send
+     * @throws IOException if an I/O error occurs while sending the file
+     */
+    private static void sendRange(HttpServletRequest request, HttpServletResponse response, Path path, long start, long end) throws IOException {
+        if (end - start >= SENDFILE_THRESHOLD && isSendfileSupported(request)) {
+            // The container sends the file once the servlet returns
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, end);
+            return;
+        }
+        try (OutputStream outputStream = response.getOutputStream()) {
+            transfer(path, start, end - start, outputStream);
+            outputStream.flush();
+        }
+    }
+
+    /**
+     * Sends several portions of a file as a multipart/byteranges body.
+     * @param response    the HTTP response object
+     * @param path        the path of the file
+     * @param contentType the content type of the file
+     * @param size        the size of the file
+     * @param ranges      the ranges to send, as inclusive first and last byte positions
+     * @throws IOException if an I/O error occurs while sending the file
+     */
+    private static void sendMultipartRanges(HttpServletResponse response, Path path, String contentType, long size, List<long[]> ranges) throws IOException {
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (long[] range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                    + "Content-Type: " + contentType + "\r\n"
+                    + "Content-Range: bytes " + range[0] + "-" + range[1] + "/" + size + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range[1] - range[0] + 1;
+        }
+        byte[] closingBoundary = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closingBoundary.length;
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        try (OutputStream outputStream = response.getOutputStream();
+             FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                outputStream.write(partHeaders.get(i));
+                long[] range = ranges.get(i);
+                transfer(fileChannel, path, range[0], range[1] - range[0] + 1, outputStream);
+            }
+            outputStream.write(closingBoundary);
+            outputStream.flush();
+        }
+    }
+
+    /**
+     * Checks the If-Range header of a request: the Range header is honoured only if the file is unchanged.
+     * An entity tag is compared with the strong comparison, a date must match the last modification time exactly.
+     * @param request      the HTTP request object
+     * @param eTag         the entity tag of the file, or null if the file has none
+     * @param lastModified the last modification time of the file in milliseconds
+     * @return true if there is no If-Range header or it matches the file, false otherwise
+     */
+    private static boolean isIfRangeSatisfied(HttpServletRequest request, String eTag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null)
+            return true;
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+            return eTag != null && matchesETag(ifRange, eTag, false);
+        try {
+            long ifRangeDate = request.getDateHeader("If-Range");
+            return ifRangeDate != -1 && ifRangeDate / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a Range header against the size of a file.
+     * Overlapping and adjacent ranges are merged, so that a few ranges cannot make the response larger than the
+     * file; a header asking for too many ranges or with an unknown unit or an invalid syntax is ignored,
+     * as the HTTP specification allows.
+     * @param rangeHeader the value of the Range header
+     * @param size        the size of the file
+     * @return the satisfiable ranges as inclusive first and last byte positions, an empty list if none is
+     *         satisfiable, or null if the header must be ignored and the whole file sent
+     */
+    static List<long[]> parseRanges(String rangeHeader, long size) {
+        String value = rangeHeader.trim();
+        if (!value.regionMatches(true, 0, "bytes=", 0, 6))
+            return null;
+        String[] specs = value.substring(6).split(",");
+        if (specs.length > MAX_RANGES)
+            return null;
+        List<long[]> ranges = new ArrayList<>(specs.length);
+        try {
+            for (String spec : specs) {
+                spec = spec.trim();
+                int dashIndex = spec.indexOf('-');
+                if (dashIndex == -1)
+                    return null;
+                String first = spec.substring(0, dashIndex).trim();
+                String last = spec.substring(dashIndex + 1).trim();
+                long start;
+                long end;
+                if (first.isEmpty()) {
+                    // Suffix range: the last N bytes of the file
+                    long suffixLength = Long.parseLong(last);
+                    if (suffixLength < 0)
+                        return null;
+                    if (suffixLength == 0 || size == 0)
+                        continue;
+                    start = Math.max(0, size - suffixLength);
+                    end = size - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                    if (start < 0 || end < start)
+                        return null;
+                    if (start >= size)
+                        continue;
+                    end = Math.min(end, size - 1);
+                }
+                ranges.add(new long[]{start, end});
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return coalesceRanges(ranges);
+    }
+
+    /**
+     * Merges the overlapping and adjacent ranges of a list, ordering them by their first byte.
+     * @param ranges the satisfiable ranges as inclusive first and last byte positions
+     * @return the merged ranges, or the given list if it holds fewer than two ranges
+     */
+    private static List<long[]> coalesceRanges(List<long[]> ranges) {
+        if (ranges.size() < 2)
+            return ranges;
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+        List<long[]> coalesced = new ArrayList<>(ranges.size());
+        long[] current = ranges.get(0);
+        for (long[] range : ranges.subList(1, ranges.size())) {
+            if (range[0] <= current[1] + 1) {
+                current[1] = Math.max(current[1], range[1]);
+            } else {
+                coalesced.add(current);
+                current = range;
+            }
+        }
+        coalesced.add(current);
+        return coalesced;
+    }
+
+    /**
+     * Checks whether the connector of the request can send files with sendfile.
+     * Tomcat only performs sendfile for requests completed on a container thread, so a servlet that wants its
+     * files sent with sendfile must not put such requests in asynchronous mode.
+     * @param request the HTTP request object
+     * @return true if sendfile is available to requests completed on a container thread, false otherwise
+     */
+    public static boolean canSendfile(HttpServletRequest request) {
+        return Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE));
+    }
+
+    /**
+     * Checks whether the container can send files with sendfile for the given request.
+     * Asynchronous requests write the file themselves, as Tomcat ignores sendfile for them.
+     * @param request the HTTP request object
+     * @return true if sendfile is supported, false otherwise
+     */
+    private static boolean isSendfileSupported(HttpServletRequest request) {
+        return !request.isAsyncStarted() && canSendfile(request);
+    }
+
+    /**
+     * Transfers a portion of a file to an output stream from a FileChannel.
+     * @param path         the path of the file
+     * @param position     the position of the first byte to transfer
+     * @param count        the number of bytes to transfer
+     * @param outputStream the stream to write the bytes to
+     * @throws IOException if an I/O error occurs, or if the file is shorter than expected
+     */
+    private static void transfer(Path path, long position, long count, OutputStream outputStream) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            transfer(fileChannel, path, position, count, outputStream);
+        }
+    }
+
+    /**
+     * Transfers a portion of an open file to an output stream with positioned reads.
+     * @param fileChannel  the channel of the file
+     * @param path         the path of the file, for error messages
+     * @param position     the position of the first byte to transfer
+     * @param count        the number of bytes to transfer
+     * @param outputStream the stream to write the bytes to
+     * @throws IOException if an I/O error occurs, or if the file is shorter than expected
+     */
+    private static void transfer(FileChannel fileChannel, Path path, long position, long count, OutputStream outputStream) throws IOException {
+        WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+        long end = position + count;
+        while (position < end) {
+            long transferred = fileChannel.transferTo(position, end - position, outputChannel);
+            if (transferred <= 0)
+                throw new IOException("File " + path.getFileName() + " is shorter than expected.");
+            position += transferred;
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,36 @@
+package it.polimi.tiw.util;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * HashingListener is a ServletContextListener that manages the lifecycle of the PasswordHasher.
+ * It starts the hashing threads when the web application starts and stops them when the application is stopped.
+ */
+public class HashingListener implements ServletContextListener {
+
+    /**
+     * Called when the web application context is initialized.
+     * This method creates the singleton instance of PasswordHasher, so that its configuration is reported
+     * at startup rather than on the first sign-in.
+     * @param contextEvent the ServletContextEvent that provides access to the ServletContext
+     */
+    @Override
+    public void contextInitialized(ServletContextEvent contextEvent) {
+        PasswordHasher passwordHasher = PasswordHasher.getInstance();
+        contextEvent.getServletContext().log("Password hashing cost: " + passwordHasher.getCost());
+    }
+
+    /**
+     * Called when the web application context is destroyed.
+     * This method stops the hashing threads of the PasswordHasher, if it was created.
+     * @param contextEvent the ServletContextEvent that provides access to the ServletContext
+     */
+    @Override
+    public void contextDestroyed(ServletContextEvent contextEvent) {
+        PasswordHasher passwordHasher = PasswordHasher.getExistingInstance();
+        if (passwordHasher != null)
+            passwordHasher.shutdown();
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,48 @@
+package it.polimi.tiw.util;
+
+/**
+ * ImageSize defines the renditions in which an uploaded image can be served.
+ * Smaller renditions are derivatives generated by the ThumbnailGenerator and stored next to the originals.
+ */
+public enum ImageSize {
+
+    /**
+     * A small rendition for image grids, such as the album page.
+     */
+    THUMB,
+
+    /**
+     * A rendition large enough to fill the image page.
+     */
+    MEDIUM,
+
+    /**
+     * The file as uploaded by the user.
+     */
+    ORIGINAL;
+
+    /**
+     * Returns the name of the size as used in request parameters and derivative file names.
+     * @return the lower-case name of the size
+     */
+    public String getName() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * Parses a size name, ignoring case and surrounding spaces.
+     * @param value        the name of the size
+     * @param defaultValue the size to return if the value is missing
+     * @return the matching ImageSize, the default one if the value is missing, or null if the value is unknown
+     */
+    public static ImageSize parse(String value, ImageSize defaultValue) {
+        if (value == null || value.isBlank())
+            return defaultValue;
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+}
\ No newline at end of file
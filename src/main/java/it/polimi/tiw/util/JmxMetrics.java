@@ -0,0 +1,121 @@
+package it.polimi.tiw.util;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JmxMetrics exposes the metrics of the MetricsRegistry as the read-only attributes of an MBean.
+ * Every sample becomes an attribute named after the sample and its labels, such as
+ * tiw_pool_connections[state="idle"], so that the set of attributes follows the metrics recorded so far.
+ */
+class JmxMetrics implements DynamicMBean {
+
+    /** The registry whose metrics are exposed */
+    private final MetricsRegistry metricsRegistry;
+
+    /**
+     * Creates the MBean of a registry.
+     * @param metricsRegistry the registry whose metrics are exposed
+     */
+    JmxMetrics(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    /**
+     * Returns the current value of a sample.
+     * @param attribute the name of the attribute
+     * @return the value of the sample
+     * @throws AttributeNotFoundException if no sample has that name
+     */
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Double value = collectSamples().get(attribute);
+        if (value == null)
+            throw new AttributeNotFoundException("No metric named " + attribute);
+        return value;
+    }
+
+    /**
+     * Rejects the change, as the metrics are read-only.
+     * @param attribute the attribute to set
+     * @throws AttributeNotFoundException always, as no attribute is writable
+     */
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("The metrics are read-only");
+    }
+
+    /**
+     * Returns the current values of some samples, skipping the unknown names.
+     * @param attributes the names of the attributes
+     * @return the found attributes
+     */
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Double> samples = collectSamples();
+        AttributeList attributeList = new AttributeList();
+        for (String attribute : attributes) {
+            Double value = samples.get(attribute);
+            if (value != null)
+                attributeList.add(new Attribute(attribute, value));
+        }
+        return attributeList;
+    }
+
+    /**
+     * Sets no attribute, as the metrics are read-only.
+     * @param attributes the attributes to set
+     * @return an empty list
+     */
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    /**
+     * Rejects the call, as the MBean has no operations.
+     * @param actionName the name of the operation
+     * @param params     the arguments of the operation
+     * @param signature  the types of the arguments
+     * @return never
+     * @throws ReflectionException always, as no operation exists
+     */
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName), "The metrics have no operations");
+    }
+
+    /**
+     * Describes an attribute for every sample currently recorded.
+     * @return the description of the MBean
+     */
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : collectSamples().keySet())
+            attributes.add(new MBeanAttributeInfo(name, Double.class.getName(), name, true, false, false));
+        return new MBeanInfo(getClass().getName(), "Metrics of the web application", attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+
+    /**
+     * Collects the samples of the registry, keyed by attribute name.
+     * @return the values of the samples, in the order of the registry
+     */
+    private Map<String, Double> collectSamples() {
+        Map<String, Double> samples = new LinkedHashMap<>();
+        for (MetricsRegistry.MetricFamily family : metricsRegistry.collect())
+            for (MetricsRegistry.Sample sample : family.samples)
+                samples.put(sample.labels.isEmpty() ? sample.name : sample.name + "[" + sample.labels + "]", sample.value);
+        return samples;
+    }
+
+}
\ No newline at end of file
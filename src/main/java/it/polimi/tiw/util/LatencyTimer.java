@@ -0,0 +1,88 @@
+package it.polimi.tiw.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyTimer counts durations in the fixed buckets of a Prometheus histogram, from 100 microseconds to 10 seconds,
+ * together with their number and sum. Recording is lock-free, so timers can be shared by all request threads.
+ */
+public class LatencyTimer {
+
+    /** The upper bounds of the buckets in nanoseconds, in increasing order; longer durations fall in the +Inf bucket */
+    private static final long[] BUCKET_BOUNDS = {
+            100_000L, 250_000L, 500_000L,
+            1_000_000L, 2_500_000L, 5_000_000L,
+            10_000_000L, 25_000_000L, 50_000_000L,
+            100_000_000L, 250_000_000L, 500_000_000L,
+            1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+
+    /** The number of durations falling in each bucket, the last one counting those above every bound */
+    private final LongAdder[] bucketCounts = new LongAdder[BUCKET_BOUNDS.length + 1];
+
+    /** The number of durations recorded */
+    private final LongAdder count = new LongAdder();
+
+    /** The sum of the durations recorded, in nanoseconds */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Creates an empty timer.
+     */
+    public LatencyTimer() {
+        for (int i = 0; i < bucketCounts.length; i++)
+            bucketCounts[i] = new LongAdder();
+    }
+
+    /**
+     * Records a duration.
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && nanos > BUCKET_BOUNDS[bucket])
+            bucket++;
+        bucketCounts[bucket].increment();
+        count.increment();
+        sum.add(nanos);
+    }
+
+    /**
+     * Returns the number of durations recorded.
+     * @return the count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of the durations recorded.
+     * @return the sum in nanoseconds
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the cumulative counts of the buckets, as exposed by a Prometheus histogram.
+     * @return for each bound, the number of durations up to it, followed by the number of all durations
+     */
+    public long[] getCumulativeCounts() {
+        long[] cumulativeCounts = new long[bucketCounts.length];
+        long total = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            total += bucketCounts[i].sum();
+            cumulativeCounts[i] = total;
+        }
+        return cumulativeCounts;
+    }
+
+    /**
+     * Returns the upper bounds of the buckets, excluding the +Inf bucket.
+     * @return the bounds in nanoseconds, in increasing order
+     */
+    public static long[] getBucketBounds() {
+        return BUCKET_BOUNDS.clone();
+    }
+
+}
\ No newline at end of file
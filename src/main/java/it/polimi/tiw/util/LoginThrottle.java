@@ -0,0 +1,148 @@
+package it.polimi.tiw.util;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LoginThrottle is a singleton class that counts the failed sign-in attempts of each email address and blocks
+ * further attempts once too many failed within a time window, so that credential-stuffing bursts are turned away
+ * before the database is queried and the password is hashed.
+ * The counters are kept in memory for a bounded number of emails; the limits are read from security.properties
+ * and can be overridden by JVM system properties of the same name.
+ */
+public class LoginThrottle {
+
+    /**
+     * FailedAttempts holds the failed sign-in attempts of an email within the current window.
+     */
+    private static final class FailedAttempts {
+
+        /** The time at which the first failed attempt of the window happened, in milliseconds */
+        private final long windowStart;
+
+        /** The number of failed attempts within the window */
+        private final int count;
+
+        /**
+         * Creates the failed attempts of a window.
+         * @param windowStart the time of the first failed attempt of the window, in milliseconds
+         * @param count       the number of failed attempts within the window
+         */
+        private FailedAttempts(long windowStart, int count) {
+            this.windowStart = windowStart;
+            this.count = count;
+        }
+
+    }
+
+    /** The singleton instance of the LoginThrottle */
+    private static LoginThrottle instance;
+
+    /** The lock guarding the creation of the singleton instance */
+    private static final ReentrantLock instanceLock = new ReentrantLock();
+
+    /** The number of failed attempts within a window after which further attempts are blocked */
+    private final int maxFailedAttempts;
+
+    /** The length of the window in milliseconds, counted from its first failed attempt */
+    private final long window;
+
+    /** The failed attempts of each email, in lower case */
+    private final LruCache<String, FailedAttempts> failedAttempts;
+
+    /** The number of sign-in attempts blocked */
+    private final LongAdder blockedAttempts = new LongAdder();
+
+    /**
+     * Private constructor that loads the security properties.
+     * Missing or invalid settings fall back to their defaults.
+     */
+    private LoginThrottle() {
+        Settings settings = Settings.load("security.properties");
+        int configuredMaxFailedAttempts = 5;
+        long configuredWindow = 300L;
+        int trackedEmails = 10_000;
+        try {
+            configuredMaxFailedAttempts = Integer.parseInt(settings.get("security.login.maxFailedAttempts", String.valueOf(configuredMaxFailedAttempts)));
+            configuredWindow = Long.parseLong(settings.get("security.login.window", String.valueOf(configuredWindow)));
+            trackedEmails = Integer.parseInt(settings.get("security.login.trackedEmails", String.valueOf(trackedEmails)));
+        } catch (NumberFormatException e) {
+            System.err.println("Error in security settings, using defaults: " + e.getMessage());
+        }
+        this.maxFailedAttempts = Math.max(configuredMaxFailedAttempts, 1);
+        this.window = Math.max(configuredWindow, 1L) * 1000L;
+        this.failedAttempts = new LruCache<>(Math.max(trackedEmails, 1));
+    }
+
+    /**
+     * Returns the singleton instance of the LoginThrottle, creating it if it does not already exist.
+     * @return the singleton instance of the LoginThrottle
+     */
+    public static LoginThrottle getInstance() {
+        instanceLock.lock();
+        try {
+            if (instance == null)
+                instance = new LoginThrottle();
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the singleton instance if it has already been created, without creating it.
+     * @return the singleton instance, or null
+     */
+    static LoginThrottle getExistingInstance() {
+        instanceLock.lock();
+        try {
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether the sign-in attempts of an email are blocked because too many failed recently.
+     * @param email the email address of the attempt
+     * @return true if the attempt must be refused, false otherwise
+     */
+    public boolean isBlocked(String email) {
+        FailedAttempts attempts = failedAttempts.get(email.toLowerCase(Locale.ROOT));
+        boolean blocked = attempts != null && attempts.count >= maxFailedAttempts
+                && System.currentTimeMillis() - attempts.windowStart < window;
+        if (blocked)
+            blockedAttempts.increment();
+        return blocked;
+    }
+
+    /**
+     * Records a failed sign-in attempt of an email, starting a new window if the previous one expired.
+     * @param email the email address of the attempt
+     */
+    public void recordFailure(String email) {
+        long now = System.currentTimeMillis();
+        failedAttempts.compute(email.toLowerCase(Locale.ROOT), (key, attempts) ->
+                attempts == null || now - attempts.windowStart >= window
+                        ? new FailedAttempts(now, 1)
+                        : new FailedAttempts(attempts.windowStart, attempts.count + 1));
+    }
+
+    /**
+     * Forgets the failed sign-in attempts of an email after a successful one.
+     * @param email the email address of the attempt
+     */
+    public void recordSuccess(String email) {
+        failedAttempts.remove(email.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the number of sign-in attempts blocked.
+     * @return the blocked attempts count
+     */
+    public long getBlockedCount() {
+        return blockedAttempts.sum();
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,310 @@
+package it.polimi.tiw.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LruCache is a thread-safe, size-bounded cache that evicts the least recently used entry
+ * when a new entry would exceed its capacity.
+ * An optional listener is notified of every entry leaving the cache because of eviction or clearing,
+ * and hit and miss counters are kept to measure the effectiveness of the cache.
+ * Caches of database reads can count their invalidations, so that a value read before a concurrent change is
+ * not cached after the change invalidated it.
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached values
+ */
+public class LruCache<K, V> {
+
+    /** The maximum number of entries kept in the cache */
+    private final int maxSize;
+
+    /** The cached entries, in access order from the least to the most recently used; guarded by the lock */
+    private final LinkedHashMap<K, V> entries;
+
+    /** The lock guarding the entries, which does not pin the carrier thread of a waiting virtual thread */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The listener notified of evicted entries, or null */
+    private final BiConsumer<K, V> evictionListener;
+
+    /** The number of lookups that found a cached value */
+    private final LongAdder hits = new LongAdder();
+
+    /** The number of lookups that did not find a cached value */
+    private final LongAdder misses = new LongAdder();
+
+    /** The number of invalidations, changed while holding the lock */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Creates a cache holding at most the given number of entries.
+     * @param maxSize the maximum number of entries
+     */
+    public LruCache(int maxSize) {
+        this(maxSize, null);
+    }
+
+    /**
+     * Creates a cache holding at most the given number of entries, notifying a listener of evicted entries.
+     * @param maxSize          the maximum number of entries
+     * @param evictionListener the listener notified of entries evicted or cleared from the cache, may be null
+     */
+    public LruCache(int maxSize, BiConsumer<K, V> evictionListener) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Cache size must be positive");
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Returns the value cached for a key, marking it as the most recently used.
+     * @param key the key to look up
+     * @return the cached value, or null if the key is not cached
+     */
+    public V get(K key) {
+        V value;
+        lock.lock();
+        try {
+            value = entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+        if (value != null)
+            hits.increment();
+        else
+            misses.increment();
+        return value;
+    }
+
+    /**
+     * Returns the value cached for a key without counting a hit or a miss, to check whether a later lookup
+     * will be served from the cache.
+     * @param key the key to look up
+     * @return the cached value, or null if the key is not cached
+     */
+    public V peek(K key) {
+        lock.lock();
+        try {
+            return entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caches a value for a key, evicting the least recently used entry if the cache is full.
+     * @param key   the key of the entry
+     * @param value the value to cache
+     */
+    public void put(K key, V value) {
+        List<Map.Entry<K, V>> evicted = new ArrayList<>(1);
+        lock.lock();
+        try {
+            putLocked(key, value, evicted);
+        } finally {
+            lock.unlock();
+        }
+        notifyEvicted(evicted);
+    }
+
+    /**
+     * Returns the number of invalidations so far, to be read before loading a value from its source.
+     * @return the invalidation count
+     */
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    /**
+     * Caches a value loaded from its source unless the cache was invalidated since the load started,
+     * in which case the value may be stale and is dropped.
+     * @param key               the key of the entry
+     * @param value             the value to cache
+     * @param invalidationCount the invalidation count read before the value was loaded
+     */
+    public void putIfNotInvalidated(K key, V value, long invalidationCount) {
+        List<Map.Entry<K, V>> evicted = new ArrayList<>(1);
+        lock.lock();
+        try {
+            if (invalidations.get() == invalidationCount)
+                putLocked(key, value, evicted);
+        } finally {
+            lock.unlock();
+        }
+        notifyEvicted(evicted);
+    }
+
+    /**
+     * Removes the entry of a key after a change of its source, both now and once the transaction running in the
+     * current ConnectionContext, if any, completes, so that a value read by a concurrent request before the change
+     * is committed is not cached.
+     * @param key the key whose source changed
+     */
+    public void invalidate(K key) {
+        invalidateNow(key);
+        ConnectionContext.afterCompletion(() -> invalidateNow(key));
+    }
+
+    /**
+     * Removes every entry after a change of their sources, both now and once the transaction running in the
+     * current ConnectionContext, if any, completes, for changes touching many entries at once.
+     */
+    public void invalidateAll() {
+        invalidateAllNow();
+        ConnectionContext.afterCompletion(this::invalidateAllNow);
+    }
+
+    /**
+     * Atomically replaces the value cached for a key with one computed from the current value,
+     * marking it as the most recently used. The function runs while the cache is locked, so it must be quick;
+     * the replaced value is not reported to the eviction listener.
+     * @param key               the key of the entry
+     * @param remappingFunction the function computing the new value from the key and the current value, which is
+     *                          null if the key is not cached; a null result removes the entry
+     * @return the new value, or null if the entry was removed
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        List<Map.Entry<K, V>> evicted = new ArrayList<>(1);
+        V value;
+        lock.lock();
+        try {
+            value = entries.compute(key, remappingFunction);
+            Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+            while (entries.size() > maxSize && iterator.hasNext()) {
+                Map.Entry<K, V> eldest = iterator.next();
+                evicted.add(Map.entry(eldest.getKey(), eldest.getValue()));
+                iterator.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+        notifyEvicted(evicted);
+        return value;
+    }
+
+    /**
+     * Removes the entry of a key from the cache, without notifying the eviction listener.
+     * @param key the key to remove
+     * @return the value that was cached, or null if the key was not cached
+     */
+    public V remove(K key) {
+        lock.lock();
+        try {
+            return entries.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every entry from the cache, notifying the eviction listener of each one.
+     */
+    public void clear() {
+        List<Map.Entry<K, V>> evicted;
+        lock.lock();
+        try {
+            evicted = new ArrayList<>(entries.size());
+            for (Map.Entry<K, V> entry : entries.entrySet())
+                evicted.add(Map.entry(entry.getKey(), entry.getValue()));
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+        notifyEvicted(evicted);
+    }
+
+    /**
+     * Returns the number of entries currently cached.
+     * @return the size of the cache
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found a cached value.
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that did not find a cached value.
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Caches a value while holding the lock, collecting the entries that leave the cache.
+     * @param key     the key of the entry
+     * @param value   the value to cache
+     * @param evicted the list receiving the replaced and evicted entries
+     */
+    private void putLocked(K key, V value, List<Map.Entry<K, V>> evicted) {
+        V previous = entries.put(key, value);
+        if (previous != null && previous != value)
+            evicted.add(Map.entry(key, previous));
+        Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxSize && iterator.hasNext()) {
+            Map.Entry<K, V> eldest = iterator.next();
+            evicted.add(Map.entry(eldest.getKey(), eldest.getValue()));
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Counts an invalidation and removes the entry of a key, without notifying the eviction listener.
+     * @param key the key to remove
+     */
+    private void invalidateNow(K key) {
+        lock.lock();
+        try {
+            invalidations.incrementAndGet();
+            entries.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts an invalidation and removes every entry, notifying the eviction listener of each one.
+     */
+    private void invalidateAllNow() {
+        lock.lock();
+        try {
+            invalidations.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+        clear();
+    }
+
+    /**
+     * Notifies the eviction listener, outside of the cache lock, of the entries that left the cache.
+     * @param evicted the entries that left the cache
+     */
+    private void notifyEvicted(List<Map.Entry<K, V>> evicted) {
+        if (evictionListener == null)
+            return;
+        for (Map.Entry<K, V> entry : evicted)
+            evictionListener.accept(entry.getKey(), entry.getValue());
+    }
+
+}
\ No newline at end of file
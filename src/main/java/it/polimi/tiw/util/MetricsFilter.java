@@ -0,0 +1,89 @@
+package it.polimi.tiw.util;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * MetricsFilter records the latency of every request in the MetricsRegistry, labelled with the servlet that
+ * handled it, its method and the class of its status code.
+ * Requests handled asynchronously are recorded when their response completes rather than when the container
+ * thread leaves the filter chain.
+ */
+public class MetricsFilter implements Filter {
+
+    /** The registry recording the request latencies */
+    private final MetricsRegistry metricsRegistry = MetricsRegistry.getInstance();
+
+    /**
+     * Times the request, until the filter chain returns or, for asynchronous requests, until the response completes.
+     * @param request  the ServletRequest object that contains the client request
+     * @param response the ServletResponse object that contains the response the servlet sends to the client
+     * @param chain    the FilterChain used to invoke the next filter or the servlet
+     * @throws IOException      if an I/O error occurs during request handling
+     * @throws ServletException if an error occurs during request handling
+     */
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        long start = System.nanoTime();
+        String servlet = httpRequest.getHttpServletMapping().getServletName();
+        String method = httpRequest.getMethod();
+        try {
+            chain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            if (!request.isAsyncStarted())
+                metricsRegistry.recordRequest(servlet, method, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, System.nanoTime() - start);
+            throw e;
+        }
+        if (request.isAsyncStarted())
+            request.getAsyncContext().addListener(new AsyncListener() {
+
+                /**
+                 * Records the request once its response is complete.
+                 * @param event the AsyncEvent of the completed request
+                 */
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    metricsRegistry.recordRequest(servlet, method, httpResponse.getStatus(), System.nanoTime() - start);
+                }
+
+                /**
+                 * Does nothing, as a timed out request is recorded when its response completes.
+                 * @param event the AsyncEvent of the timed out request
+                 */
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                }
+
+                /**
+                 * Does nothing, as a failed request is recorded when its response completes.
+                 * @param event the AsyncEvent of the failed request
+                 */
+                @Override
+                public void onError(AsyncEvent event) {
+                }
+
+                /**
+                 * Keeps listening when the request is put in asynchronous mode again, as the listeners are reset.
+                 * @param event the AsyncEvent of the restarted request
+                 */
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                    event.getAsyncContext().addListener(this);
+                }
+
+            });
+        else
+            metricsRegistry.recordRequest(servlet, method, httpResponse.getStatus(), System.nanoTime() - start);
+    }
+
+}
\ No newline at end of file
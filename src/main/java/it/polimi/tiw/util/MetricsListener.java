@@ -0,0 +1,58 @@
+package it.polimi.tiw.util;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import java.lang.management.ManagementFactory;
+
+/**
+ * MetricsListener is a ServletContextListener that manages the lifecycle of the MetricsRegistry.
+ * It registers the metrics as an MBean when the web application starts and unregisters them when the
+ * application is stopped, so that a redeployed application does not leave its MBean behind.
+ */
+public class MetricsListener implements ServletContextListener {
+
+    /** The name under which the metrics are registered, or null if they are not */
+    private ObjectName objectName;
+
+    /**
+     * Called when the web application context is initialized.
+     * This method creates the singleton instance of MetricsRegistry and registers its MBean if JMX is enabled.
+     * @param contextEvent the ServletContextEvent that provides access to the ServletContext
+     */
+    @Override
+    public void contextInitialized(ServletContextEvent contextEvent) {
+        MetricsRegistry metricsRegistry = MetricsRegistry.getInstance();
+        if (!metricsRegistry.isJmxEnabled())
+            return;
+        String contextPath = contextEvent.getServletContext().getContextPath();
+        try {
+            ObjectName name = new ObjectName("it.polimi.tiw:type=Metrics,context=" + ObjectName.quote(contextPath.isEmpty() ? "/" : contextPath));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new JmxMetrics(metricsRegistry), name);
+            objectName = name;
+        } catch (JMException e) {
+            System.err.println("Error registering the metrics MBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Called when the web application context is destroyed.
+     * This method unregisters the MBean of the metrics, if it was registered.
+     * @param contextEvent the ServletContextEvent that provides access to the ServletContext
+     */
+    @Override
+    public void contextDestroyed(ServletContextEvent contextEvent) {
+        if (objectName == null)
+            return;
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            mBeanServer.unregisterMBean(objectName);
+        } catch (JMException e) {
+            System.err.println("Error unregistering the metrics MBean: " + e.getMessage());
+        }
+        objectName = null;
+    }
+
+}
\ No newline at end of file
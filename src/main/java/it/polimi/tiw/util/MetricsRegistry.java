@@ -0,0 +1,464 @@
+package it.polimi.tiw.util;
+
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MetricsRegistry is a singleton class that collects the metrics of the application: the latency of the requests
+ * of each servlet, the time spent executing the statements of each DAO method, the time to lease a pooled
+ * connection, and the state of the connection pool, the caches, the RequestExecutor, the PasswordHasher and
+ * the LoginThrottle, read when the metrics are collected.
+ * The metrics are written in the Prometheus text format and exposed over JMX; the settings are read from
+ * metrics.properties and can be overridden by JVM system properties of the same name.
+ */
+public class MetricsRegistry {
+
+    /**
+     * Sample is a single value of a metric, with its labels in the Prometheus format.
+     */
+    static final class Sample {
+
+        /** The name of the sample, which may extend the name of its family */
+        final String name;
+
+        /** The labels of the sample, as comma-separated name="value" pairs, or an empty string */
+        final String labels;
+
+        /** The value of the sample */
+        final double value;
+
+        /**
+         * Creates a sample.
+         * @param name   the name of the sample
+         * @param labels the comma-separated name="value" pairs, or an empty string
+         * @param value  the value of the sample
+         */
+        Sample(String name, String labels, double value) {
+            this.name = name;
+            this.labels = labels;
+            this.value = value;
+        }
+
+    }
+
+    /**
+     * MetricFamily is a metric with its description, type and samples.
+     */
+    static final class MetricFamily {
+
+        /** The name of the metric */
+        final String name;
+
+        /** The description of the metric */
+        final String help;
+
+        /** The Prometheus type of the metric: counter, gauge or histogram */
+        final String type;
+
+        /** The samples of the metric */
+        final List<Sample> samples = new ArrayList<>();
+
+        /**
+         * Creates a metric without samples.
+         * @param name the name of the metric
+         * @param help the description of the metric
+         * @param type the Prometheus type of the metric
+         */
+        MetricFamily(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        /**
+         * Adds a sample named after the metric.
+         * @param labels the comma-separated name="value" pairs, or an empty string
+         * @param value  the value of the sample
+         */
+        void add(String labels, double value) {
+            samples.add(new Sample(name, labels, value));
+        }
+
+    }
+
+    /**
+     * StatementMetrics holds the execution times and failures of the statements prepared by a DAO method.
+     */
+    static final class StatementMetrics {
+
+        /** The execution times of the statements */
+        private final LatencyTimer timer = new LatencyTimer();
+
+        /** The executions that threw an exception */
+        private final LongAdder errors = new LongAdder();
+
+        /**
+         * Records an execution of a statement.
+         * @param nanos  the execution time in nanoseconds
+         * @param failed whether the execution threw an exception
+         */
+        void record(long nanos, boolean failed) {
+            timer.record(nanos);
+            if (failed)
+                errors.increment();
+        }
+
+    }
+
+    /** The singleton instance of the MetricsRegistry */
+    private static MetricsRegistry instance;
+
+    /** The lock guarding the creation of the singleton instance */
+    private static final ReentrantLock instanceLock = new ReentrantLock();
+
+    /** The package of the DAOs, whose methods the statement executions are attributed to */
+    private static final String DAO_PACKAGE = "it.polimi.tiw.dao.";
+
+    /** The walker finding the DAO method executing a statement */
+    private static final StackWalker stackWalker = StackWalker.getInstance();
+
+    /** Whether /metrics serves the metrics to local clients */
+    private final boolean endpointEnabled;
+
+    /** Whether the metrics are exposed over JMX */
+    private final boolean jmxEnabled;
+
+    /** Whether statement executions are timed per DAO method */
+    private final boolean daoTimersEnabled;
+
+    /** The request latencies, keyed by the labels of the servlet, method and status class */
+    private final ConcurrentMap<String, LatencyTimer> requestTimers = new ConcurrentHashMap<>();
+
+    /** The statement executions, keyed by the labels of the DAO and method */
+    private final ConcurrentMap<String, StatementMetrics> statementMetrics = new ConcurrentHashMap<>();
+
+    /** The time to lease a connection from the pool */
+    private final LatencyTimer connectionAcquireTimer = new LatencyTimer();
+
+    /** The caches whose effectiveness is reported, keyed by name */
+    private final ConcurrentMap<String, LruCache<?, ?>> caches = new ConcurrentHashMap<>();
+
+    /**
+     * Private constructor that loads the metrics properties.
+     * Missing settings fall back to their defaults.
+     */
+    private MetricsRegistry() {
+        Settings settings = Settings.load("metrics.properties");
+        this.endpointEnabled = Boolean.parseBoolean(settings.get("metrics.endpoint.enabled", "true"));
+        this.jmxEnabled = Boolean.parseBoolean(settings.get("metrics.jmx.enabled", "true"));
+        this.daoTimersEnabled = Boolean.parseBoolean(settings.get("metrics.daoTimers.enabled", "true"));
+    }
+
+    /**
+     * Returns the singleton instance of the MetricsRegistry, creating it if it does not already exist.
+     * @return the singleton instance of the MetricsRegistry
+     */
+    public static MetricsRegistry getInstance() {
+        instanceLock.lock();
+        try {
+            if (instance == null)
+                instance = new MetricsRegistry();
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether /metrics serves the metrics to local clients.
+     * @return true if the endpoint is enabled
+     */
+    public boolean isEndpointEnabled() {
+        return endpointEnabled;
+    }
+
+    /**
+     * Checks whether the metrics are exposed over JMX.
+     * @return true if JMX is enabled
+     */
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * Records the latency of a request.
+     * @param servlet the name of the servlet that handled the request
+     * @param method  the HTTP method of the request
+     * @param status  the status code of the response
+     * @param nanos   the time from the start of the filter chain to the completion of the response, in nanoseconds
+     */
+    public void recordRequest(String servlet, String method, int status, long nanos) {
+        String labels = labels("servlet", servlet, "method", method, "status", status / 100 + "xx");
+        requestTimers.computeIfAbsent(labels, key -> new LatencyTimer()).record(nanos);
+    }
+
+    /**
+     * Returns the metrics of the statements prepared by the innermost DAO method on the stack of the calling thread.
+     * The stack is walked once per prepared statement, which keeps the metrics it returns for all its executions;
+     * a statement whose SQL text is shared by several DAO methods is attributed to the one that prepared it first.
+     * @return the metrics of the DAO method, or null if the DAO timers are disabled or the statement is not
+     *         prepared by a DAO
+     */
+    StatementMetrics getStatementMetrics() {
+        if (!daoTimersEnabled)
+            return null;
+        Optional<StackWalker.StackFrame> caller = stackWalker.walk(frames -> frames
+                .filter(frame -> frame.getClassName().startsWith(DAO_PACKAGE))
+                .findFirst());
+        if (caller.isEmpty())
+            return null;
+        String className = caller.get().getClassName().substring(DAO_PACKAGE.length());
+        String methodName = caller.get().getMethodName();
+        // Statements run by a lambda, such as a transaction body, belong to the method that defines it
+        if (methodName.startsWith("lambda$")) {
+            int end = methodName.indexOf('$', "lambda$".length());
+            methodName = methodName.substring("lambda$".length(), end == -1 ? methodName.length() : end);
+        }
+        return statementMetrics.computeIfAbsent(labels("dao", className, "method", methodName), key -> new StatementMetrics());
+    }
+
+    /**
+     * Records the time taken to lease a connection from the pool, successfully or not.
+     * @param nanos the time in nanoseconds, including the wait for a connection to be released
+     */
+    void recordConnectionAcquire(long nanos) {
+        connectionAcquireTimer.record(nanos);
+    }
+
+    /**
+     * Registers a cache whose hits, misses and size are reported.
+     * @param name  the name of the cache in the metrics
+     * @param cache the cache
+     */
+    public void registerCache(String name, LruCache<?, ?> cache) {
+        caches.put(name, cache);
+    }
+
+    /**
+     * Writes the current value of every metric in the Prometheus text format.
+     * @param writer the writer of the response
+     */
+    public void writePrometheus(PrintWriter writer) {
+        for (MetricFamily family : collect()) {
+            writer.print("# HELP " + family.name + " " + family.help + "\n");
+            writer.print("# TYPE " + family.name + " " + family.type + "\n");
+            for (Sample sample : family.samples) {
+                writer.print(sample.name);
+                if (!sample.labels.isEmpty())
+                    writer.print("{" + sample.labels + "}");
+                writer.print(" " + formatValue(sample.value) + "\n");
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Collects the current value of every metric, skipping the metrics without samples.
+     * @return the metrics in a stable order
+     */
+    List<MetricFamily> collect() {
+        List<MetricFamily> families = new ArrayList<>();
+        families.add(histogram("tiw_http_request_duration_seconds",
+                "Time to handle a request, until its response is complete.", requestTimers));
+        families.add(histogram("tiw_dao_statement_duration_seconds",
+                "Time spent executing the statements of each DAO method.", statementTimers()));
+        MetricFamily statementErrorFamily = new MetricFamily("tiw_dao_statement_errors_total",
+                "Statement executions of each DAO method that threw an exception.", "counter");
+        for (Map.Entry<String, StatementMetrics> entry : new TreeMap<>(statementMetrics).entrySet())
+            statementErrorFamily.add(entry.getKey(), entry.getValue().errors.sum());
+        families.add(statementErrorFamily);
+        families.add(histogram("tiw_pool_acquire_duration_seconds",
+                "Time to lease a connection from the pool, including the wait for one to be released.", Map.of("", connectionAcquireTimer)));
+        collectPool(families);
+        collectCaches(families);
+        collectExecution(families);
+        families.removeIf(family -> family.samples.isEmpty());
+        return families;
+    }
+
+    /**
+     * Returns the execution time of the statements of each DAO method.
+     * @return the timers, keyed by the labels of the DAO and method
+     */
+    private Map<String, LatencyTimer> statementTimers() {
+        Map<String, LatencyTimer> timers = new TreeMap<>();
+        statementMetrics.forEach((labels, metrics) -> timers.put(labels, metrics.timer));
+        return timers;
+    }
+
+    /**
+     * Collects the state of the connection pool, if it has been created.
+     * @param families the metrics to add to
+     */
+    private void collectPool(List<MetricFamily> families) {
+        DatabaseConnectionPool databaseConnectionPool = DatabaseConnectionPool.getExistingInstance();
+        if (databaseConnectionPool == null)
+            return;
+        MetricFamily connections = new MetricFamily("tiw_pool_connections", "Open connections of the pool.", "gauge");
+        connections.add(labels("state", "idle"), databaseConnectionPool.getIdleConnections());
+        connections.add(labels("state", "leased"), databaseConnectionPool.getLeasedConnections());
+        families.add(connections);
+        MetricFamily waitingThreads = new MetricFamily("tiw_pool_waiting_threads", "Threads waiting for a connection.", "gauge");
+        waitingThreads.add("", databaseConnectionPool.getWaitingThreads());
+        families.add(waitingThreads);
+        MetricFamily validations = new MetricFamily("tiw_pool_validations_total", "Validation round trips, by the policy that triggered them.", "counter");
+        for (ConnectionValidationPolicy policy : ConnectionValidationPolicy.values())
+            validations.add(labels("policy", policy.name()), databaseConnectionPool.getValidationCount(policy));
+        families.add(validations);
+        MetricFamily failedValidations = new MetricFamily("tiw_pool_failed_validations_total", "Connections discarded because they were found broken.", "counter");
+        failedValidations.add("", databaseConnectionPool.getFailedValidationCount());
+        families.add(failedValidations);
+    }
+
+    /**
+     * Collects the hits, misses, hit ratio and size of the registered caches and of the statement caches of the pool.
+     * @param families the metrics to add to
+     */
+    private void collectCaches(List<MetricFamily> families) {
+        MetricFamily hits = new MetricFamily("tiw_cache_hits_total", "Lookups served by a cache.", "counter");
+        MetricFamily misses = new MetricFamily("tiw_cache_misses_total", "Lookups not served by a cache.", "counter");
+        MetricFamily hitRatio = new MetricFamily("tiw_cache_hit_ratio", "Share of the lookups served by a cache since startup.", "gauge");
+        MetricFamily entries = new MetricFamily("tiw_cache_entries", "Entries held by a cache.", "gauge");
+        for (Map.Entry<String, LruCache<?, ?>> entry : new TreeMap<>(caches).entrySet()) {
+            String labels = labels("cache", entry.getKey());
+            LruCache<?, ?> cache = entry.getValue();
+            addCacheSamples(hits, misses, hitRatio, labels, cache.getHitCount(), cache.getMissCount());
+            entries.add(labels, cache.size());
+        }
+        DatabaseConnectionPool databaseConnectionPool = DatabaseConnectionPool.getExistingInstance();
+        if (databaseConnectionPool != null)
+            addCacheSamples(hits, misses, hitRatio, labels("cache", "statement"),
+                    databaseConnectionPool.getStatementCacheHits(), databaseConnectionPool.getStatementCacheMisses());
+        families.add(hits);
+        families.add(misses);
+        families.add(hitRatio);
+        families.add(entries);
+    }
+
+    /**
+     * Adds the samples of a cache.
+     * @param hits       the metric of the hits
+     * @param misses     the metric of the misses
+     * @param hitRatio   the metric of the hit ratio
+     * @param labels     the labels of the cache
+     * @param hitCount   the number of hits
+     * @param missCount  the number of misses
+     */
+    private static void addCacheSamples(MetricFamily hits, MetricFamily misses, MetricFamily hitRatio, String labels, long hitCount, long missCount) {
+        hits.add(labels, hitCount);
+        misses.add(labels, missCount);
+        long lookups = hitCount + missCount;
+        hitRatio.add(labels, lookups == 0 ? 0.0 : (double) hitCount / lookups);
+    }
+
+    /**
+     * Collects the state of the RequestExecutor, the PasswordHasher and the LoginThrottle, if they have been created.
+     * @param families the metrics to add to
+     */
+    private void collectExecution(List<MetricFamily> families) {
+        RequestExecutor requestExecutor = RequestExecutor.getExistingInstance();
+        if (requestExecutor != null) {
+            MetricFamily active = new MetricFamily("tiw_executor_active_requests", "Requests being handled off the container threads.", "gauge");
+            active.add(labels("mode", requestExecutor.getMode().name()), requestExecutor.getActiveCount());
+            families.add(active);
+            MetricFamily queued = new MetricFamily("tiw_executor_queued_requests", "Requests waiting for a worker thread.", "gauge");
+            queued.add(labels("mode", requestExecutor.getMode().name()), requestExecutor.getQueueSize());
+            families.add(queued);
+            MetricFamily rejected = new MetricFamily("tiw_executor_rejected_requests_total", "Requests rejected with 503 because the executor was full.", "counter");
+            rejected.add("", requestExecutor.getRejectedCount());
+            families.add(rejected);
+            MetricFamily timedOut = new MetricFamily("tiw_executor_timed_out_requests_total", "Requests that did not complete before the timeout.", "counter");
+            timedOut.add("", requestExecutor.getTimedOutCount());
+            families.add(timedOut);
+        }
+        PasswordHasher passwordHasher = PasswordHasher.getExistingInstance();
+        if (passwordHasher != null) {
+            MetricFamily rejected = new MetricFamily("tiw_password_hashing_rejected_total", "Passwords rejected with 503 because too many requests were waiting for hashing.", "counter");
+            rejected.add("", passwordHasher.getRejectedCount());
+            families.add(rejected);
+        }
+        LoginThrottle loginThrottle = LoginThrottle.getExistingInstance();
+        if (loginThrottle != null) {
+            MetricFamily blocked = new MetricFamily("tiw_login_blocked_attempts_total", "Sign-in attempts refused after too many failures.", "counter");
+            blocked.add("", loginThrottle.getBlockedCount());
+            families.add(blocked);
+        }
+    }
+
+    /**
+     * Builds a histogram from timers keyed by their labels.
+     * @param name   the name of the metric
+     * @param help   the description of the metric
+     * @param timers the timers, keyed by their labels
+     * @return the histogram, with the bucket, sum and count samples of every timer
+     */
+    private static MetricFamily histogram(String name, String help, Map<String, LatencyTimer> timers) {
+        MetricFamily family = new MetricFamily(name, help, "histogram");
+        long[] bounds = LatencyTimer.getBucketBounds();
+        for (Map.Entry<String, LatencyTimer> entry : new TreeMap<>(timers).entrySet()) {
+            String labels = entry.getKey();
+            String separator = labels.isEmpty() ? "" : ",";
+            LatencyTimer timer = entry.getValue();
+            long[] cumulativeCounts = timer.getCumulativeCounts();
+            for (int i = 0; i < bounds.length; i++)
+                family.samples.add(new Sample(name + "_bucket", labels + separator + "le=\"" + toSeconds(bounds[i]) + "\"", cumulativeCounts[i]));
+            long count = cumulativeCounts[bounds.length];
+            family.samples.add(new Sample(name + "_bucket", labels + separator + "le=\"+Inf\"", count));
+            family.samples.add(new Sample(name + "_sum", labels, timer.getSum() / 1e9));
+            family.samples.add(new Sample(name + "_count", labels, count));
+        }
+        return family;
+    }
+
+    /**
+     * Formats label names and values as comma-separated name="value" pairs, escaping the values.
+     * @param namesAndValues the names and values, alternated
+     * @return the formatted labels
+     */
+    private static String labels(String... namesAndValues) {
+        StringBuilder labels = new StringBuilder();
+        for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+            if (i > 0)
+                labels.append(',');
+            String value = namesAndValues[i + 1] != null ? namesAndValues[i + 1] : "";
+            labels.append(namesAndValues[i]).append("=\"")
+                    .append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return labels.toString();
+    }
+
+    /**
+     * Formats a duration in seconds without trailing zeros.
+     * @param nanos the duration in nanoseconds
+     * @return the duration in seconds
+     */
+    private static String toSeconds(long nanos) {
+        return BigDecimal.valueOf(nanos, 9).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Formats a sample value, writing whole numbers without a fractional part.
+     * @param value the value
+     * @return the formatted value
+     */
+    private static String formatValue(double value) {
+        if (Double.isNaN(value))
+            return "NaN";
+        if (Double.isInfinite(value))
+            return value > 0 ? "+Inf" : "-Inf";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15)
+            return String.valueOf((long) value);
+        return String.valueOf(value);
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,81 @@
+package it.polimi.tiw.util;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+/**
+ * PageCursor identifies a position in a listing ordered by a date and then by an ID, such as the images of an
+ * album ordered by upload date. It is used for keyset pagination: the next page starts right after the last row
+ * of the current one, so the database never scans and discards the rows of the preceding pages.
+ * Cursors travel in URLs as opaque tokens, which clients must not build or interpret.
+ */
+public class PageCursor {
+
+    /**
+     * The date of the row the cursor points at.
+     */
+    private final Timestamp date;
+
+    /**
+     * The ID of the row the cursor points at, breaking ties between rows with the same date.
+     */
+    private final int id;
+
+    /**
+     * Creates a cursor pointing at a row.
+     * @param date the date of the row
+     * @param id   the ID of the row
+     */
+    public PageCursor(Timestamp date, int id) {
+        this.date = date;
+        this.id = id;
+    }
+
+    /**
+     * Retrieves the date of the row the cursor points at.
+     * @return the date of the row
+     */
+    public Timestamp getDate() {
+        return date;
+    }
+
+    /**
+     * Retrieves the ID of the row the cursor points at.
+     * @return the ID of the row
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Encodes the cursor as an opaque, URL-safe token.
+     * @return the token
+     */
+    public String toToken() {
+        String value = date.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Decodes a token created by toToken.
+     * @param token the token, may be null
+     * @return the decoded cursor, or null if the token is missing or invalid
+     */
+    public static PageCursor fromToken(String token) {
+        if (token == null || token.isEmpty())
+            return null;
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+            int separatorIndex = value.indexOf(':');
+            if (separatorIndex == -1)
+                return null;
+            long time = Long.parseLong(value.substring(0, separatorIndex));
+            int id = Integer.parseInt(value.substring(separatorIndex + 1));
+            return new PageCursor(new Timestamp(time), id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+}
\ No newline at end of file
@@ -6,16 +6,25 @@ import org.mindrot.jbcrypt.BCrypt;
  * Utility class for handling password hashing and verification using the BCrypt algorithm.
  * Provides methods to hash a plain-text password and verify if a plain-text password matches
  * a previously hashed password.
+ * Hashing is CPU-bound and slow by design: request handlers go through the PasswordHasher,
+ * which bounds how many passwords are hashed at once.
  */
 public class PasswordEncrypt {
 
+    /** The lowest work factor accepted by BCrypt */
+    public static final int MIN_COST = 4;
+
+    /** The highest work factor accepted by BCrypt */
+    public static final int MAX_COST = 30;
+
     /**
      * Hashes a plain-text password using BCrypt with a specified work factor.
      * @param password the plain-text password to be hashed
+     * @param cost     the base-2 logarithm of the number of hashing rounds, between MIN_COST and MAX_COST
      * @return the hashed password as a String
      */
-    public static String hashPassword(String password) {
-        String hashedPassword = BCrypt.hashpw(password, BCrypt.gensalt(10));
+    public static String hashPassword(String password, int cost) {
+        String hashedPassword = BCrypt.hashpw(password, BCrypt.gensalt(cost));
         return hashedPassword;
     }
 
@@ -29,4 +38,22 @@ public class PasswordEncrypt {
         return BCrypt.checkpw(password, hashedPassword);
     }
 
+    /**
+     * Returns the work factor a password was hashed with, read from the "$2a$10$..." prefix of the hash.
+     * @param hashedPassword the hashed password
+     * @return the work factor of the hash, or -1 if the hash is not a BCrypt hash
+     */
+    public static int getCost(String hashedPassword) {
+        if (hashedPassword == null || hashedPassword.length() < 7 || hashedPassword.charAt(0) != '$')
+            return -1;
+        int costStart = hashedPassword.indexOf('$', 1) + 1;
+        if (costStart == 0 || costStart + 3 > hashedPassword.length() || hashedPassword.charAt(costStart + 2) != '$')
+            return -1;
+        try {
+            return Integer.parseInt(hashedPassword.substring(costStart, costStart + 2));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,202 @@
+package it.polimi.tiw.util;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * PasswordHasher is a singleton class that hashes and verifies passwords on a dedicated pool of threads,
+ * one per processor by default, so that a burst of sign-ins cannot occupy every request thread with CPU-bound
+ * hashing. The callers block until their password is hashed, so the number of callers waiting or being served is
+ * bounded, by default to a quarter of the request worker threads of the RequestExecutor: once the bound is reached,
+ * new ones are rejected immediately and the caller is expected to answer 503 Service Unavailable.
+ * The work factor, the pool size and the bound are read from security.properties and can be overridden by JVM
+ * system properties of the same name.
+ */
+public class PasswordHasher {
+
+    /** The singleton instance of the PasswordHasher */
+    private static PasswordHasher instance;
+
+    /** The lock guarding the creation and disposal of the singleton instance */
+    private static final ReentrantLock instanceLock = new ReentrantLock();
+
+    /** The work factor new hashes are created with */
+    private final int cost;
+
+    /** The bounded pool of hashing threads */
+    private final ThreadPoolExecutor executor;
+
+    /** The permits of the callers allowed to wait for a hashing thread or be served at once */
+    private final Semaphore waiterPermits;
+
+    /** The number of hashing requests rejected because too many callers were waiting */
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    /**
+     * Private constructor that loads the security properties and starts the hashing threads.
+     * Missing or invalid settings fall back to their defaults.
+     */
+    private PasswordHasher() {
+        Settings settings = Settings.load("security.properties");
+        int configuredCost = 10;
+        int threads = 0;
+        int maxWaiters = 0;
+        try {
+            configuredCost = Integer.parseInt(settings.get("security.bcrypt.cost", String.valueOf(configuredCost)));
+            threads = Integer.parseInt(settings.get("security.hashing.threads", String.valueOf(threads)));
+            maxWaiters = Integer.parseInt(settings.get("security.hashing.maxWaiters", String.valueOf(maxWaiters)));
+        } catch (NumberFormatException e) {
+            System.err.println("Error in security settings, using defaults: " + e.getMessage());
+        }
+        if (configuredCost < PasswordEncrypt.MIN_COST || configuredCost > PasswordEncrypt.MAX_COST) {
+            System.err.println("Invalid bcrypt cost " + configuredCost + ", using 10.");
+            configuredCost = 10;
+        }
+        if (threads <= 0)
+            threads = Runtime.getRuntime().availableProcessors();
+        // Leave most request workers to the requests that do not hash a password
+        if (maxWaiters <= 0)
+            maxWaiters = Math.max(1, RequestExecutor.getInstance().getThreadCount() / 4);
+        this.cost = configuredCost;
+        this.waiterPermits = new Semaphore(maxWaiters);
+        AtomicInteger threadCount = new AtomicInteger();
+        // The queue needs no bound of its own, the waiter permits bound it
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "password-hasher-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Returns the singleton instance of the PasswordHasher, creating it if it does not already exist.
+     * @return the singleton instance of the PasswordHasher
+     */
+    public static PasswordHasher getInstance() {
+        instanceLock.lock();
+        try {
+            if (instance == null)
+                instance = new PasswordHasher();
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the singleton instance if it has already been created, without creating it.
+     * @return the singleton instance, or null
+     */
+    static PasswordHasher getExistingInstance() {
+        instanceLock.lock();
+        try {
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the work factor new hashes are created with.
+     * @return the configured bcrypt cost
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    /**
+     * Hashes a password with the configured work factor on a hashing thread.
+     * @param password the plain-text password to hash
+     * @return the hashed password
+     * @throws RejectedExecutionException if too many callers are waiting for password hashing, or the calling thread
+     *                                    was interrupted while waiting
+     */
+    public String hashPassword(String password) {
+        return execute(() -> PasswordEncrypt.hashPassword(password, cost));
+    }
+
+    /**
+     * Verifies a password against a hash on a hashing thread.
+     * @param password       the plain-text password to verify
+     * @param hashedPassword the hashed password to compare against
+     * @return true if the password matches the hash, false otherwise
+     * @throws RejectedExecutionException if too many callers are waiting for password hashing, or the calling thread
+     *                                    was interrupted while waiting
+     */
+    public boolean checkPassword(String password, String hashedPassword) {
+        return execute(() -> PasswordEncrypt.checkPassword(password, hashedPassword));
+    }
+
+    /**
+     * Checks whether a hash was created with a work factor other than the configured one,
+     * so the password should be hashed again once verified.
+     * @param hashedPassword the hashed password
+     * @return true if the hash should be replaced, false otherwise
+     */
+    public boolean needsRehash(String hashedPassword) {
+        return PasswordEncrypt.getCost(hashedPassword) != cost;
+    }
+
+    /**
+     * Returns the number of hashing requests rejected because too many callers were waiting.
+     * @return the rejected requests count
+     */
+    public long getRejectedCount() {
+        return rejectedRequests.sum();
+    }
+
+    /**
+     * Stops the hashing threads, abandoning the passwords still waiting to be hashed.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        instanceLock.lock();
+        try {
+            instance = null;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    /**
+     * Runs a hashing task on a hashing thread and waits for its result.
+     * @param task the hashing task
+     * @param <T>  the type of the result
+     * @return the result of the task
+     * @throws RejectedExecutionException if too many callers are waiting, or the calling thread was interrupted
+     *                                    while waiting
+     */
+    private <T> T execute(Callable<T> task) {
+        if (!waiterPermits.tryAcquire()) {
+            rejectedRequests.increment();
+            throw new RejectedExecutionException("Too many passwords waiting to be hashed.");
+        }
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            waiterPermits.release();
+            rejectedRequests.increment();
+            throw e;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for password hashing.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException("Password hashing failed.", cause);
+        } finally {
+            waiterPermits.release();
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,357 @@
+package it.polimi.tiw.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PooledConnection keeps track of a physical database connection owned by the DatabaseConnectionPool,
+ * together with the bookkeeping the pool needs to decide when the connection has to be validated.
+ * Callers receive a proxy of the physical connection that keeps prepared statements in an LRU cache keyed by
+ * their SQL text: closing a statement returns it to the cache, and preparing the same SQL again reuses it
+ * instead of parsing it again. The executions of the prepared statements are timed by the MetricsRegistry.
+ */
+class PooledConnection implements InvocationHandler {
+
+    /** The physical connection to the database */
+    private final Connection connection;
+
+    /** The proxy of the physical connection handed out to callers */
+    private final Connection proxy;
+
+    /** The pool owning this connection, to which the proxy is returned when closed */
+    private final DatabaseConnectionPool databaseConnectionPool;
+
+    /** The idle prepared statements, keyed by SQL text; null if statement caching is disabled */
+    private final LruCache<String, PreparedStatement> statementCache;
+
+    /** The pool-wide number of prepared statements served from a statement cache */
+    private final LongAdder statementCacheHits;
+
+    /** The pool-wide number of prepared statements that had to be prepared on the connection */
+    private final LongAdder statementCacheMisses;
+
+    /** The registry timing the statement executions */
+    private final MetricsRegistry metricsRegistry;
+
+    /** The System.nanoTime() value at which the connection was last returned to the pool */
+    private volatile long idleSince;
+
+    /** Whether a statement failed with an error suggesting the connection may be broken */
+    private volatile boolean errorOccurred = false;
+
+    /**
+     * Wraps a newly opened physical connection.
+     * @param connection             the physical connection to the database
+     * @param databaseConnectionPool the pool owning the connection
+     * @param statementCacheSize     the maximum number of prepared statements to cache, 0 to disable caching
+     * @param statementCacheHits     the pool-wide counter of statement cache hits
+     * @param statementCacheMisses   the pool-wide counter of statement cache misses
+     * @param metricsRegistry        the registry timing the statement executions
+     */
+    PooledConnection(Connection connection, DatabaseConnectionPool databaseConnectionPool, int statementCacheSize, LongAdder statementCacheHits, LongAdder statementCacheMisses, MetricsRegistry metricsRegistry) {
+        this.connection = connection;
+        this.databaseConnectionPool = databaseConnectionPool;
+        this.statementCache = statementCacheSize > 0 ? new LruCache<>(statementCacheSize, (sql, statement) -> closeStatement(statement)) : null;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+        this.metricsRegistry = metricsRegistry;
+        this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, this);
+        this.idleSince = System.nanoTime();
+    }
+
+    /**
+     * Returns the connection handed out to callers.
+     * @return the proxy of the physical Connection object
+     */
+    Connection getConnection() {
+        return proxy;
+    }
+
+    /**
+     * Returns the physical connection to the database, for the pool's own checks.
+     * @return the physical Connection object
+     */
+    Connection getPhysicalConnection() {
+        return connection;
+    }
+
+    /**
+     * Records that the connection has just been returned to the pool.
+     */
+    void markIdle() {
+        this.idleSince = System.nanoTime();
+        this.errorOccurred = false;
+    }
+
+    /**
+     * Returns how long the connection has been idle since it was last returned to the pool.
+     * @return the idle time in milliseconds
+     */
+    long getIdleMillis() {
+        return (System.nanoTime() - idleSince) / 1_000_000L;
+    }
+
+    /**
+     * Checks whether a statement failed with an error suggesting the connection may be broken
+     * since the connection was leased.
+     * @return true if such an error occurred, false otherwise
+     */
+    boolean hasErrorOccurred() {
+        return errorOccurred;
+    }
+
+    /**
+     * Closes the cached statements and the physical connection.
+     * @throws SQLException if a database access error occurs
+     */
+    void close() throws SQLException {
+        if (statementCache != null)
+            statementCache.clear();
+        if (!connection.isClosed())
+            connection.close();
+    }
+
+    /**
+     * Handles the calls made on the connection proxy.
+     * Prepared statements are served from the cache, closing the proxy returns it to the pool,
+     * and every other call is forwarded to the physical connection.
+     * @param proxy  the connection proxy
+     * @param method the invoked method
+     * @param args   the arguments of the call
+     * @return the result of the call
+     * @throws Throwable the exception thrown by the physical connection
+     */
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "PooledConnection[" + connection + "]";
+            case "close":
+                databaseConnectionPool.releaseConnection(this.proxy);
+                return null;
+            case "prepareStatement":
+                if (args.length == 1)
+                    return prepareCachedStatement((String) args[0], (String) args[0], Statement.NO_GENERATED_KEYS);
+                if (args.length == 2 && method.getParameterTypes()[1] == int.class)
+                    return prepareCachedStatement((String) args[0] + '\u0000' + args[1], (String) args[0], (Integer) args[1]);
+                return forward(connection, method, args);
+            default:
+                return forward(connection, method, args);
+        }
+    }
+
+    /**
+     * Returns a cached prepared statement for the given SQL, preparing it on the connection on a cache miss.
+     * A statement is taken out of the cache while in use, so it is never handed out twice at the same time.
+     * When statement caching is disabled a new statement is always prepared, and closed when the caller closes it.
+     * @param key               the cache key of the statement
+     * @param sql               the SQL text of the statement
+     * @param autoGeneratedKeys whether auto-generated keys should be returned
+     * @return the proxy of the prepared statement
+     * @throws SQLException if a database access error occurs
+     */
+    private PreparedStatement prepareCachedStatement(String key, String sql, int autoGeneratedKeys) throws SQLException {
+        if (statementCache != null) {
+            PreparedStatement cached = statementCache.remove(key);
+            if (cached != null) {
+                statementCacheHits.increment();
+                ((CachedStatement) Proxy.getInvocationHandler(cached)).checkOut();
+                return cached;
+            }
+            statementCacheMisses.increment();
+        }
+        PreparedStatement statement;
+        try {
+            statement = connection.prepareStatement(sql, autoGeneratedKeys);
+        } catch (SQLException e) {
+            recordError(e);
+            throw e;
+        }
+        CachedStatement handler = new CachedStatement(key, statement);
+        return handler.statementProxy;
+    }
+
+    /**
+     * Forwards a call to the given target, unwrapping the exception it throws.
+     * @param target the object to invoke the method on
+     * @param method the invoked method
+     * @param args   the arguments of the call
+     * @return the result of the call
+     * @throws Throwable the exception thrown by the target
+     */
+    private Object forward(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException)
+                recordError((SQLException) cause);
+            throw cause;
+        }
+    }
+
+    /**
+     * Records an error if it suggests the connection may be broken.
+     * @param e the exception thrown by the driver
+     */
+    private void recordError(SQLException e) {
+        String sqlState = e.getSQLState();
+        if (e instanceof SQLRecoverableException || e instanceof SQLNonTransientConnectionException
+                || e instanceof SQLTransientConnectionException || sqlState == null || sqlState.startsWith("08"))
+            errorOccurred = true;
+    }
+
+    /**
+     * Closes a physical statement leaving the cache.
+     * @param statement the statement proxy to close
+     */
+    private void closeStatement(PreparedStatement statement) {
+        ((CachedStatement) Proxy.getInvocationHandler(statement)).closePhysical();
+    }
+
+    /**
+     * CachedStatement handles the calls made on a prepared statement proxy.
+     * Closing the proxy resets the statement and returns it to the cache instead of closing it,
+     * and the executions of the statement are recorded in the metrics of the DAO method that prepared it,
+     * resolved once when the statement is prepared.
+     */
+    private class CachedStatement implements InvocationHandler {
+
+        /** The cache key of the statement */
+        private final String key;
+
+        /** The physical prepared statement */
+        private final PreparedStatement statement;
+
+        /** The proxy of the prepared statement handed out to callers */
+        private final PreparedStatement statementProxy;
+
+        /** The metrics of the DAO method that prepared the statement, or null if its executions are not timed */
+        private final MetricsRegistry.StatementMetrics statementMetrics;
+
+        /** Whether the caller closed the proxy since it was last handed out */
+        private boolean returned = false;
+
+        /** Whether the statement failed and must not be reused */
+        private boolean broken = false;
+
+        /**
+         * Wraps a newly prepared physical statement.
+         * @param key       the cache key of the statement
+         * @param statement the physical prepared statement
+         */
+        CachedStatement(String key, PreparedStatement statement) {
+            this.key = key;
+            this.statement = statement;
+            this.statementProxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, this);
+            this.statementMetrics = metricsRegistry.getStatementMetrics();
+        }
+
+        /**
+         * Marks the statement as handed out again.
+         */
+        void checkOut() {
+            returned = false;
+        }
+
+        /**
+         * Closes the physical statement.
+         */
+        void closePhysical() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing cached statement: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Handles the calls made on the statement proxy.
+         * @param proxy  the statement proxy
+         * @param method the invoked method
+         * @param args   the arguments of the call
+         * @return the result of the call
+         * @throws Throwable the exception thrown by the physical statement
+         */
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + statement + "]";
+                case "getConnection":
+                    return PooledConnection.this.proxy;
+                case "isClosed":
+                    return returned || statement.isClosed();
+                case "close":
+                    returnToCache();
+                    return null;
+                default:
+                    if (statementMetrics == null || !method.getName().startsWith("execute"))
+                        return forwardToStatement(method, args);
+                    long start = System.nanoTime();
+                    boolean failed = true;
+                    try {
+                        Object result = forwardToStatement(method, args);
+                        failed = false;
+                        return result;
+                    } finally {
+                        statementMetrics.record(System.nanoTime() - start, failed);
+                    }
+            }
+        }
+
+        /**
+         * Forwards a call to the physical statement, marking the statement as broken if it fails.
+         * @param method the invoked method
+         * @param args   the arguments of the call
+         * @return the result of the call
+         * @throws Throwable the exception thrown by the physical statement
+         */
+        private Object forwardToStatement(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    broken = true;
+                    recordError((SQLException) cause);
+                }
+                throw cause;
+            }
+        }
+
+        /**
+         * Resets the statement and puts it back into the cache, or closes it if it cannot be reused or caching is disabled.
+         */
+        private void returnToCache() {
+            if (returned)
+                return;
+            returned = true;
+            try {
+                if (statementCache == null || broken || statement.isClosed() || connection.isClosed()) {
+                    closePhysical();
+                    return;
+                }
+                statement.clearParameters();
+                statement.clearBatch();
+                statementCache.put(key, statementProxy);
+            } catch (SQLException e) {
+                closePhysical();
+            }
+        }
+
+    }
+
+}
\ No newline at end of file
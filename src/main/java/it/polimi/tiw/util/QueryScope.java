@@ -0,0 +1,159 @@
+package it.polimi.tiw.util;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * QueryScope runs independent database reads of a request in parallel and waits for all of them.
+ * Each forked read runs on a thread of the RequestExecutor with its own ConnectionContext, and therefore its own
+ * pooled connection, so the latency of the reads is close to the slowest one rather than their sum.
+ * The reads share a deadline: join fails if they do not all complete in time, and the first failing read cancels
+ * the others. Closing the scope cancels the reads still running, so none outlives the code that forked it.
+ * When the executor has no free thread the read runs on the calling thread, on the connection of the caller.
+ */
+public class QueryScope implements AutoCloseable {
+
+    /**
+     * Subtask is the handle of a read forked in a QueryScope, giving access to its result after the join.
+     * @param <T> the type of the result
+     */
+    public static final class Subtask<T> {
+
+        /** The task running the read */
+        private final FutureTask<T> task;
+
+        /**
+         * Creates the handle of a read.
+         * @param task the task running the read
+         */
+        private Subtask(FutureTask<T> task) {
+            this.task = task;
+        }
+
+        /**
+         * Returns the result of the read.
+         * @return the result of the read
+         * @throws IllegalStateException if the read did not complete successfully, i.e. the scope was not joined
+         */
+        public T get() {
+            return task.resultNow();
+        }
+
+    }
+
+    /** The executor the reads are forked on */
+    private final RequestExecutor requestExecutor;
+
+    /** The maximum time in milliseconds for all the reads to complete */
+    private final long timeout;
+
+    /** The deadline of the reads, as a System.nanoTime value */
+    private final long deadline;
+
+    /** The reads forked in this scope */
+    private final List<FutureTask<?>> tasks = new ArrayList<>();
+
+    /** The reads that completed, in order of completion */
+    private final BlockingQueue<FutureTask<?>> completedTasks = new LinkedBlockingQueue<>();
+
+    /**
+     * Opens a scope whose reads must complete within the query timeout of the RequestExecutor.
+     */
+    public QueryScope() {
+        this(RequestExecutor.getInstance().getQueryTimeout());
+    }
+
+    /**
+     * Opens a scope whose reads must complete within the given time.
+     * @param timeout the maximum time in milliseconds for all the reads to complete
+     */
+    public QueryScope(long timeout) {
+        this.requestExecutor = RequestExecutor.getInstance();
+        this.timeout = timeout;
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    /**
+     * Starts a read in parallel with the other reads of the scope.
+     * @param work the read to run; it must not depend on the other reads of the scope
+     * @param <T>  the type of the result
+     * @return the handle giving access to the result once the scope is joined
+     */
+    public <T> Subtask<T> fork(ConnectionContext.SqlWork<T> work) {
+        FutureTask<T> task = new FutureTask<>(() -> {
+            // Bind a context of its own, unless the read runs on the caller thread which already has one
+            boolean bound = ConnectionContext.bind();
+            try {
+                return work.execute();
+            } finally {
+                if (bound)
+                    ConnectionContext.unbind();
+            }
+        }) {
+            @Override
+            protected void done() {
+                completedTasks.add(this);
+            }
+        };
+        tasks.add(task);
+        requestExecutor.executeQuery(task);
+        return new Subtask<>(task);
+    }
+
+    /**
+     * Waits for all the reads of the scope, cancelling the others as soon as one fails or the deadline expires.
+     * @throws SQLTimeoutException if the reads did not complete before the deadline
+     * @throws SQLException        if a read failed, or the calling thread was interrupted while waiting
+     */
+    public void join() throws SQLException {
+        try {
+            for (int completed = 0; completed < tasks.size(); completed++) {
+                long remaining = deadline - System.nanoTime();
+                FutureTask<?> task = completedTasks.poll(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+                if (task == null) {
+                    cancelAll();
+                    throw new SQLTimeoutException("Queries did not complete within " + timeout + " ms.");
+                }
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    cancelAll();
+                    Throwable cause = e.getCause();
+                    if (cause instanceof SQLException)
+                        throw (SQLException) cause;
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    throw new SQLException("Query failed.", cause);
+                } catch (CancellationException e) {
+                    throw new SQLException("Query was cancelled.", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelAll();
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for queries.", e);
+        }
+    }
+
+    /**
+     * Cancels the reads still running, interrupting their threads.
+     */
+    @Override
+    public void close() {
+        cancelAll();
+    }
+
+    /**
+     * Cancels all the reads of the scope that did not complete yet.
+     */
+    private void cancelAll() {
+        for (FutureTask<?> task : tasks)
+            task.cancel(true);
+    }
+
+}
\ No newline at end of file
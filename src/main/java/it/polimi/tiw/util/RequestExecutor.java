@@ -0,0 +1,319 @@
+package it.polimi.tiw.util;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * RequestExecutor is a singleton class that runs the servlet handlers off the container threads.
+ * Depending on the configured ExecutionMode, handlers run on the container thread, on a bounded pool of worker
+ * threads whose queue provides backpressure, or on one virtual thread per request with a cap on the number of
+ * concurrent requests: once the queue or the cap is full, new requests are rejected instead of waiting.
+ * A separate executor runs the independent database reads a handler forks through a QueryScope; when all its
+ * threads are busy, the read runs on the handler thread itself, so forking never queues behind other requests.
+ * The settings are read from execution.properties and can be overridden by JVM system properties of the same name.
+ */
+public class RequestExecutor {
+
+    /** The singleton instance of the RequestExecutor */
+    private static RequestExecutor instance;
+
+    /** The lock guarding the creation and disposal of the singleton instance */
+    private static final ReentrantLock instanceLock = new ReentrantLock();
+
+    /** The threads the handlers run on */
+    private final ExecutionMode mode;
+
+    /** The maximum time in milliseconds to handle a request, including the wait for a worker */
+    private final long timeout;
+
+    /** The number of worker threads the handlers run on in POOL mode */
+    private final int threads;
+
+    /** The executor running the handlers, or null in SYNC mode */
+    private final ExecutorService executor;
+
+    /** The permits of the requests allowed to run concurrently in VIRTUAL mode, or null in the other modes */
+    private final Semaphore concurrencyPermits;
+
+    /** The maximum number of requests running concurrently in VIRTUAL mode */
+    private final int maxConcurrentRequests;
+
+    /** The maximum time in milliseconds for the reads forked by a handler to complete */
+    private final long queryTimeout;
+
+    /** The executor running the reads forked by the handlers */
+    private final ExecutorService queryExecutor;
+
+    /** The permits of the forked reads allowed to run on their own virtual thread, or null unless in VIRTUAL mode */
+    private final Semaphore queryPermits;
+
+    /** The number of requests rejected because the queue or the cap on concurrent requests was full */
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    /** The number of requests that did not complete before the timeout */
+    private final LongAdder timedOutRequests = new LongAdder();
+
+    /**
+     * Private constructor that loads the execution properties and starts the worker pool if needed.
+     * Missing or invalid settings fall back to their defaults.
+     */
+    private RequestExecutor() {
+        Settings settings = Settings.load("execution.properties");
+        ExecutionMode configuredMode = ExecutionMode.parse(settings.get("execution.mode"), ExecutionMode.POOL);
+        long configuredTimeout = 30_000L;
+        int threads = 32;
+        int queueCapacity = 256;
+        int maxConcurrent = 1000;
+        long configuredQueryTimeout = 10_000L;
+        int queryThreads = 16;
+        try {
+            configuredTimeout = Long.parseLong(settings.get("execution.timeout", String.valueOf(configuredTimeout)));
+            threads = Integer.parseInt(settings.get("execution.threads", String.valueOf(threads)));
+            queueCapacity = Integer.parseInt(settings.get("execution.queueCapacity", String.valueOf(queueCapacity)));
+            maxConcurrent = Integer.parseInt(settings.get("execution.maxConcurrentRequests", String.valueOf(maxConcurrent)));
+            configuredQueryTimeout = Long.parseLong(settings.get("execution.queryTimeout", String.valueOf(configuredQueryTimeout)));
+            queryThreads = Integer.parseInt(settings.get("execution.queryThreads", String.valueOf(queryThreads)));
+        } catch (NumberFormatException e) {
+            System.err.println("Error in execution settings, using defaults: " + e.getMessage());
+        }
+        this.mode = configuredMode;
+        this.timeout = configuredTimeout;
+        this.threads = threads;
+        this.maxConcurrentRequests = maxConcurrent;
+        this.queryTimeout = configuredQueryTimeout;
+        if (mode == ExecutionMode.POOL) {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread t = new Thread(r, "request-worker-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            this.concurrencyPermits = null;
+        } else if (mode == ExecutionMode.VIRTUAL) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("request-virtual-", 1).factory());
+            this.concurrencyPermits = new Semaphore(maxConcurrent);
+        } else {
+            this.executor = null;
+            this.concurrencyPermits = null;
+        }
+        if (mode == ExecutionMode.VIRTUAL) {
+            this.queryExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("query-virtual-", 1).factory());
+            this.queryPermits = new Semaphore(queryThreads);
+        } else {
+            // No queue: a read finding every thread busy, or the executor shut down, runs on the thread that forked it
+            AtomicInteger threadCount = new AtomicInteger();
+            this.queryExecutor = new ThreadPoolExecutor(queryThreads, queryThreads, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), r -> {
+                Thread t = new Thread(r, "query-worker-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }, (task, pool) -> task.run());
+            this.queryPermits = null;
+        }
+    }
+
+    /**
+     * Returns the singleton instance of the RequestExecutor, creating it if it does not already exist.
+     * @return the singleton instance of the RequestExecutor
+     */
+    public static RequestExecutor getInstance() {
+        instanceLock.lock();
+        try {
+            if (instance == null)
+                instance = new RequestExecutor();
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the singleton instance if it has already been created, without creating it.
+     * @return the singleton instance, or null
+     */
+    static RequestExecutor getExistingInstance() {
+        instanceLock.lock();
+        try {
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether the handlers run asynchronously, off the container threads.
+     * @return true unless the mode is SYNC
+     */
+    public boolean isAsync() {
+        return executor != null;
+    }
+
+    /**
+     * Returns the threads the handlers run on.
+     * @return the configured ExecutionMode
+     */
+    public ExecutionMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the configured number of worker threads, which also sizes the resources the handlers wait on.
+     * @return the execution.threads setting
+     */
+    public int getThreadCount() {
+        return threads;
+    }
+
+    /**
+     * Returns the maximum time to handle a request, including the wait for a worker.
+     * @return the timeout in milliseconds
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Returns the maximum time for the reads forked by a handler to complete.
+     * @return the query timeout in milliseconds
+     */
+    public long getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    /**
+     * Runs a read forked by a handler on a query thread, or on the calling thread if none is free.
+     * @param task the read to run
+     */
+    void executeQuery(Runnable task) {
+        if (queryPermits == null) {
+            queryExecutor.execute(task);
+            return;
+        }
+        // As in the other modes, a read finding every permit taken runs on the handler thread
+        if (!queryPermits.tryAcquire()) {
+            task.run();
+            return;
+        }
+        try {
+            queryExecutor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    queryPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The virtual thread executor is shut down
+            queryPermits.release();
+            task.run();
+        }
+    }
+
+    /**
+     * Submits a handler for execution on a worker thread or, in VIRTUAL mode, on a new virtual thread.
+     * @param task the handler to run
+     * @return the Future of the handler, which can be used to cancel it
+     * @throws RejectedExecutionException if the queue or the cap on concurrent requests is full,
+     *                                    or the executor is shut down
+     */
+    public Future<?> submit(Runnable task) {
+        if (concurrencyPermits == null) {
+            try {
+                return executor.submit(task);
+            } catch (RejectedExecutionException e) {
+                rejectedRequests.increment();
+                throw e;
+            }
+        }
+        if (!concurrencyPermits.tryAcquire()) {
+            rejectedRequests.increment();
+            throw new RejectedExecutionException("Too many concurrent requests");
+        }
+        // The permit is released when the handler completes or is cancelled, even before it started
+        FutureTask<Void> handler = new FutureTask<>(task, null) {
+            @Override
+            protected void done() {
+                concurrencyPermits.release();
+            }
+        };
+        try {
+            executor.execute(handler);
+        } catch (RejectedExecutionException e) {
+            concurrencyPermits.release();
+            rejectedRequests.increment();
+            throw e;
+        }
+        return handler;
+    }
+
+    /**
+     * Records a request that did not complete before the timeout.
+     */
+    public void recordTimeout() {
+        timedOutRequests.increment();
+    }
+
+    /**
+     * Returns the number of requests rejected because the queue or the cap on concurrent requests was full.
+     * @return the rejected requests count
+     */
+    public long getRejectedCount() {
+        return rejectedRequests.sum();
+    }
+
+    /**
+     * Returns the number of requests that did not complete before the timeout.
+     * @return the timed out requests count
+     */
+    public long getTimedOutCount() {
+        return timedOutRequests.sum();
+    }
+
+    /**
+     * Returns the number of handlers currently running.
+     * @return the active handlers count, 0 in SYNC mode
+     */
+    public int getActiveCount() {
+        if (executor instanceof ThreadPoolExecutor)
+            return ((ThreadPoolExecutor) executor).getActiveCount();
+        if (concurrencyPermits != null)
+            return maxConcurrentRequests - concurrencyPermits.availablePermits();
+        return 0;
+    }
+
+    /**
+     * Returns the number of requests waiting for a worker thread.
+     * @return the queued requests count, 0 unless in POOL mode
+     */
+    public int getQueueSize() {
+        if (executor instanceof ThreadPoolExecutor)
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        return 0;
+    }
+
+    /**
+     * Stops accepting requests and waits for the running handlers to complete, then stops the worker threads
+     * and the query threads.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS))
+                    executor.shutdownNow();
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        queryExecutor.shutdownNow();
+        instanceLock.lock();
+        try {
+            instance = null;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+}
\ No newline at end of file
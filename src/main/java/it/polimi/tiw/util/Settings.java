@@ -0,0 +1,64 @@
+package it.polimi.tiw.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Settings holds the settings read from one of the properties files of the application.
+ * Every setting can be overridden by the JVM system property of the same name; a missing or unreadable file
+ * is reported and leaves every setting to its default.
+ */
+final class Settings {
+
+    /** The settings read from the properties file */
+    private final Properties properties;
+
+    /**
+     * Creates the settings of a loaded properties file.
+     * @param properties the settings read from the file
+     */
+    private Settings(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Loads the settings of a file of the properties directory.
+     * @param fileName the name of the file, such as security.properties
+     * @return the settings of the file, empty if it cannot be read
+     */
+    static Settings load(String fileName) {
+        Properties properties = new Properties();
+        try (InputStream inputStream = Settings.class.getClassLoader().getResourceAsStream("properties/" + fileName)) {
+            if (inputStream != null)
+                properties.load(inputStream);
+            else
+                System.err.println("Properties file " + fileName + " not found, using defaults.");
+        } catch (IOException e) {
+            System.err.println("Error reading " + fileName + ", using defaults: " + e.getMessage());
+        }
+        return new Settings(properties);
+    }
+
+    /**
+     * Returns a setting, giving precedence to the JVM system property of the same name.
+     * @param key the name of the setting
+     * @return the trimmed value of the setting, or null if it is not set
+     */
+    String get(String key) {
+        String value = System.getProperty(key, properties.getProperty(key));
+        return value != null ? value.trim() : null;
+    }
+
+    /**
+     * Returns a setting, giving precedence to the JVM system property of the same name.
+     * @param key          the name of the setting
+     * @param defaultValue the value to return if the setting is not set
+     * @return the trimmed value of the setting, or the default value
+     */
+    String get(String key, String defaultValue) {
+        String value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,357 @@
+package it.polimi.tiw.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ThumbnailGenerator is a singleton class that produces the smaller renditions of uploaded images.
+ * Derivatives are generated on a bounded pool of worker threads, right after an upload or on demand the first
+ * time a rendition is requested, and are cached on disk in a directory inside the uploads directory.
+ * Formats without a built-in ImageIO codec, such as WebP, are always served as the original file.
+ */
+public class ThumbnailGenerator {
+
+    /** The singleton instance of the ThumbnailGenerator */
+    private static ThumbnailGenerator instance;
+
+    /** The lock guarding the creation and disposal of the singleton instance */
+    private static final ReentrantLock instanceLock = new ReentrantLock();
+
+    /** The name of the directory, inside the uploads directory, holding the derivatives */
+    private static final String DERIVATIVES_DIRECTORY = "derivatives";
+
+    /** The ImageIO format names of the extensions whose derivatives can be generated */
+    private static final Map<String, String> FORMAT_NAMES = Map.of(
+            ".jpg", "jpeg",
+            ".jpeg", "jpeg",
+            ".png", "png"
+    );
+
+    /** The maximum number of originals remembered as impossible to decode */
+    private static final int FAILED_ORIGINALS_CACHE_SIZE = 1_000;
+
+    /** The directory holding the derivatives */
+    private final Path derivativesPath;
+
+    /** The maximum width and height in pixels of a THUMB rendition */
+    private final int thumbSize;
+
+    /** The maximum width and height in pixels of a MEDIUM rendition */
+    private final int mediumSize;
+
+    /** The maximum time in milliseconds a request waits for a derivative generated on demand */
+    private final long waitTimeout;
+
+    /** The bounded pool of worker threads generating the derivatives */
+    private final ThreadPoolExecutor executor;
+
+    /** The derivatives being generated, so that concurrent requests for the same one share the work */
+    private final ConcurrentMap<Path, Future<Path>> pendingDerivatives = new ConcurrentHashMap<>();
+
+    /** The originals that could not be decoded, which are served as they are instead of being decoded again */
+    private final LruCache<Path, Boolean> failedOriginals = new LruCache<>(FAILED_ORIGINALS_CACHE_SIZE);
+
+    /**
+     * Private constructor that loads the uploads properties, creates the derivatives directory
+     * and starts the worker pool.
+     * @throws IOException if the properties cannot be read or the derivatives directory cannot be created
+     */
+    private ThumbnailGenerator() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream inputStream = ThumbnailGenerator.class.getClassLoader().getResourceAsStream("properties/uploads.properties")) {
+            if (inputStream == null)
+                throw new IOException("Uploads properties file not found");
+            properties.load(inputStream);
+        }
+        String uploadsPath = properties.getProperty("uploads.path");
+        if (uploadsPath == null || uploadsPath.isEmpty())
+            throw new IOException("Error in uploads.properties file.");
+        this.derivativesPath = Paths.get(uploadsPath).toAbsolutePath().normalize().resolve(DERIVATIVES_DIRECTORY);
+        Files.createDirectories(derivativesPath);
+        try {
+            this.thumbSize = Integer.parseInt(properties.getProperty("uploads.thumbnail.thumbSize", "320").trim());
+            this.mediumSize = Integer.parseInt(properties.getProperty("uploads.thumbnail.mediumSize", "1280").trim());
+            this.waitTimeout = Long.parseLong(properties.getProperty("uploads.thumbnail.waitTimeout", "10000").trim());
+            int threads = Integer.parseInt(properties.getProperty("uploads.thumbnail.threads", "2").trim());
+            int queueCapacity = Integer.parseInt(properties.getProperty("uploads.thumbnail.queueCapacity", "100").trim());
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread t = new Thread(r, "thumbnail-generator-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        } catch (NumberFormatException e) {
+            throw new IOException("Error in thumbnail settings: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the singleton instance of the ThumbnailGenerator, creating it if it does not already exist.
+     * @return the singleton instance of the ThumbnailGenerator
+     * @throws IOException if the generator cannot be initialized
+     */
+    public static ThumbnailGenerator getInstance() throws IOException {
+        instanceLock.lock();
+        try {
+            if (instance == null)
+                instance = new ThumbnailGenerator();
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the singleton instance if it has already been created, without creating it.
+     * @return the singleton instance, or null
+     */
+    static ThumbnailGenerator getExistingInstance() {
+        instanceLock.lock();
+        try {
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    /**
+     * Schedules the generation of every derivative of a newly uploaded image.
+     * If the worker pool is saturated the derivatives are generated on demand later instead.
+     * @param originalPath the path of the original image
+     */
+    public void generateDerivatives(Path originalPath) {
+        if (!isSupported(originalPath))
+            return;
+        for (ImageSize size : ImageSize.values()) {
+            if (size == ImageSize.ORIGINAL)
+                continue;
+            Path derivativePath = getDerivativePath(originalPath, size);
+            if (!Files.isRegularFile(derivativePath))
+                submit(originalPath, size, derivativePath);
+        }
+    }
+
+    /**
+     * Returns the file to serve for a rendition of an image, generating the derivative if it does not exist yet.
+     * The caller waits at most the configured timeout for a derivative generated on demand.
+     * @param originalPath the path of the original image
+     * @param size         the requested rendition
+     * @return the path of the derivative; the original path if the rendition is ORIGINAL or the format has
+     *         no derivatives; or null if the derivative is not available yet or could not be generated, and the
+     *         original must be served without being cached as the rendition
+     */
+    public Path getDerivative(Path originalPath, ImageSize size) {
+        if (size == ImageSize.ORIGINAL || !isSupported(originalPath))
+            return originalPath;
+        if (failedOriginals.get(originalPath) != null)
+            return null;
+        Path derivativePath = getDerivativePath(originalPath, size);
+        if (Files.isRegularFile(derivativePath))
+            return derivativePath;
+        Future<Path> future = submit(originalPath, size, derivativePath);
+        if (future == null)
+            return null;
+        try {
+            return future.get(waitTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether getDerivative returns without waiting for a derivative to be generated, because the rendition
+     * is the original, already exists on disk or cannot be generated.
+     * @param originalPath the path of the original image
+     * @param size         the requested rendition
+     * @return true if the rendition can be served right away, false if it may have to be generated first
+     */
+    public boolean isDerivativeReady(Path originalPath, ImageSize size) {
+        if (size == ImageSize.ORIGINAL || !isSupported(originalPath))
+            return true;
+        return failedOriginals.peek(originalPath) != null || Files.isRegularFile(getDerivativePath(originalPath, size));
+    }
+
+    /**
+     * Deletes every derivative of an image, typically after the image itself has been deleted.
+     * @param originalPath the path of the original image
+     */
+    public void deleteDerivatives(Path originalPath) {
+        for (ImageSize size : ImageSize.values()) {
+            if (size == ImageSize.ORIGINAL)
+                continue;
+            try {
+                Files.deleteIfExists(getDerivativePath(originalPath, size));
+            } catch (IOException e) {
+                System.err.println("Error deleting derivative: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops the worker pool, abandoning the derivatives not generated yet.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        instanceLock.lock();
+        try {
+            instance = null;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether derivatives can be generated for the format of an image.
+     * @param originalPath the path of the original image
+     * @return true if the format has a built-in ImageIO codec, false otherwise
+     */
+    private boolean isSupported(Path originalPath) {
+        return getFormatName(originalPath) != null;
+    }
+
+    /**
+     * Returns the ImageIO format name of an image from its extension.
+     * @param path the path of the image
+     * @return the format name, or null if derivatives cannot be generated for the extension
+     */
+    private static String getFormatName(Path path) {
+        String fileName = path.getFileName().toString();
+        int dotIndex = fileName.lastIndexOf('.');
+        if (dotIndex == -1)
+            return null;
+        return FORMAT_NAMES.get(fileName.substring(dotIndex).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the path where a rendition of an image is stored.
+     * @param originalPath the path of the original image
+     * @param size         the rendition
+     * @return the path of the derivative, named after the original file and the rendition
+     */
+    private Path getDerivativePath(Path originalPath, ImageSize size) {
+        String fileName = originalPath.getFileName().toString();
+        int dotIndex = fileName.lastIndexOf('.');
+        return derivativesPath.resolve(fileName.substring(0, dotIndex) + "-" + size.getName() + fileName.substring(dotIndex));
+    }
+
+    /**
+     * Submits the generation of a derivative, unless the same one is already being generated.
+     * @param originalPath   the path of the original image
+     * @param size           the rendition to generate
+     * @param derivativePath the path where the derivative is stored
+     * @return the future completed with the path of the derivative, or null if the worker pool is saturated
+     */
+    private Future<Path> submit(Path originalPath, ImageSize size, Path derivativePath) {
+        FutureTask<Path> task = new FutureTask<>(() -> {
+            try {
+                return generate(originalPath, size, derivativePath);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error generating " + size.getName() + " rendition of " + originalPath.getFileName() + ": " + e.getMessage());
+                throw e;
+            } finally {
+                pendingDerivatives.remove(derivativePath);
+            }
+        });
+        Future<Path> pending = pendingDerivatives.putIfAbsent(derivativePath, task);
+        if (pending != null)
+            return pending;
+        try {
+            executor.execute(task);
+            return task;
+        } catch (RejectedExecutionException e) {
+            pendingDerivatives.remove(derivativePath, task);
+            return null;
+        }
+    }
+
+    /**
+     * Generates a derivative, scaling the original down to fit the rendition while keeping its aspect ratio.
+     * Large originals are subsampled while being decoded so that they are never fully loaded in memory.
+     * The derivative is written to a temporary file and then moved into place, so a partial file is never served.
+     * @param originalPath   the path of the original image
+     * @param size           the rendition to generate
+     * @param derivativePath the path where the derivative is stored
+     * @return the path of the derivative
+     * @throws IOException if the original cannot be decoded or the derivative cannot be written
+     */
+    private Path generate(Path originalPath, ImageSize size, Path derivativePath) throws IOException {
+        String formatName = getFormatName(originalPath);
+        int maxDimension = size == ImageSize.THUMB ? thumbSize : mediumSize;
+        BufferedImage source;
+        int width;
+        int height;
+        try (ImageInputStream input = ImageIO.createImageInputStream(originalPath.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext())
+                throw new IOException("No image reader available.");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+                // Keep at least twice the target resolution before the final, smoother resize
+                int subsampling = Math.max(1, Math.max(width, height) / (maxDimension * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                source = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Decoding fails again on every request, unlike writing, which may succeed once the disk has room
+            failedOriginals.put(originalPath, Boolean.TRUE);
+            throw e;
+        }
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+        BufferedImage derivative = new BufferedImage(targetWidth, targetHeight, formatName.equals("png") ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = derivative.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        Path temporaryPath = Files.createTempFile(derivativesPath, "derivative-", ".tmp");
+        try {
+            if (!ImageIO.write(derivative, formatName, temporaryPath.toFile()))
+                throw new IOException("No image writer available.");
+            Files.move(temporaryPath, derivativePath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryPath);
+            throw e;
+        }
+        return derivativePath;
+    }
+
+}
\ No newline at end of file
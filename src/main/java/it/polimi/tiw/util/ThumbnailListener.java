@@ -0,0 +1,40 @@
+package it.polimi.tiw.util;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import java.io.IOException;
+
+/**
+ * ThumbnailListener is a ServletContextListener that manages the lifecycle of the ThumbnailGenerator.
+ * It starts the generator when the web application starts and stops its worker threads when the application is stopped.
+ */
+public class ThumbnailListener implements ServletContextListener {
+
+    /**
+     * Called when the web application context is initialized.
+     * This method creates the singleton instance of ThumbnailGenerator, so that the derivatives directory exists
+     * before the first request. Derivatives are not essential, so a failure only disables them.
+     * @param contextEvent the ServletContextEvent that provides access to the ServletContext
+     */
+    @Override
+    public void contextInitialized(ServletContextEvent contextEvent) {
+        try {
+            ThumbnailGenerator.getInstance();
+        } catch (IOException e) {
+            System.err.println("Failed to initialize thumbnail generator: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Called when the web application context is destroyed.
+     * This method stops the worker threads of the ThumbnailGenerator, if it was created.
+     * @param contextEvent the ServletContextEvent that provides access to the ServletContext
+     */
+    @Override
+    public void contextDestroyed(ServletContextEvent contextEvent) {
+        ThumbnailGenerator thumbnailGenerator = ThumbnailGenerator.getExistingInstance();
+        if (thumbnailGenerator != null)
+            thumbnailGenerator.shutdown();
+    }
+
+}
\ No newline at end of file
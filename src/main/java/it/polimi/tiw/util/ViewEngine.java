@@ -2,21 +2,65 @@ package it.polimi.tiw.util;
 
 import javax.servlet.ServletContext;
 import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.TemplateSpec;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.exceptions.TemplateInputException;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.templateresolver.ServletContextTemplateResolver;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * ViewEngine is a utility class that provides a singleton instance of the TemplateEngine
  * to render Thymeleaf templates in a Java Servlet-based application.
  * This class is thread-safe and ensures that the TemplateEngine is initialized only once.
+ * Parsed templates are cached according to the view properties, and can be parsed ahead of the first
+ * request with warmUp; in development mode templates are instead read again on every request.
  */
 public class ViewEngine {
 
+    /**
+     * The path of the directory holding the templates.
+     */
+    private static final String TEMPLATES_PATH = "/WEB-INF/view/";
+
+    /**
+     * The suffix of the template files.
+     */
+    private static final String TEMPLATES_SUFFIX = ".html";
+
     /**
      * The singleton instance of the TemplateEngine.
      * It is marked as volatile to ensure visibility among threads.
      */
     private static volatile TemplateEngine templateEngine;
 
+    /**
+     * The lock guarding the initialization of the TemplateEngine.
+     */
+    private static final ReentrantLock initializationLock = new ReentrantLock();
+
+    /**
+     * Whether parsed templates are cached between requests.
+     */
+    private static boolean cacheEnabled = true;
+
+    /**
+     * The time in milliseconds after which a cached template is parsed again, or 0 to keep it until restart.
+     */
+    private static long cacheTtl = 0L;
+
+    /**
+     * Whether templates are read again on every request, so that edits show up without a restart.
+     */
+    private static boolean devMode = false;
+
     /**
      * Returns the singleton instance of the TemplateEngine.
      * Uses double-checked locking to ensure that the TemplateEngine is initialized
@@ -27,46 +71,109 @@ public class ViewEngine {
     public static TemplateEngine getTemplateEngine(ServletContext servletContext) {
         // First check without synchronization to improve performance
         if (templateEngine == null) {
-            // Synchronize and second check to ensure that only one thread can initialize the TemplateEngine
-            synchronized (ViewEngine.class) {
+            // Lock and second check to ensure that only one thread can initialize the TemplateEngine
+            initializationLock.lock();
+            try {
                 if (templateEngine == null) {
                     initializeTemplateEngine(servletContext);
                 }
+            } finally {
+                initializationLock.unlock();
             }
         }
         return templateEngine;
     }
 
+    /**
+     * Parses every template under the templates directory and stores it in the template cache,
+     * so that no request pays the parsing cost. Nothing happens if caching is disabled.
+     * Templates are processed with an empty context into a discarding writer: expressions failing on the
+     * missing variables are expected and ignored, since the template has been cached once parsed.
+     * The template manager is called directly so that these expected failures are not logged by the engine.
+     * @param servletContext the ServletContext of the current web application
+     * @return the number of templates parsed
+     */
+    public static int warmUp(ServletContext servletContext) {
+        TemplateEngine engine = getTemplateEngine(servletContext);
+        if (!cacheEnabled || devMode)
+            return 0;
+        Set<String> resourcePaths = servletContext.getResourcePaths(TEMPLATES_PATH);
+        if (resourcePaths == null)
+            return 0;
+        int parsedTemplates = 0;
+        for (String resourcePath : resourcePaths) {
+            if (!resourcePath.endsWith(TEMPLATES_SUFFIX))
+                continue;
+            // Templates are cached under the name the servlets use, such as "home.html"
+            String templateName = resourcePath.substring(TEMPLATES_PATH.length());
+            try {
+                TemplateSpec templateSpec = new TemplateSpec(templateName, (Set<String>) null, (TemplateMode) null, null);
+                engine.getConfiguration().getTemplateManager().parseAndProcess(templateSpec, new Context(), Writer.nullWriter());
+                parsedTemplates++;
+            } catch (TemplateInputException e) {
+                System.err.println("Error parsing template " + templateName + ": " + e.getMessage());
+            } catch (TemplateProcessingException e) {
+                parsedTemplates++;
+            }
+        }
+        return parsedTemplates;
+    }
+
     /**
      * Initializes the TemplateEngine with the required template resolver configuration.
      * @param servletContext the ServletContext of the current web application
      */
     private static void initializeTemplateEngine(ServletContext servletContext) {
+        loadViewProperties();
         // Create a new template resolver to define the configuration for locating templates
         ServletContextTemplateResolver templateResolver = createTemplateResolver(servletContext);
         // Instantiate the TemplateEngine and set the configured template resolver
-        templateEngine = new TemplateEngine();
-        templateEngine.setTemplateResolver(templateResolver);
+        TemplateEngine engine = new TemplateEngine();
+        engine.setTemplateResolver(templateResolver);
+        templateEngine = engine;
+    }
+
+    /**
+     * Loads the template caching settings from the view properties file.
+     * The settings are optional and fall back to their defaults.
+     */
+    private static void loadViewProperties() {
+        try (InputStream inputStream = ViewEngine.class.getClassLoader().getResourceAsStream("properties/view.properties")) {
+            if (inputStream == null)
+                return;
+            Properties properties = new Properties();
+            properties.load(inputStream);
+            cacheEnabled = Boolean.parseBoolean(properties.getProperty("view.cache.enabled", String.valueOf(cacheEnabled)).trim());
+            cacheTtl = Long.parseLong(properties.getProperty("view.cache.ttl", String.valueOf(cacheTtl)).trim());
+            devMode = Boolean.parseBoolean(properties.getProperty("view.devMode", String.valueOf(devMode)).trim());
+        } catch (IOException e) {
+            System.err.println("Error reading view properties file: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            System.err.println("Error in view settings: " + e.getMessage());
+        }
     }
 
     /**
-     * Creates and configures a ClassLoaderTemplateResolver.
+     * Creates and configures a ServletContextTemplateResolver.
      * The template resolver is responsible for finding and reading HTML template files.
-     * @return a fully configured ClassLoaderTemplateResolver instance
+     * @param servletContext the ServletContext of the current web application
+     * @return a fully configured ServletContextTemplateResolver instance
      */
     private static ServletContextTemplateResolver createTemplateResolver(ServletContext servletContext) {
-        // Instantiate a new template resolver that loads resources using the class loader
+        // Instantiate a new template resolver that loads resources from the web application
         ServletContextTemplateResolver templateResolver = new ServletContextTemplateResolver(servletContext);
         // Set the mode to HTML
         templateResolver.setTemplateMode("HTML");
         // Set the prefix path where Thymeleaf will search for template files
-        templateResolver.setPrefix("/WEB-INF/view/");
+        templateResolver.setPrefix(TEMPLATES_PATH);
         // Set the suffix for template files; templates should end with ".html"
-        templateResolver.setSuffix(".html");
+        templateResolver.setSuffix(TEMPLATES_SUFFIX);
         // Set character encoding to UTF-8 to support international characters
         templateResolver.setCharacterEncoding("UTF-8");
-        // Deactivate caching
-        templateResolver.setCacheable(false);
+        // Cache parsed templates unless in development mode, expiring them after the TTL if one is set
+        templateResolver.setCacheable(cacheEnabled && !devMode);
+        if (cacheTtl > 0)
+            templateResolver.setCacheTTLMs(cacheTtl);
         return templateResolver;
     }
 
@@ -0,0 +1,31 @@
+package it.polimi.tiw.util;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * ViewListener is a ServletContextListener that prepares the ViewEngine when the web application starts.
+ * It creates the TemplateEngine and parses every template ahead of the first request.
+ */
+public class ViewListener implements ServletContextListener {
+
+    /**
+     * Called when the web application context is initialized.
+     * This method warms up the template cache of the ViewEngine.
+     * @param contextEvent the ServletContextEvent that provides access to the ServletContext
+     */
+    @Override
+    public void contextInitialized(ServletContextEvent contextEvent) {
+        int parsedTemplates = ViewEngine.warmUp(contextEvent.getServletContext());
+        contextEvent.getServletContext().log("Template cache warmed up with " + parsedTemplates + " templates.");
+    }
+
+    /**
+     * Called when the web application context is destroyed. Nothing needs to be released.
+     * @param contextEvent the ServletContextEvent that provides access to the ServletContext
+     */
+    @Override
+    public void contextDestroyed(ServletContextEvent contextEvent) {
+    }
+
+}
\ No newline at end of file
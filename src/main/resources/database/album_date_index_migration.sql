@@ -0,0 +1,7 @@
+--
+-- Adds the (`album_date`, `album_id`) index on `Album`, so that the albums of the other users are paged
+-- on the home page by seeking the index instead of sorting every album.
+-- Run it once on a database created before the index was added.
+--
+
+ALTER TABLE `Album` ADD KEY `album_date_id_idx` (`album_date`, `album_id`);
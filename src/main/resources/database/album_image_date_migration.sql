@@ -0,0 +1,16 @@
+--
+-- Copies the upload date of every image into `AlbumContainsImage`, so that the images of an album are paged
+-- from the (`album_id`, `image_date`, `image_id`) index instead of sorting all the images of the album.
+-- Run it once on a database created before the column was added;
+-- from then on the date is copied by the application when an image is added to an album.
+--
+
+ALTER TABLE `AlbumContainsImage` ADD COLUMN `image_date` timestamp NULL;
+
+UPDATE `AlbumContainsImage` aci
+JOIN `Image` i ON aci.`image_id` = i.`image_id`
+SET aci.`image_date` = i.`image_date`;
+
+ALTER TABLE `AlbumContainsImage`
+    MODIFY COLUMN `image_date` timestamp NOT NULL,
+    ADD KEY `album_image_date_id_idx` (`album_id`, `image_date`, `image_id`);
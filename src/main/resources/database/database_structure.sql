@@ -29,6 +29,7 @@ CREATE TABLE `Album` (
   `album_date` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
   PRIMARY KEY (`album_id`),
   KEY `album_creator_idx` (`album_creator`),
+  KEY `album_date_id_idx` (`album_date`,`album_id`),
   CONSTRAINT `album_creator` FOREIGN KEY (`album_creator`) REFERENCES `User` (`username`) ON DELETE CASCADE ON UPDATE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 /*!40101 SET character_set_client = @saved_cs_client */;
@@ -52,8 +53,10 @@ DROP TABLE IF EXISTS `AlbumContainsImage`;
 CREATE TABLE `AlbumContainsImage` (
   `album_id` int NOT NULL,
   `image_id` int NOT NULL,
+  `image_date` timestamp NOT NULL,
   PRIMARY KEY (`album_id`,`image_id`),
   KEY `id_image_idx` (`image_id`),
+  KEY `album_image_date_id_idx` (`album_id`,`image_date`,`image_id`),
   CONSTRAINT `id_album` FOREIGN KEY (`album_id`) REFERENCES `Album` (`album_id`) ON DELETE CASCADE ON UPDATE CASCADE,
   CONSTRAINT `id_image` FOREIGN KEY (`image_id`) REFERENCES `Image` (`image_id`) ON DELETE CASCADE ON UPDATE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
@@ -152,6 +155,32 @@ LOCK TABLES `User` WRITE;
 /*!40000 ALTER TABLE `User` DISABLE KEYS */;
 /*!40000 ALTER TABLE `User` ENABLE KEYS */;
 UNLOCK TABLES;
+
+--
+-- Table structure for table `UserStats`
+--
+
+DROP TABLE IF EXISTS `UserStats`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `UserStats` (
+  `username` varchar(32) NOT NULL,
+  `albums_count` int NOT NULL DEFAULT '0',
+  `images_count` int NOT NULL DEFAULT '0',
+  `comments_count` int NOT NULL DEFAULT '0',
+  PRIMARY KEY (`username`),
+  CONSTRAINT `stats_username` FOREIGN KEY (`username`) REFERENCES `User` (`username`) ON DELETE CASCADE ON UPDATE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Dumping data for table `UserStats`
+--
+
+LOCK TABLES `UserStats` WRITE;
+/*!40000 ALTER TABLE `UserStats` DISABLE KEYS */;
+/*!40000 ALTER TABLE `UserStats` ENABLE KEYS */;
+UNLOCK TABLES;
 /*!40103 SET TIME_ZONE=@OLD_TIME_ZONE */;
 
 /*!40101 SET SQL_MODE=@OLD_SQL_MODE */;
@@ -0,0 +1,19 @@
+--
+-- Fills the `UserStats` table from the existing albums, images and comments.
+-- Run it once after creating the table on a database that already has users;
+-- from then on the counters are maintained by the application.
+-- Running it again recomputes every counter.
+--
+
+INSERT INTO `UserStats` (`username`, `albums_count`, `images_count`, `comments_count`)
+SELECT * FROM (
+    SELECT u.`username`,
+           (SELECT COUNT(*) FROM `Album` a WHERE a.`album_creator` = u.`username`) AS `albums_count`,
+           (SELECT COUNT(*) FROM `Image` i WHERE i.`image_uploader` = u.`username`) AS `images_count`,
+           (SELECT COUNT(*) FROM `Comment` c WHERE c.`comment_author` = u.`username`) AS `comments_count`
+    FROM `User` u
+) AS `counted`
+ON DUPLICATE KEY UPDATE
+    `albums_count` = `counted`.`albums_count`,
+    `images_count` = `counted`.`images_count`,
+    `comments_count` = `counted`.`comments_count`;
@@ -0,0 +1,120 @@
+package it.polimi.tiw.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests of the parsing of the Range header by FileStreamer.
+ */
+class FileStreamerTest {
+
+    /** The size of the file the ranges are parsed against */
+    private static final long SIZE = 1000;
+
+    /**
+     * Checks that a closed range is returned as it is.
+     */
+    @Test
+    void parsesClosedRange() {
+        assertRanges(FileStreamer.parseRanges("bytes=0-499", SIZE), 0, 499);
+    }
+
+    /**
+     * Checks that a suffix range selects the last bytes of the file, and the whole file if it is longer.
+     */
+    @Test
+    void parsesSuffixRange() {
+        assertRanges(FileStreamer.parseRanges("bytes=-200", SIZE), 800, 999);
+        assertRanges(FileStreamer.parseRanges("bytes=-5000", SIZE), 0, 999);
+    }
+
+    /**
+     * Checks that an open-ended range extends to the end of the file, as does a range ending past it.
+     */
+    @Test
+    void parsesOpenEndedRange() {
+        assertRanges(FileStreamer.parseRanges("bytes=900-", SIZE), 900, 999);
+        assertRanges(FileStreamer.parseRanges("bytes=900-5000", SIZE), 900, 999);
+    }
+
+    /**
+     * Checks that the unit is matched regardless of case and whitespace around the ranges is ignored.
+     */
+    @Test
+    void ignoresCaseAndWhitespace() {
+        assertRanges(FileStreamer.parseRanges(" Bytes= 0-9 , 20-29 ", SIZE), 0, 9, 20, 29);
+    }
+
+    /**
+     * Checks that ranges starting past the end of the file, or empty suffixes, leave nothing satisfiable,
+     * which is answered with 416 Range Not Satisfiable.
+     */
+    @Test
+    void returnsNoRangeWhenUnsatisfiable() {
+        assertEquals(List.of(), FileStreamer.parseRanges("bytes=1000-", SIZE));
+        assertEquals(List.of(), FileStreamer.parseRanges("bytes=2000-3000, -0", SIZE));
+        assertEquals(List.of(), FileStreamer.parseRanges("bytes=-10", 0));
+    }
+
+    /**
+     * Checks that only the satisfiable ranges of a header are kept.
+     */
+    @Test
+    void dropsUnsatisfiableRanges() {
+        assertRanges(FileStreamer.parseRanges("bytes=2000-3000, 0-9", SIZE), 0, 9);
+    }
+
+    /**
+     * Checks that a header with an invalid syntax or an unknown unit is ignored and the whole file sent.
+     */
+    @Test
+    void ignoresInvalidSyntax() {
+        assertNull(FileStreamer.parseRanges("items=0-9", SIZE));
+        assertNull(FileStreamer.parseRanges("bytes=10", SIZE));
+        assertNull(FileStreamer.parseRanges("bytes=a-b", SIZE));
+        assertNull(FileStreamer.parseRanges("bytes=20-10", SIZE));
+        assertNull(FileStreamer.parseRanges("bytes=", SIZE));
+        assertNull(FileStreamer.parseRanges("bytes=-", SIZE));
+    }
+
+    /**
+     * Checks that a header asking for more ranges than allowed is ignored.
+     */
+    @Test
+    void ignoresTooManyRanges() {
+        StringBuilder header = new StringBuilder("bytes=0-0");
+        for (int i = 1; i < 16; i++)
+            header.append(',').append(i * 10).append('-').append(i * 10);
+        assertEquals(16, FileStreamer.parseRanges(header.toString(), SIZE).size());
+        header.append(",500-500");
+        assertNull(FileStreamer.parseRanges(header.toString(), SIZE));
+    }
+
+    /**
+     * Checks that overlapping and adjacent ranges are merged in order, so the response is never larger than the file.
+     */
+    @Test
+    void coalescesOverlappingAndAdjacentRanges() {
+        assertRanges(FileStreamer.parseRanges("bytes=0-999,0-999,0-999,-1000", SIZE), 0, 999);
+        assertRanges(FileStreamer.parseRanges("bytes=500-599,0-99,100-199,550-", SIZE), 0, 199, 500, 999);
+        assertRanges(FileStreamer.parseRanges("bytes=0-9,11-19", SIZE), 0, 9, 11, 19);
+    }
+
+    /**
+     * Asserts that parsed ranges match the expected inclusive first and last byte positions.
+     * @param ranges   the parsed ranges
+     * @param expected the first and last byte positions of each expected range, in order
+     */
+    private static void assertRanges(List<long[]> ranges, long... expected) {
+        assertNotNull(ranges);
+        assertEquals(expected.length / 2, ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            assertEquals(expected[2 * i], ranges.get(i)[0]);
+            assertEquals(expected[2 * i + 1], ranges.get(i)[1]);
+        }
+    }
+
+}
\ No newline at end of file